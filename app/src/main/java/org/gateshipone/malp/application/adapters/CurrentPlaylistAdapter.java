@@ -40,6 +40,7 @@ import org.gateshipone.malp.application.listviewitems.FileListItem;
 import org.gateshipone.malp.mpdservice.handlers.MPDConnectionStateChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.MPDStatusChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponsePlaylistChanges;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDStateMonitoringHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCapabilities;
@@ -50,6 +51,7 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -112,6 +114,12 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
      */
     private static final int WINDOW_SIZE = 500;
 
+    /**
+     * Maximum number of changed tracks that are patched into the local list blocks. If more tracks
+     * changed the playlist is reloaded instead, which costs about the same as fetching a block.
+     */
+    private static final int FULL_RELOAD_THRESHOLD = WINDOW_SIZE;
+
     /**
      * Context used for this adapter.
      */
@@ -155,12 +163,23 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
      */
     private MPDCurrentStatus mLastStatus = null;
 
+    /**
+     * Playlist version the local data set belongs to. Used to request only the changes of the
+     * server side playlist. -1 if unknown.
+     */
+    private int mPlaylistVersion = -1;
+
     /**
      * ResponseHandler that receives the song list from the MPDQueryHandler because we need an
      * asynchronous reply.
      */
     private final PlaylistFetchResponseHandler mTrackResponseHandler;
 
+    /**
+     * ResponseHandler that receives the changes of the playlist since {@link #mPlaylistVersion}.
+     */
+    private final PlaylistChangesResponseHandler mChangesResponseHandler;
+
     /**
      * This handler receives status updates from the MPDStateMonitoringHandler asychronously.
      */
@@ -199,6 +218,7 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
         mContext = context;
 
         mTrackResponseHandler = new PlaylistFetchResponseHandler(this);
+        mChangesResponseHandler = new PlaylistChangesResponseHandler(this);
         mStateListener = new PlaylistStateListener(this);
         mConnectionListener = new ConnectionStateChangeListener(this, context.getMainLooper());
 
@@ -436,11 +456,20 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
             }
         }
 
+        // Check if the local data set can be patched with the changes of the server side playlist
+        boolean incrementalUpdate = newPl && null != mLastStatus && mPlaylistVersion >= 0;
+
         // Save the status for use in other methods of this adapter
         mLastStatus = status;
 
         // If the playlist changed on the server side, update the internal list state of this adapter.
-        if (newPl) {
+        if (incrementalUpdate) {
+            if (mWindowEnabled) {
+                // The list blocks need to match the new length before the views are updated
+                resizeWindows(status.getPlaylistLength());
+            }
+            MPDQueryHandler.getCurrentPlaylistChanges(mChangesResponseHandler, mPlaylistVersion, FULL_RELOAD_THRESHOLD);
+        } else if (newPl) {
             updatePlaylist();
         }
     }
@@ -524,6 +553,120 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
         }
     }
 
+    /**
+     * Private class to handle asynchronous playlist changes from MPDQueryHandler.
+     */
+    private static class PlaylistChangesResponseHandler extends MPDResponsePlaylistChanges {
+
+        private final WeakReference<CurrentPlaylistAdapter> mCurrentPlaylistAdapter;
+
+        PlaylistChangesResponseHandler(final CurrentPlaylistAdapter currentPlaylistAdapter) {
+            mCurrentPlaylistAdapter = new WeakReference<>(currentPlaylistAdapter);
+        }
+
+        @Override
+        public void handlePlaylistChanges(List<MPDFileEntry> changes, int version, int length) {
+            final CurrentPlaylistAdapter currentPlaylistAdapter = mCurrentPlaylistAdapter.get();
+
+            if (currentPlaylistAdapter != null) {
+                currentPlaylistAdapter.applyPlaylistChanges(changes, version, length);
+            }
+        }
+    }
+
+    /**
+     * Patches the local data set with the tracks that changed on the server side.
+     * Changed tracks are sorted by their position, removed tracks are not listed. The list is
+     * only shortened to its new length.
+     *
+     * @param changes Changed tracks or null if too many tracks changed
+     * @param version Playlist version after the changes
+     * @param length  Playlist length after the changes
+     */
+    private void applyPlaylistChanges(final List<MPDFileEntry> changes, final int version, final int length) {
+        // Disconnected or reloaded in the meantime
+        if (null == mLastStatus || mPlaylistVersion < 0) {
+            return;
+        }
+        // Too many changes, reload everything
+        if (null == changes) {
+            updatePlaylist();
+            return;
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Applying " + changes.size() + " playlist changes from version " + mPlaylistVersion + " to " + version);
+        }
+
+        if (!mWindowEnabled) {
+            if (null == mPlaylist || !patchTrackList(mPlaylist, 0, Integer.MAX_VALUE, changes, length)) {
+                // A gap in the list can not be filled, fetch the whole playlist again
+                updatePlaylist();
+                return;
+            }
+        } else {
+            mListsLock.writeLock().lock();
+
+            // The list blocks have to cover the length of the current status and the length of the changes
+            resizeWindowsLocked(Math.max(length, mLastStatus.getPlaylistLength()));
+
+            for (int i = 0; i < mWindowedPlaylists.length; i++) {
+                if (mWindowedListStates[i] != LIST_STATE.LIST_READY) {
+                    continue;
+                }
+                // Blocks that can not be patched without a gap are fetched again when needed
+                if (!patchTrackList(mWindowedPlaylists[i], i * WINDOW_SIZE, WINDOW_SIZE, changes, length)) {
+                    mWindowedPlaylists[i] = null;
+                    mWindowedListStates[i] = LIST_STATE.LIST_EMPTY;
+                }
+            }
+
+            mListsLock.writeLock().unlock();
+        }
+
+        mPlaylistVersion = version;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Patches a part of the playlist that starts at the given position with the changed tracks.
+     *
+     * @param trackList List to patch
+     * @param start     Position of the first track of the list in the playlist
+     * @param maxSize   Maximum number of tracks of the list
+     * @param changes   Changed tracks sorted by their position
+     * @param length    Playlist length after the changes
+     * @return True if the list matches the changed playlist, false if a gap remains
+     */
+    private static boolean patchTrackList(final List<MPDFileEntry> trackList, final int start, final int maxSize,
+                                          final List<MPDFileEntry> changes, final int length) {
+        int expectedSize = Math.min(maxSize, Math.max(0, length - start));
+        // Removed tracks are not part of the changes, just cut off the end of the list
+        if (trackList.size() > expectedSize) {
+            trackList.subList(expectedSize, trackList.size()).clear();
+        }
+
+        for (MPDFileEntry entry : changes) {
+            int position = ((MPDTrack) entry).getSongPosition() - start;
+            if (position < 0) {
+                continue;
+            } else if (position >= expectedSize) {
+                break;
+            }
+
+            if (position < trackList.size()) {
+                trackList.set(position, entry);
+            } else if (position == trackList.size()) {
+                trackList.add(entry);
+            } else {
+                // Tracks in between are unknown
+                return false;
+            }
+        }
+
+        return trackList.size() == expectedSize;
+    }
+
     /**
      * Handler used to react on connects/disconnects from the MPD server.
      */
@@ -601,6 +744,9 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
      * This methods updates the internal playlist state when the server-side playlist changed.
      */
     private void updatePlaylist() {
+        // The data set will be fetched for the version of the last status
+        mPlaylistVersion = null != mLastStatus ? mLastStatus.getPlaylistVersion() : -1;
+
         // If ranged playlist is not available just request the complete list.
         if (!mWindowEnabled) {
             // The playlist has changed and we need to fetch a new one.
@@ -637,6 +783,36 @@ public class CurrentPlaylistAdapter extends BaseAdapter implements ArtworkManage
         notifyDataSetChanged();
     }
 
+    /**
+     * Resizes the list block arrays to the given playlist length. Already fetched list blocks
+     * are kept, so that they can be patched with the changes of the playlist.
+     *
+     * @param playlistLength New length of the playlist
+     */
+    private void resizeWindows(int playlistLength) {
+        mListsLock.writeLock().lock();
+        resizeWindowsLocked(playlistLength);
+        mListsLock.writeLock().unlock();
+    }
+
+    private void resizeWindowsLocked(int playlistLength) {
+        int listCount = (playlistLength / WINDOW_SIZE) + 1;
+        if (listCount == mWindowedPlaylists.length) {
+            return;
+        }
+
+        mWindowedPlaylists = Arrays.copyOf(mWindowedPlaylists, listCount);
+        int oldCount = mWindowedListStates.length;
+        mWindowedListStates = Arrays.copyOf(mWindowedListStates, listCount);
+        for (int i = oldCount; i < listCount; i++) {
+            mWindowedListStates[i] = LIST_STATE.LIST_EMPTY;
+        }
+
+        if (mLastAccessedList >= listCount) {
+            mLastAccessedList = 0;
+        }
+    }
+
     /**
      * Requests the list block for a given list index. This maps the index to the list block index.
      *
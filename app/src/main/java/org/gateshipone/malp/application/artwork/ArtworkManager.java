@@ -167,6 +167,7 @@ public class ArtworkManager implements ArtProvider.ArtFetchError, InsertImageTas
         mWifiOnly = sharedPref.getBoolean(mApplicationContext.getString(R.string.pref_download_wifi_only_key), mApplicationContext.getResources().getBoolean(R.bool.pref_download_wifi_default));
 
         MPDAlbumImageProvider.getInstance().setResponseLooper(Looper.getMainLooper());
+        MPDAlbumImageProvider.getInstance().setDownloadDirectory(mApplicationContext.getCacheDir());
     }
 
     public static synchronized ArtworkManager getInstance(final Context context) {
@@ -63,6 +63,7 @@ import org.gateshipone.malp.mpdservice.handlers.MPDConnectionStateChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseAlbumList;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseArtistList;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
+import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDHandlerAction;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
@@ -320,7 +321,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     private void fetchAllAlbums() {
         if (mArtworkManager.hasImageProvider(ArtworkRequestModel.ArtworkRequestType.ALBUM)) {
-            MPDQueryHandler.getAlbums(new AlbumsResponseHandler(this));
+            MPDQueryHandler.getAlbums(new AlbumsResponseHandler(this), MPDHandlerAction.PRIORITY.BACKGROUND);
         } else {
             fetchAllArtists();
         }
@@ -328,7 +329,7 @@ public class BulkDownloadService extends Service implements InsertImageTask.Imag
 
     private void fetchAllArtists() {
         if (mArtworkManager.hasImageProvider(ArtworkRequestModel.ArtworkRequestType.ARTIST)) {
-            MPDQueryHandler.getArtists(new ArtistsResponseHandler(this));
+            MPDQueryHandler.getArtists(new ArtistsResponseHandler(this), MPDHandlerAction.PRIORITY.BACKGROUND);
         } else {
             startBulkDownload();
         }
@@ -35,6 +35,7 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDDirectory;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 
 public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkRequestModel> {
 
@@ -70,31 +71,24 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
     protected ArtworkRequestModel doInBackground(ImageResponse... params) {
         ImageResponse response = params[0];
 
+        if (response.imageFile != null) {
+            insertImageFile(response.model, response.imageFile);
+            return response.model;
+        }
+
         if (response.image == null) {
-            insertImage(response.model, null);
+            insertImage(response.model, null, null);
             return response.model;
         }
 
-        // Rescale them if to big
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-        if ((options.outHeight > MAXIMUM_IMAGE_RESOLUTION || options.outWidth > MAXIMUM_IMAGE_RESOLUTION)) {
-            // Calculate minimal scaling factor
-            float factor = Math.min((float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outHeight, (float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outWidth);
-            options.inJustDecodeBounds = false;
-            Bitmap bm = BitmapFactory.decodeByteArray(response.image, 0, response.image.length, options);
-            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-            Bitmap.createScaledBitmap(bm, (int) (options.outWidth * factor), (int) (options.outHeight * factor), true)
-                    .compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
-
-            if (byteStream.size() <= MAXIMUM_IMAGE_SIZE) {
-                insertImage(response.model, byteStream.toByteArray());
-            }
-        } else {
-            if (response.image.length <= MAXIMUM_IMAGE_SIZE) {
-                insertImage(response.model, response.image);
+        final byte[] image = response.image;
+        final ByteArrayOutputStream rescaledImage = rescaleImage(options -> BitmapFactory.decodeByteArray(image, 0, image.length, options));
+        if (rescaledImage == null) {
+            if (image.length <= MAXIMUM_IMAGE_SIZE) {
+                insertImage(response.model, image);
             }
+        } else if (rescaledImage.size() <= MAXIMUM_IMAGE_SIZE) {
+            insertImage(response.model, rescaledImage.toByteArray());
         }
 
         return response.model;
@@ -105,22 +99,98 @@ public class InsertImageTask extends AsyncTask<ImageResponse, Object, ArtworkReq
         mImageSavedCallback.onImageSaved(artworkRequestModel);
     }
 
+    /**
+     * Rescales an image if it is bigger than {@link #MAXIMUM_IMAGE_RESOLUTION}.
+     *
+     * @param decoder Decodes the image from its source, e.g. a byte array or a file
+     * @return The rescaled image as JPEG or null if the image does not need to be rescaled
+     */
+    private static ByteArrayOutputStream rescaleImage(final ImageDecoder decoder) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decoder.decode(options);
+        if (options.outHeight <= MAXIMUM_IMAGE_RESOLUTION && options.outWidth <= MAXIMUM_IMAGE_RESOLUTION) {
+            return null;
+        }
+
+        // Calculate minimal scaling factor
+        float factor = Math.min((float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outHeight, (float) MAXIMUM_IMAGE_RESOLUTION / (float) options.outWidth);
+        options.inJustDecodeBounds = false;
+        Bitmap bm = decoder.decode(options);
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        Bitmap.createScaledBitmap(bm, (int) (options.outWidth * factor), (int) (options.outHeight * factor), true)
+                .compress(Bitmap.CompressFormat.JPEG, IMAGE_COMPRESSION_SETTING, byteStream);
+        return byteStream;
+    }
+
+    /**
+     * Inserts a downloaded image file. The file is moved to the artwork storage if it does not
+     * need to be rescaled and deleted otherwise.
+     */
+    private void insertImageFile(final ArtworkRequestModel model, final File imageFile) {
+        final ByteArrayOutputStream rescaledImage = rescaleImage(options -> BitmapFactory.decodeFile(imageFile.getPath(), options));
+        if (rescaledImage == null) {
+            if (imageFile.length() <= MAXIMUM_IMAGE_SIZE) {
+                insertImage(model, imageFile);
+            }
+        } else if (rescaledImage.size() <= MAXIMUM_IMAGE_SIZE) {
+            insertImage(model, rescaledImage.toByteArray());
+        }
+
+        // Nothing left to do if the file was moved to the artwork storage
+        imageFile.delete();
+    }
+
     private void insertImage(final ArtworkRequestModel model, final byte[] image) {
+        insertImage(model, image, null);
+    }
+
+    private void insertImage(final ArtworkRequestModel model, final File imageFile) {
+        insertImage(model, null, imageFile);
+    }
+
+    /**
+     * Inserts the image from either the data or the file. If both are null the image is marked
+     * as not found.
+     */
+    private void insertImage(final ArtworkRequestModel model, final byte[] image, final File imageFile) {
         switch (model.getType()) {
             case ALBUM:
-                mArtworkDatabaseManager.insertAlbumImage((MPDAlbum) model.getGenericModel(), image);
+            case TRACK:
+                final MPDAlbum album;
+                if (model.getType() == ArtworkRequestModel.ArtworkRequestType.ALBUM) {
+                    album = (MPDAlbum) model.getGenericModel();
+                } else {
+                    // Tracks are stored with the image of their album
+                    album = ((MPDTrack) model.getGenericModel()).getAlbum();
+                }
+
+                if (imageFile != null) {
+                    mArtworkDatabaseManager.insertAlbumImage(album, imageFile);
+                } else {
+                    mArtworkDatabaseManager.insertAlbumImage(album, image);
+                }
                 break;
             case ARTIST:
-                mArtworkDatabaseManager.insertArtistImage((MPDArtist) model.getGenericModel(), image);
-                break;
-            case TRACK:
-                final MPDTrack track = (MPDTrack) model.getGenericModel();
-                MPDAlbum fakeAlbum = track.getAlbum();
-                mArtworkDatabaseManager.insertAlbumImage(fakeAlbum, image);
+                // Artist images are not downloaded from MPD, so they are never files
+                if (imageFile == null) {
+                    mArtworkDatabaseManager.insertArtistImage((MPDArtist) model.getGenericModel(), image);
+                }
                 break;
             case DIRECTORY:
-                mArtworkDatabaseManager.insertDirectoryImage((MPDDirectory) model.getGenericModel(), image);
+                if (imageFile != null) {
+                    mArtworkDatabaseManager.insertDirectoryImage((MPDDirectory) model.getGenericModel(), imageFile);
+                } else {
+                    mArtworkDatabaseManager.insertDirectoryImage((MPDDirectory) model.getGenericModel(), image);
+                }
                 break;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Decodes an image from its source with the given options.
+     */
+    private interface ImageDecoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+}
@@ -23,6 +23,7 @@
 package org.gateshipone.malp.application.artwork.network.artprovider;
 
 import android.os.Looper;
+import android.util.Log;
 
 import com.android.volley.Response;
 
@@ -31,7 +32,11 @@ import org.gateshipone.malp.application.artwork.network.responses.ImageResponse;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseAlbumArt;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDArtworkHandler;
 
+import java.io.File;
+import java.io.IOException;
+
 public class MPDAlbumImageProvider extends ArtProvider {
+    private static final String TAG = MPDAlbumImageProvider.class.getSimpleName();
 
     /**
      * Singleton instance
@@ -42,6 +47,12 @@ public class MPDAlbumImageProvider extends ArtProvider {
 
     private Looper mResponseLooper;
 
+    /**
+     * Directory that images are streamed to before they are inserted. Null to download
+     * images into memory.
+     */
+    private File mDownloadDirectory;
+
     public static synchronized MPDAlbumImageProvider getInstance() {
         if (mInstance == null) {
             mInstance = new MPDAlbumImageProvider();
@@ -57,14 +68,14 @@ public class MPDAlbumImageProvider extends ArtProvider {
         }
         switch (model.getType()) {
             case ALBUM: {
-                MPDArtworkHandler.getAlbumArtworkForAlbum(model.getAlbumName(), model.getArtistName(), model.getMBID(), new AlbumArtResponseListener(mResponseLooper, model, listener, errorListener));
+                MPDArtworkHandler.getAlbumArtworkForAlbum(model.getAlbumName(), model.getArtistName(), model.getMBID(), new AlbumArtResponseListener(mResponseLooper, mDownloadDirectory, model, listener, errorListener));
                 break;
             }
             case ARTIST:
                 // not used for this provider
                 break;
             case TRACK:
-                MPDArtworkHandler.getAlbumArtworkForTrack(model.getPath(), new AlbumArtResponseListener(mResponseLooper, model, listener, errorListener));
+                MPDArtworkHandler.getAlbumArtworkForTrack(model.getPath(), new AlbumArtResponseListener(mResponseLooper, mDownloadDirectory, model, listener, errorListener));
                 break;
         }
     }
@@ -81,6 +92,10 @@ public class MPDAlbumImageProvider extends ArtProvider {
         mResponseLooper = looper;
     }
 
+    public void setDownloadDirectory(final File downloadDirectory) {
+        mDownloadDirectory = downloadDirectory;
+    }
+
     private static class AlbumArtResponseListener extends MPDResponseAlbumArt {
 
         private final ArtworkRequestModel mModel;
@@ -89,9 +104,12 @@ public class MPDAlbumImageProvider extends ArtProvider {
 
         private final ArtFetchError mErrorListener;
 
-        AlbumArtResponseListener(final Looper looper, final ArtworkRequestModel model,
+        private final File mDownloadDirectory;
+
+        AlbumArtResponseListener(final Looper looper, final File downloadDirectory, final ArtworkRequestModel model,
                                  final Response.Listener<ImageResponse> listener, final ArtFetchError errorListener) {
             super(looper);
+            mDownloadDirectory = downloadDirectory;
             mModel = model;
             mListener = listener;
             mErrorListener = errorListener;
@@ -109,5 +127,27 @@ public class MPDAlbumImageProvider extends ArtProvider {
                 mErrorListener.fetchLocalFailed(mModel);
             }
         }
+
+        @Override
+        public File createArtworkFile() {
+            if (mDownloadDirectory == null) {
+                return null;
+            }
+            try {
+                return File.createTempFile("albumart", null, mDownloadDirectory);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not create artwork file: " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        public void handleAlbumArtFile(File artworkFile, String url) {
+            ImageResponse response = new ImageResponse();
+            response.model = mModel;
+            response.imageFile = artworkFile;
+            response.url = url;
+            mListener.onResponse(response);
+        }
     }
 }
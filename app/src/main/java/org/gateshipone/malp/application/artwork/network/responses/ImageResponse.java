@@ -24,8 +24,15 @@ package org.gateshipone.malp.application.artwork.network.responses;
 
 import org.gateshipone.malp.application.artwork.network.ArtworkRequestModel;
 
+import java.io.File;
+
 public class ImageResponse {
     public ArtworkRequestModel model;
     public String url;
     public byte[] image;
+
+    /**
+     * Temporary file containing the image, used instead of image for streamed downloads
+     */
+    public File imageFile;
 }
@@ -34,6 +34,7 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDArtist;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDDirectory;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
+import java.io.File;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 
@@ -341,6 +342,20 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      *              the database entry will have the not_found flag set.
      */
     public synchronized void insertAlbumImage(final MPDAlbum album, final byte[] image) {
+        insertAlbumImage(album, image, null);
+    }
+
+    /**
+     * Inserts the given image file to the albums table. The file is moved to the artwork directory.
+     *
+     * @param album     Album for the associated image file.
+     * @param imageFile File containing the raw image that was downloaded.
+     */
+    public synchronized void insertAlbumImage(final MPDAlbum album, final File imageFile) {
+        insertAlbumImage(album, null, imageFile);
+    }
+
+    private void insertAlbumImage(final MPDAlbum album, final byte[] image, final File imageFile) {
         final SQLiteDatabase database = getWritableDatabase();
 
         final String albumMBID = album.getMBID();
@@ -348,7 +363,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         final String albumArtistName = album.getArtistName();
 
         String artworkFilename = null;
-        if (image != null) {
+        if (image != null || imageFile != null) {
             try {
                 artworkFilename = FileUtils.createSHA256HashForString(albumMBID, albumName, albumArtistName) + ".jpg";
             } catch (NoSuchAlgorithmException e) {
@@ -357,7 +372,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
             }
 
             try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_ALBUM_IMAGES, image);
+                saveArtworkFile(artworkFilename, DIRECTORY_ALBUM_IMAGES, image, imageFile);
             } catch (IOException e) {
                 e.printStackTrace();
                 return;
@@ -371,7 +386,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         values.put(AlbumArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
 
         // If null was given as byte[] set the not_found flag for this entry.
-        values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, image == null ? 1 : 0);
+        values.put(AlbumArtTable.COLUMN_IMAGE_NOT_FOUND, artworkFilename == null ? 1 : 0);
 
         database.replace(AlbumArtTable.TABLE_NAME, "", values);
 
@@ -386,12 +401,26 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
      *              the database entry will have the not_found flag set.
      */
     public synchronized void insertDirectoryImage(final MPDDirectory directory, final byte[] image) {
+        insertDirectoryImage(directory, image, null);
+    }
+
+    /**
+     * Inserts the given image file to the directory table. The file is moved to the artwork directory.
+     *
+     * @param directory Directory for the associated image file.
+     * @param imageFile File containing the raw image that was downloaded.
+     */
+    public synchronized void insertDirectoryImage(final MPDDirectory directory, final File imageFile) {
+        insertDirectoryImage(directory, null, imageFile);
+    }
+
+    private void insertDirectoryImage(final MPDDirectory directory, final byte[] image, final File imageFile) {
         final SQLiteDatabase database = getWritableDatabase();
 
         final String path = directory.getPath();
 
         String artworkFilename = null;
-        if (image != null) {
+        if (image != null || imageFile != null) {
             try {
                 artworkFilename = FileUtils.createSHA256HashForString(path) + ".jpg";
             } catch (NoSuchAlgorithmException e) {
@@ -400,7 +429,7 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
             }
 
             try {
-                FileUtils.saveArtworkFile(mApplicationContext, artworkFilename, DIRECTORY_DIRECTORY_IMAGES, image);
+                saveArtworkFile(artworkFilename, DIRECTORY_DIRECTORY_IMAGES, image, imageFile);
             } catch (IOException e) {
                 e.printStackTrace();
                 return;
@@ -412,13 +441,21 @@ public class ArtworkDatabaseManager extends SQLiteOpenHelper {
         values.put(DirectoryArtTable.COLUMN_IMAGE_FILE_PATH, artworkFilename);
 
         // If null was given as byte[] set the not_found flag for this entry.
-        values.put(DirectoryArtTable.COLUMN_IMAGE_NOT_FOUND, image == null ? 1 : 0);
+        values.put(DirectoryArtTable.COLUMN_IMAGE_NOT_FOUND, artworkFilename == null ? 1 : 0);
 
         database.replace(DirectoryArtTable.TABLE_NAME, "", values);
 
         database.close();
     }
 
+    private void saveArtworkFile(final String fileName, final String dirName, final byte[] image, final File imageFile) throws IOException {
+        if (image != null) {
+            FileUtils.saveArtworkFile(mApplicationContext, fileName, dirName, image);
+        } else {
+            FileUtils.moveArtworkFile(mApplicationContext, fileName, dirName, imageFile);
+        }
+    }
+
 
     /**
      * Removes all lines from the artists table
@@ -40,6 +40,7 @@ import org.gateshipone.malp.application.activities.MainActivity;
 import org.gateshipone.malp.application.callbacks.FABFragmentCallback;
 import org.gateshipone.malp.application.utils.ThemeUtils;
 import org.gateshipone.malp.application.views.VolumeStepPreferenceDialog;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
 
 public class SettingsFragment extends PreferenceFragmentCompat implements SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String TAG = SettingsFragment.class.getSimpleName();
@@ -139,6 +140,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements Shared
             intent.putExtra(MainActivity.MAINACTIVITY_INTENT_EXTRA_REQUESTEDVIEW, MainActivity.REQUESTEDVIEW.SETTINGS.ordinal());
             requireActivity().finish();
             startActivity(intent);
+        } else if (key.equals(getString(R.string.pref_dedicated_idle_connection_key))) {
+            MPDInterface.getGenericInstance().setDedicatedIdleConnection(sharedPreferences.getBoolean(key, getResources().getBoolean(R.bool.pref_dedicated_idle_connection_default)));
         }
     }
 
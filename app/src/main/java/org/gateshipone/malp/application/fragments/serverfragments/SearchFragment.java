@@ -47,6 +47,8 @@ import androidx.appcompat.widget.SearchView;
 import androidx.core.graphics.drawable.DrawableCompat;
 import androidx.lifecycle.ViewModelProvider;
 
+import com.google.android.material.snackbar.Snackbar;
+
 import org.gateshipone.malp.R;
 import org.gateshipone.malp.application.adapters.FileAdapter;
 import org.gateshipone.malp.application.callbacks.AddPathToPlaylist;
@@ -55,12 +57,14 @@ import org.gateshipone.malp.application.utils.ThemeUtils;
 import org.gateshipone.malp.application.viewmodels.GenericViewModel;
 import org.gateshipone.malp.application.viewmodels.SearchResultViewModel;
 import org.gateshipone.malp.application.views.NowPlayingView;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseTrackListProgress;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCommands;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 
 public class SearchFragment extends GenericMPDFragment<MPDFileEntry> implements AdapterView.OnItemClickListener, View.OnFocusChangeListener {
@@ -89,6 +93,23 @@ public class SearchFragment extends GenericMPDFragment<MPDFileEntry> implements
      */
     private int mContextMenuPosition;
 
+    /**
+     * Time to wait after the last change of the search text before searching.
+     */
+    private static final long SEARCH_DEBOUNCE_DELAY = 400;
+
+    /**
+     * Minimum length of the search text to start a search while typing.
+     */
+    private static final int TYPE_AHEAD_MIN_LENGTH = 3;
+
+    private final Runnable mDebouncedSearch = this::startSearch;
+
+    /**
+     * Shows the progress while the search results are added to the playlist.
+     */
+    private Snackbar mAddProgressSnackbar;
+
     public static SearchFragment newInstance() {
         return new SearchFragment();
     }
@@ -329,7 +350,7 @@ public class SearchFragment extends GenericMPDFragment<MPDFileEntry> implements
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == R.id.action_add_search_result) {
             if (!mSearchText.isEmpty()) {
-                MPDQueryHandler.searchAddFiles(mSearchText, mSearchType);
+                MPDQueryHandler.searchAddFiles(mSearchText, mSearchType, new AddProgressHandler(this));
             }
             return true;
         }
@@ -396,6 +417,70 @@ public class SearchFragment extends GenericMPDFragment<MPDFileEntry> implements
         inputMethodManager.toggleSoftInput(0, InputMethodManager.SHOW_IMPLICIT);
     }
 
+    @Override
+    public void onDestroyView() {
+        mSearchView.removeCallbacks(mDebouncedSearch);
+        hideAddProgress();
+        super.onDestroyView();
+    }
+
+    /**
+     * Searches for the current search text. A pending search while typing is dropped.
+     */
+    private void startSearch() {
+        mSearchView.removeCallbacks(mDebouncedSearch);
+        ((SearchResultViewModel) getViewModel()).setSearchOptions(mSearchText, mSearchType);
+        refreshContent();
+    }
+
+    private void showAddProgress(final int added, final int total) {
+        final View view = getView();
+        if (view == null) {
+            return;
+        }
+
+        final String text = getString(R.string.snackbar_tracks_added_format, added, total);
+        if (mAddProgressSnackbar == null) {
+            mAddProgressSnackbar = Snackbar.make(view, text, Snackbar.LENGTH_INDEFINITE);
+            mAddProgressSnackbar.show();
+        } else {
+            mAddProgressSnackbar.setText(text);
+        }
+    }
+
+    private void hideAddProgress() {
+        if (mAddProgressSnackbar != null) {
+            mAddProgressSnackbar.dismiss();
+            mAddProgressSnackbar = null;
+        }
+    }
+
+    private static class AddProgressHandler extends MPDResponseTrackListProgress {
+        private final WeakReference<SearchFragment> mSearchFragment;
+
+        private AddProgressHandler(final SearchFragment searchFragment) {
+            mSearchFragment = new WeakReference<>(searchFragment);
+        }
+
+        @Override
+        public void handleTracksAdded(final int added, final int total) {
+            final SearchFragment searchFragment = mSearchFragment.get();
+
+            if (searchFragment != null) {
+                searchFragment.showAddProgress(added, total);
+            }
+        }
+
+        @Override
+        public void handleTrackListAdded() {
+            final SearchFragment searchFragment = mSearchFragment.get();
+
+            if (searchFragment != null) {
+                searchFragment.hideAddProgress();
+            }
+        }
+    }
+
     private class FABOnClickListener implements View.OnClickListener {
 
         @Override
@@ -457,13 +542,25 @@ public class SearchFragment extends GenericMPDFragment<MPDFileEntry> implements
         @Override
         public boolean onQueryTextSubmit(String query) {
             mSearchText = query;
-            ((SearchResultViewModel) getViewModel()).setSearchOptions(mSearchText, mSearchType);
-            refreshContent();
+            startSearch();
             return false;
         }
 
         @Override
         public boolean onQueryTextChange(String newText) {
+            if (newText.equals(mSearchText)) {
+                return false;
+            }
+            mSearchText = newText;
+
+            // Search while typing once the user paused, only the latest text is searched
+            mSearchView.removeCallbacks(mDebouncedSearch);
+            if (newText.length() >= TYPE_AHEAD_MIN_LENGTH) {
+                mSearchView.postDelayed(mDebouncedSearch, SEARCH_DEBOUNCE_DELAY);
+            } else {
+                // Stop a running search so its results do not outlive the text they belong to
+                ((SearchResultViewModel) getViewModel()).clearSearch();
+            }
             return false;
         }
     }
@@ -34,6 +34,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.ViewModelProvider;
 
+import org.gateshipone.malp.BuildConfig;
 import org.gateshipone.malp.R;
 import org.gateshipone.malp.application.utils.FormatHelper;
 import org.gateshipone.malp.application.viewmodels.GenericViewModel;
@@ -148,7 +149,12 @@ public class ServerStatisticFragment extends GenericMPDFragment<MPDStatistics> {
 
             final MPDCapabilities capabilities = MPDInterface.getGenericInstance().getServerCapabilities();
             if (capabilities != null) {
-                mServerFeatures.setText(capabilities.getServerFeatures());
+                String serverFeatures = capabilities.getServerFeatures();
+                if (BuildConfig.DEBUG) {
+                    // Waiting times of the query handler show if requests of a priority starve
+                    serverFeatures += '\n' + MPDQueryHandler.getActionQueue().getStatistics();
+                }
+                mServerFeatures.setText(serverFeatures);
             }
         }
     }
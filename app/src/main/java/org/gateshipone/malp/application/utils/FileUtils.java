@@ -25,6 +25,7 @@ package org.gateshipone.malp.application.utils;
 import android.content.Context;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.security.MessageDigest;
@@ -91,6 +92,34 @@ public class FileUtils {
     }
 
 
+    /**
+     * Moves an image file to the given directory. The file is copied if it can not be renamed.
+     *
+     * @param context  The application context to get the files directory of the app.
+     * @param fileName The name that will be used to save the file.
+     * @param dirName  The directory name in which the file is saved.
+     * @param image    The image file that will be moved.
+     * @throws IOException If the file couldn't be written.
+     */
+    public static void moveArtworkFile(final Context context, final String fileName, final String dirName, final File image) throws IOException {
+        final File artworkDir = new File(context.getFilesDir() + "/" + ARTWORK_DIR + "/" + dirName + "/");
+        artworkDir.mkdirs();
+
+        final File imageFile = new File(artworkDir, fileName);
+
+        if (!image.renameTo(imageFile)) {
+            try (FileInputStream inputStream = new FileInputStream(image);
+                 FileOutputStream outputStream = new FileOutputStream(imageFile)) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    outputStream.write(buffer, 0, read);
+                }
+            }
+            image.delete();
+        }
+    }
+
     /**
      * Generates the full absolute file path for an artwork image
      * @param context Context used for directory resolving
@@ -53,7 +53,7 @@ public class AlbumTracksViewModel extends GenericViewModel<MPDFileEntry> {
     private AlbumTracksViewModel(@NonNull final Application application, final MPDAlbum album, final boolean useArtistSort) {
         super(application);
 
-        mTrackResponseHandler = new TrackResponseHandler(this);
+        mTrackResponseHandler = bindResponseHandler(new TrackResponseHandler(this));
 
         mArtistName = album.getArtistName();
         mArtistSortName = album.getArtistSortName();
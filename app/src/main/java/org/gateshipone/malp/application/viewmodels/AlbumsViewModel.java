@@ -34,6 +34,7 @@ import org.gateshipone.malp.R;
 import org.gateshipone.malp.application.utils.PreferenceHelper;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseAlbumList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
 
 import java.lang.ref.WeakReference;
@@ -55,7 +56,7 @@ public class AlbumsViewModel extends GenericViewModel<MPDAlbum> {
     private AlbumsViewModel(@NonNull final Application application, final String artistName, final String albumsPath) {
         super(application);
 
-        mAlbumsResponseHandler = new AlbumResponseHandler(this);
+        mAlbumsResponseHandler = bindResponseHandler(new AlbumResponseHandler(this));
 
         mArtistName = artistName;
         mAlbumsPath = albumsPath;
@@ -63,6 +64,11 @@ public class AlbumsViewModel extends GenericViewModel<MPDAlbum> {
         final SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(application);
         mSortOrder = PreferenceHelper.getMPDAlbumSortOrder(sharedPref, application);
         mUseArtistSort = sharedPref.getBoolean(application.getString(R.string.pref_use_artist_sort_key), application.getResources().getBoolean(R.bool.pref_use_artist_sort_default));
+
+        if ((null == artistName || artistName.isEmpty()) && (null == albumsPath || albumsPath.isEmpty())) {
+            // The list may be shown from the stored cache first
+            reloadOnSubsystemChange(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE);
+        }
     }
 
     @Override
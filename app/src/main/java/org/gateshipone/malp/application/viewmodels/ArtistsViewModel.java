@@ -30,6 +30,7 @@ import androidx.lifecycle.ViewModelProvider;
 
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseArtistList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDArtist;
 
 import java.lang.ref.WeakReference;
@@ -46,10 +47,13 @@ public class ArtistsViewModel extends GenericViewModel<MPDArtist> {
     private ArtistsViewModel(final Application application, final boolean useAlbumArtists, final boolean useArtistSort) {
         super(application);
 
-        mArtistResponseHandler = new ArtistResponseHandler(this);
+        mArtistResponseHandler = bindResponseHandler(new ArtistResponseHandler(this));
 
         mUseAlbumArtists = useAlbumArtists;
         mUseArtistSort = useArtistSort;
+
+        // The lists may be shown from the stored cache first
+        reloadOnSubsystemChange(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE);
     }
 
     @Override
@@ -33,27 +33,35 @@ import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 
 import java.lang.ref.WeakReference;
+import java.util.Collections;
 import java.util.List;
 
 public class FilesViewModel extends GenericViewModel<MPDFileEntry> {
 
-    private final FilesResponseHandler mFilesResponseHandler;
+    /**
+     * Response handler of the latest listing. Batches of older listings are ignored.
+     */
+    private FilesResponseHandler mFilesResponseHandler;
 
     private final String mPath;
 
     private FilesViewModel(@NonNull final Application application, final String path) {
         super(application);
 
-        mFilesResponseHandler = new FilesResponseHandler(this);
-
         mPath = path;
     }
 
     @Override
     void loadData() {
+        mFilesResponseHandler = bindResponseHandler(new FilesResponseHandler(this));
         MPDQueryHandler.getFiles(mFilesResponseHandler, mPath);
     }
 
+    @Override
+    void onDataBatchesComplete(final List<MPDFileEntry> data) {
+        Collections.sort(data);
+    }
+
     private static class FilesResponseHandler extends MPDResponseFileList {
 
         private final WeakReference<FilesViewModel> mFilesViewModel;
@@ -66,10 +74,19 @@ public class FilesViewModel extends GenericViewModel<MPDFileEntry> {
         public void handleTracks(final List<MPDFileEntry> fileList, final int start, final int end) {
             final FilesViewModel filesViewModel = mFilesViewModel.get();
 
-            if (filesViewModel != null) {
+            if (filesViewModel != null && filesViewModel.mFilesResponseHandler == this) {
                 filesViewModel.setData(fileList);
             }
         }
+
+        @Override
+        public void handleTrackBatch(final List<MPDFileEntry> batch, final boolean lastBatch) {
+            final FilesViewModel filesViewModel = mFilesViewModel.get();
+
+            if (filesViewModel != null && filesViewModel.mFilesResponseHandler == this) {
+                filesViewModel.addDataBatch(batch, lastBatch);
+            }
+        }
     }
 
     public static class FilesViewModelFactory implements ViewModelProvider.Factory {
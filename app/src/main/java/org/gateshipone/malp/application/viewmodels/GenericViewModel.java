@@ -23,20 +23,43 @@
 package org.gateshipone.malp.application.viewmodels;
 
 import android.app.Application;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import org.gateshipone.malp.mpdservice.handlers.MPDIdleChangeHandler;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCancellationToken;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDGenericItem;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 public abstract class GenericViewModel<T extends MPDGenericItem> extends AndroidViewModel {
 
     private final MutableLiveData<List<T>> mData;
 
+    private SubsystemChangeListener mSubsystemChangeListener;
+
+    /**
+     * Cancels the pending requests of this view model once it is cleared.
+     */
+    private final MPDCancellationToken mCancellationToken = new MPDCancellationToken();
+
+    /**
+     * Data of a listing that is received in batches and not yet complete.
+     */
+    private List<T> mPendingData;
+
     abstract void loadData();
 
     GenericViewModel(@NonNull final Application application) {
@@ -50,6 +73,8 @@ public abstract class GenericViewModel<T extends MPDGenericItem> extends Android
     }
 
     public void reloadData() {
+        // Batches of a listing that is still running belong to the previous request
+        discardDataBatches();
         loadData();
     }
 
@@ -60,4 +85,108 @@ public abstract class GenericViewModel<T extends MPDGenericItem> extends Android
     protected void setData(final List<T> data) {
         mData.setValue(data);
     }
+
+    /**
+     * Adds a batch of a listing that is received in parts. The first batch is shown right away,
+     * the complete list once the last batch was received.
+     *
+     * @param batch     Items of the batch
+     * @param lastBatch True if this is the last batch of the listing
+     */
+    protected void addDataBatch(final List<T> batch, final boolean lastBatch) {
+        final boolean firstBatch = mPendingData == null;
+        if (firstBatch) {
+            mPendingData = new ArrayList<>(batch);
+        } else {
+            mPendingData.addAll(batch);
+        }
+
+        if (lastBatch) {
+            final List<T> data = mPendingData;
+            mPendingData = null;
+            onDataBatchesComplete(data);
+            setData(data);
+        } else if (firstBatch) {
+            setData(new ArrayList<>(mPendingData));
+        }
+    }
+
+    /**
+     * Discards the batches of an incomplete listing, e.g. when it was superseded by a new request.
+     */
+    protected void discardDataBatches() {
+        mPendingData = null;
+    }
+
+    /**
+     * Called with the complete list of a listing received in batches before it is shown.
+     *
+     * @param data Complete list of items
+     */
+    void onDataBatchesComplete(final List<T> data) {
+    }
+
+    /**
+     * Ties the requests answered by the given handler to the lifecycle of this view model.
+     * They are dropped or aborted when the view model is cleared.
+     *
+     * @param responseHandler Handler that receives the data of this view model
+     * @return The given handler
+     */
+    <H extends MPDResponseHandler> H bindResponseHandler(final H responseHandler) {
+        responseHandler.setCancellationToken(mCancellationToken);
+        return responseHandler;
+    }
+
+    /**
+     * Reloads the data automatically if one of the given subsystems changed on the server.
+     *
+     * @param subsystems Subsystems the data of this view model depends on
+     */
+    void reloadOnSubsystemChange(final MPDResponses.MPD_SUBSYSTEM... subsystems) {
+        if (mSubsystemChangeListener != null) {
+            MPDInterface.getGenericInstance().removeMPDIdleChangeHandler(mSubsystemChangeListener);
+        }
+
+        mSubsystemChangeListener = new SubsystemChangeListener(this, subsystems);
+        MPDInterface.getGenericInstance().addMPDIdleChangeHandler(mSubsystemChangeListener);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+
+        mCancellationToken.cancel();
+
+        if (mSubsystemChangeListener != null) {
+            MPDInterface.getGenericInstance().removeMPDIdleChangeHandler(mSubsystemChangeListener);
+            mSubsystemChangeListener = null;
+        }
+    }
+
+    private static class SubsystemChangeListener extends MPDIdleChangeHandler {
+        private final WeakReference<GenericViewModel<?>> mViewModel;
+
+        private final Set<MPDResponses.MPD_SUBSYSTEM> mSubsystems;
+
+        SubsystemChangeListener(final GenericViewModel<?> viewModel, final MPDResponses.MPD_SUBSYSTEM... subsystems) {
+            super(Looper.getMainLooper());
+            mViewModel = new WeakReference<>(viewModel);
+            mSubsystems = EnumSet.noneOf(MPDResponses.MPD_SUBSYSTEM.class);
+            Collections.addAll(mSubsystems, subsystems);
+        }
+
+        @Override
+        protected void onIdle() {
+        }
+
+        @Override
+        protected void onNoIdle(final Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+            final GenericViewModel<?> viewModel = mViewModel.get();
+
+            if (viewModel != null && !Collections.disjoint(mSubsystems, changedSubsystems)) {
+                viewModel.reloadData();
+            }
+        }
+    }
 }
@@ -30,6 +30,7 @@ import androidx.lifecycle.ViewModelProvider;
 
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseOutputList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDOutput;
 
 import java.lang.ref.WeakReference;
@@ -42,7 +43,9 @@ public class OutputsViewModel extends GenericViewModel<MPDOutput> {
     private OutputsViewModel(@NonNull final Application application) {
         super(application);
 
-        mOutputsHandler = new OutputsHandler(this);
+        mOutputsHandler = bindResponseHandler(new OutputsHandler(this));
+
+        reloadOnSubsystemChange(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_OUTPUT);
     }
 
     @Override
@@ -30,6 +30,7 @@ import androidx.lifecycle.ViewModelProvider;
 
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 
 import java.lang.ref.WeakReference;
@@ -44,9 +45,14 @@ public class PlaylistTracksViewModel extends GenericViewModel<MPDFileEntry> {
     private PlaylistTracksViewModel(@NonNull final Application application, final String playlistPath) {
         super(application);
 
-        mTrackResponseHandler = new TrackResponseHandler(this);
+        mTrackResponseHandler = bindResponseHandler(new TrackResponseHandler(this));
 
         mPlaylistPath = playlistPath;
+
+        // The current queue is kept up to date by the incremental plchanges sync
+        if ((null != mPlaylistPath) && !mPlaylistPath.equals("")) {
+            reloadOnSubsystemChange(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_STORED_PLAYLIST);
+        }
     }
 
     @Override
@@ -31,6 +31,7 @@ import androidx.lifecycle.ViewModelProvider;
 import org.gateshipone.malp.R;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDPlaylist;
 
@@ -46,9 +47,11 @@ public class PlaylistsViewModel extends GenericViewModel<MPDFileEntry> {
     private PlaylistsViewModel(@NonNull final Application application, final boolean addHeader) {
         super(application);
 
-        mPlaylistResponseHandler = new PlaylistResponseHandler(this);
+        mPlaylistResponseHandler = bindResponseHandler(new PlaylistResponseHandler(this));
 
         mAddHeader = addHeader;
+
+        reloadOnSubsystemChange(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_STORED_PLAYLIST);
     }
 
     @Override
@@ -30,6 +30,8 @@ import androidx.lifecycle.ViewModelProvider;
 
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.librarymirror.MPDLibraryMirror;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCancellationToken;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCommands;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 
@@ -39,7 +41,16 @@ import java.util.List;
 
 public class SearchResultViewModel extends GenericViewModel<MPDFileEntry> {
 
-    private final MPDResponseFileList pTrackResponseHandler;
+    /**
+     * Response handler of the latest search. Results of older searches are ignored.
+     */
+    private MPDResponseFileList pTrackResponseHandler;
+
+    /**
+     * Token of the latest search. It is cancelled once the search is superseded or the view
+     * model is cleared.
+     */
+    private MPDCancellationToken mSearchCancellationToken;
 
     private String mSearchString;
 
@@ -47,8 +58,6 @@ public class SearchResultViewModel extends GenericViewModel<MPDFileEntry> {
 
     public SearchResultViewModel(@NonNull final Application application) {
         super(application);
-
-        pTrackResponseHandler = new TrackResponseHandler(this);
     }
 
     public void setSearchOptions(final String searchTerm, final MPDCommands.MPD_SEARCH_TYPE type) {
@@ -56,15 +65,51 @@ public class SearchResultViewModel extends GenericViewModel<MPDFileEntry> {
         mSearchType = type;
     }
 
+    /**
+     * Cancels the latest search and clears its results, e.g. when the search text got too short.
+     */
+    public void clearSearch() {
+        if (mSearchCancellationToken != null) {
+            mSearchCancellationToken.cancel();
+        }
+        pTrackResponseHandler = null;
+        mSearchString = null;
+
+        discardDataBatches();
+        setData(new ArrayList<>());
+    }
+
     @Override
     void loadData() {
+        if (mSearchCancellationToken != null) {
+            mSearchCancellationToken.cancel();
+        }
+        mSearchCancellationToken = new MPDCancellationToken();
+
+        pTrackResponseHandler = new TrackResponseHandler(this);
+        pTrackResponseHandler.setCancellationToken(mSearchCancellationToken);
+
         if (mSearchString != null && !mSearchString.isEmpty() && mSearchType != null) {
-            MPDQueryHandler.searchFiles(mSearchString, mSearchType, pTrackResponseHandler);
+            final MPDLibraryMirror libraryMirror = MPDLibraryMirror.getInstance(getApplication());
+            if (libraryMirror.isReady()) {
+                libraryMirror.searchFiles(mSearchString, mSearchType, pTrackResponseHandler);
+            } else {
+                MPDQueryHandler.searchFiles(mSearchString, mSearchType, pTrackResponseHandler);
+            }
         } else {
             setData(new ArrayList<>());
         }
     }
 
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+
+        if (mSearchCancellationToken != null) {
+            mSearchCancellationToken.cancel();
+        }
+    }
+
     private static class TrackResponseHandler extends MPDResponseFileList {
         private final WeakReference<SearchResultViewModel> mSearchResultViewModel;
 
@@ -76,10 +121,19 @@ public class SearchResultViewModel extends GenericViewModel<MPDFileEntry> {
         public void handleTracks(final List<MPDFileEntry> trackList, final int start, final int end) {
             SearchResultViewModel searchResultViewModel = mSearchResultViewModel.get();
 
-            if (searchResultViewModel != null) {
+            if (searchResultViewModel != null && searchResultViewModel.pTrackResponseHandler == this) {
                 searchResultViewModel.setData(trackList);
             }
         }
+
+        @Override
+        public void handleTrackBatch(final List<MPDFileEntry> batch, final boolean lastBatch) {
+            SearchResultViewModel searchResultViewModel = mSearchResultViewModel.get();
+
+            if (searchResultViewModel != null && searchResultViewModel.pTrackResponseHandler == this) {
+                searchResultViewModel.addDataBatch(batch, lastBatch);
+            }
+        }
     }
 
     public static class SearchResultViewModelFactory implements ViewModelProvider.Factory {
@@ -43,7 +43,7 @@ public class StatisticsViewModel extends GenericViewModel<MPDStatistics> {
     private StatisticsViewModel(@NonNull final Application application) {
         super(application);
 
-        mServerStatisticsHandler = new ServerStatisticsHandler(this);
+        mServerStatisticsHandler = bindResponseHandler(new ServerStatisticsHandler(this));
     }
 
     @Override
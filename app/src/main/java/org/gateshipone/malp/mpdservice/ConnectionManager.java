@@ -36,11 +36,13 @@ import org.gateshipone.malp.application.background.BackgroundService;
 import org.gateshipone.malp.mpdservice.handlers.MPDConnectionStateChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDCommandHandler;
 import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDStateMonitoringHandler;
+import org.gateshipone.malp.mpdservice.librarymirror.MPDLibraryMirror;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDCurrentStatus;
 import org.gateshipone.malp.mpdservice.profilemanagement.MPDProfileManager;
 import org.gateshipone.malp.mpdservice.profilemanagement.MPDServerProfile;
 
+import java.io.File;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -120,6 +122,13 @@ public class ConnectionManager extends MPDConnectionStateChangeHandler {
 
         mConnectionManager.mServerProfile = profile;
 
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
+        MPDInterface.getGenericInstance().setDedicatedIdleConnection(sharedPref.getBoolean(context.getString(R.string.pref_dedicated_idle_connection_key),
+                context.getResources().getBoolean(R.bool.pref_dedicated_idle_connection_default)));
+        MPDInterface.getGenericInstance().setCacheFile(getLibraryCacheFile(profile, context));
+        MPDLibraryMirror.getInstance(context).setProfile(profile, sharedPref.getBoolean(context.getString(R.string.pref_library_mirror_key),
+                context.getResources().getBoolean(R.bool.pref_library_mirror_default)));
+
         MPDCommandHandler.getHandler().setServerParameters(mHostname, mPassword, mPort);
     }
 
@@ -230,6 +239,8 @@ public class ConnectionManager extends MPDConnectionStateChangeHandler {
         // Check if current server can deliver artwork over MPD protocol
         final boolean mpdCoverEnabled = mServerProfile.getMPDCoverEnabled() && MPDInterface.getGenericInstance().getServerCapabilities().hasAlbumArt();
         MPDAlbumImageProvider.getInstance().setActive(mpdCoverEnabled);
+
+        MPDLibraryMirror.getInstance(mApplicationContext).sync();
     }
 
     public synchronized void setAutoconnect(boolean enabled) {
@@ -332,6 +343,15 @@ public class ConnectionManager extends MPDConnectionStateChangeHandler {
 
     public void removeProfile(MPDServerProfile profile, Context context) {
         MPDProfileManager.getInstance(context).deleteProfile(profile);
+        MPDInterface.getGenericInstance().deleteCacheFile(getLibraryCacheFile(profile, context));
+        MPDLibraryMirror.getInstance(context).removeProfile(profile);
+    }
+
+    /**
+     * @return File to store the library lists of the given profile in
+     */
+    private static File getLibraryCacheFile(MPDServerProfile profile, Context context) {
+        return new File(context.getCacheDir(), "library_" + profile.getCreationDate());
     }
 
 
@@ -26,15 +26,20 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
 
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
+
+import java.util.EnumSet;
+import java.util.Set;
+
 public abstract class MPDIdleChangeHandler extends Handler {
     public MPDIdleChangeHandler(Looper looper) {
         super(looper);
     }
 
-    private enum IDLE_STATE {
-        IDLE,
-        NOIDLE,
-    }
+    private static final int MSG_IDLE = 0;
+
+    private static final int MSG_NOIDLE = 1;
+
     /**
      * Handles the change of the connection of the MPDConnection. Can be used
      * to get notified on connect & disconnect.
@@ -44,31 +49,42 @@ public abstract class MPDIdleChangeHandler extends Handler {
     public void handleMessage(Message msg) {
         super.handleMessage(msg);
 
-        IDLE_STATE state = (IDLE_STATE) msg.obj;
-        switch (state) {
-            case IDLE: {
+        switch (msg.what) {
+            case MSG_IDLE: {
                 onIdle();
                 break;
             }
-            case NOIDLE: {
-                onNoIdle();
+            case MSG_NOIDLE: {
+                // Only noIdle() sends this message and always attaches an EnumSet copy.
+                @SuppressWarnings("unchecked")
+                Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems = (Set<MPDResponses.MPD_SUBSYSTEM>) msg.obj;
+                onNoIdle(changedSubsystems);
                 break;
             }
         }
     }
 
     public void idle() {
-        Message msg = obtainMessage();
-        msg.obj = IDLE_STATE.IDLE;
-        sendMessage(msg);
+        sendEmptyMessage(MSG_IDLE);
     }
 
-    public void noIdle() {
-        Message msg = obtainMessage();
-        msg.obj = IDLE_STATE.NOIDLE;
-        sendMessage(msg);
+    /**
+     * Notifies the handler that the idle state is over.
+     *
+     * @param changedSubsystems Subsystems that changed on the server
+     */
+    public void noIdle(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+        EnumSet<MPDResponses.MPD_SUBSYSTEM> subsystems = EnumSet.noneOf(MPDResponses.MPD_SUBSYSTEM.class);
+        subsystems.addAll(changedSubsystems);
+        sendMessage(obtainMessage(MSG_NOIDLE, subsystems));
     }
 
     protected abstract void onIdle();
-    protected abstract void onNoIdle();
+
+    /**
+     * Called when the idle state is over because subsystems changed on the server.
+     *
+     * @param changedSubsystems Subsystems that changed on the server
+     */
+    protected abstract void onNoIdle(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems);
 }
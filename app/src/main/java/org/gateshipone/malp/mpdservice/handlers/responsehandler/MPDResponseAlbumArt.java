@@ -28,11 +28,14 @@ import android.os.Message;
 
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
 
+import java.io.File;
+
 
 
 public abstract class MPDResponseAlbumArt extends MPDResponseHandler {
     private static final String BUNDLE_EXTRA_IMAGE_DATA = "imageData";
     private static final String BUNDLE_EXTRA_FILE = "file";
+    private static final String BUNDLE_EXTRA_IMAGE_FILE = "imageFile";
 
     public MPDResponseAlbumArt(Looper looper) {
         super(looper);
@@ -51,8 +54,22 @@ public abstract class MPDResponseAlbumArt extends MPDResponseHandler {
 
         byte[] artworkData = data.getByteArray(BUNDLE_EXTRA_IMAGE_DATA);
         String url = data.getString(BUNDLE_EXTRA_FILE);
+        String imageFile = data.getString(BUNDLE_EXTRA_IMAGE_FILE);
+
+        if (imageFile != null) {
+            handleAlbumArtFile(new File(imageFile), url);
+        } else {
+            handleAlbumArt(artworkData, url);
+        }
+    }
 
-        handleAlbumArt(artworkData, url);
+    /**
+     * Creates the file the artwork is streamed to. Called from the thread of the artwork handler.
+     *
+     * @return File to write the artwork to or null to receive the artwork as a byte array
+     */
+    public File createArtworkFile() {
+        return null;
     }
 
     /**
@@ -72,6 +89,35 @@ public abstract class MPDResponseAlbumArt extends MPDResponseHandler {
         sendMessage(message);
     }
 
+    /**
+     * Sends the file from {@link #createArtworkFile()} after the artwork was written to it.
+     *
+     * @param artworkFile File containing the image that was requested from the server
+     * @param url         of the file for which artwork was requested
+     */
+    public void sendAlbumArtworkFile(File artworkFile, String url) {
+        Message message = obtainMessage();
+
+        Bundle data = new Bundle();
+        data.putString(BUNDLE_EXTRA_IMAGE_FILE, artworkFile.getPath());
+        data.putString(BUNDLE_EXTRA_FILE, url);
+
+        message.setData(data);
+        sendMessage(message);
+    }
+
 
     public abstract void handleAlbumArt(byte[] artworkData, String url);
+
+    /**
+     * Handles artwork that was written to the file from {@link #createArtworkFile()}. The
+     * receiver is responsible for deleting the file.
+     *
+     * @param artworkFile File containing the image
+     * @param url         of the file for which artwork was requested
+     */
+    public void handleAlbumArtFile(File artworkFile, String url) {
+        artworkFile.delete();
+        handleAlbumArt(null, url);
+    }
 }
@@ -27,11 +27,19 @@ import android.os.Bundle;
 import android.os.Message;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class MPDResponseFileList extends MPDResponseHandler {
     public static final String EXTRA_WINDOW_START = "windowstart";
     public static final String EXTRA_WINDOW_END = "windowend";
+    public static final String EXTRA_BATCH = "batch";
+    public static final String EXTRA_LAST_BATCH = "lastbatch";
+
+    /**
+     * Collects the batches of a listing for handlers that do not handle batches on their own.
+     */
+    private List<MPDFileEntry> mPendingBatches;
 
     public MPDResponseFileList() {
 
@@ -53,7 +61,11 @@ public abstract class MPDResponseFileList extends MPDResponseHandler {
 
         /* Call album response handler */
         List<MPDFileEntry> trackList = (List<MPDFileEntry>) msg.obj;
-        handleTracks(trackList, windowStart, windowEnd);
+        if (args.getBoolean(EXTRA_BATCH)) {
+            handleTrackBatch(trackList, args.getBoolean(EXTRA_LAST_BATCH));
+        } else {
+            handleTracks(trackList, windowStart, windowEnd);
+        }
     }
 
     public void sendFileList(List<MPDFileEntry> fileList) {
@@ -72,6 +84,45 @@ public abstract class MPDResponseFileList extends MPDResponseHandler {
         sendMessage(responseMessage);
     }
 
+    /**
+     * Sends a part of a large listing. The last batch of a listing must always be sent, even
+     * if it is empty, to signal that the listing is complete.
+     *
+     * @param batch     Entries of this batch
+     * @param lastBatch True if this is the last batch of the listing
+     */
+    public void sendFileListBatch(List<MPDFileEntry> batch, boolean lastBatch) {
+        Message responseMessage = this.obtainMessage();
+        responseMessage.obj = batch;
+        Bundle data = new Bundle();
+        data.putBoolean(MPDResponseFileList.EXTRA_BATCH, true);
+        data.putBoolean(MPDResponseFileList.EXTRA_LAST_BATCH, lastBatch);
+        responseMessage.setData(data);
+        sendMessage(responseMessage);
+    }
+
+    /**
+     * Called for every batch of a listing that is sent in parts. By default the batches are
+     * collected and {@link #handleTracks} is called with the complete list. Override this to
+     * show the first entries before the complete listing is received.
+     *
+     * @param batch     Entries of this batch
+     * @param lastBatch True if this is the last batch of the listing
+     */
+    public void handleTrackBatch(List<MPDFileEntry> batch, boolean lastBatch) {
+        if (mPendingBatches == null) {
+            mPendingBatches = new ArrayList<>(batch);
+        } else {
+            mPendingBatches.addAll(batch);
+        }
+
+        if (lastBatch) {
+            List<MPDFileEntry> fileList = mPendingBatches;
+            mPendingBatches = null;
+            handleTracks(fileList, 0, 0);
+        }
+    }
+
     /**
      * Abstract method to be implemented by the user of the MPD implementation.
      * This should be a callback for the UI thread and run in the UI thread.
@@ -26,11 +26,18 @@ package org.gateshipone.malp.mpdservice.handlers.responsehandler;
 import android.os.Handler;
 import android.os.Looper;
 
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCancellationToken;
+
 /**
  * Parent class for all response handlers
  */
 public abstract class MPDResponseHandler extends Handler {
 
+    /**
+     * Token to cancel the requests answered by this handler, e.g. when its receiver is gone.
+     */
+    private MPDCancellationToken mCancellationToken;
+
     public MPDResponseHandler() {
         super();
     }
@@ -38,4 +45,12 @@ public abstract class MPDResponseHandler extends Handler {
     public MPDResponseHandler(Looper looper) {
         super(looper);
     }
+
+    public void setCancellationToken(MPDCancellationToken token) {
+        mCancellationToken = token;
+    }
+
+    public MPDCancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
 }
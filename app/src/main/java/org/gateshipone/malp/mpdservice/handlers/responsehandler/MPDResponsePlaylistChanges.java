@@ -0,0 +1,80 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.handlers.responsehandler;
+
+
+import android.os.Message;
+
+import androidx.annotation.Nullable;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+
+import java.util.List;
+
+public abstract class MPDResponsePlaylistChanges extends MPDResponseHandler {
+
+    public MPDResponsePlaylistChanges() {
+
+    }
+
+    /**
+     * Handle function for the changes of the current playlist. This only calls the abstract method
+     * which needs to get implemented by the user of this class.
+     * @param msg Message object containing the list of changed tracks, the new playlist version
+     *            and the new playlist length
+     */
+    @Override
+    public void handleMessage(Message msg) {
+        super.handleMessage(msg);
+
+        @SuppressWarnings("unchecked")
+        List<MPDFileEntry> changes = (List<MPDFileEntry>) msg.obj;
+        handlePlaylistChanges(changes, msg.arg1, msg.arg2);
+    }
+
+    /**
+     * Send the playlist changes to the receiving handler
+     * @param changes Changed tracks with their new position or null if the playlist needs
+     *                to be reloaded completely
+     * @param version Playlist version after the changes
+     * @param length  Playlist length after the changes
+     */
+    public void sendPlaylistChanges(@Nullable List<MPDFileEntry> changes, int version, int length) {
+        Message responseMessage = this.obtainMessage();
+        responseMessage.obj = changes;
+        responseMessage.arg1 = version;
+        responseMessage.arg2 = length;
+        sendMessage(responseMessage);
+    }
+
+    /**
+     * Abstract method to be implemented by the user of the MPD implementation.
+     * This should be a callback for the UI thread and run in the UI thread.
+     * @param changes Changed tracks sorted by their position or null if the playlist
+     *                needs to be reloaded completely
+     * @param version Playlist version after the changes
+     * @param length  Playlist length after the changes
+     */
+    abstract public void handlePlaylistChanges(@Nullable List<MPDFileEntry> changes, int version, int length);
+}
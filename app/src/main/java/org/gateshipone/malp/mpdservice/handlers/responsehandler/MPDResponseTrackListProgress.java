@@ -0,0 +1,83 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.malp.mpdservice.handlers.responsehandler;
+
+
+import android.os.Message;
+
+/**
+ * Receives the progress of adding a list of tracks to the current playlist.
+ */
+public abstract class MPDResponseTrackListProgress extends MPDResponseHandler {
+
+    private static final int MSG_TRACKS_ADDED = 0;
+
+    private static final int MSG_TRACK_LIST_ADDED = 1;
+
+    public MPDResponseTrackListProgress() {
+
+    }
+
+    @Override
+    public void handleMessage(Message msg) {
+        super.handleMessage(msg);
+
+        if (msg.what == MSG_TRACKS_ADDED) {
+            handleTracksAdded(msg.arg1, msg.arg2);
+        } else if (msg.what == MSG_TRACK_LIST_ADDED) {
+            handleTrackListAdded();
+        }
+    }
+
+    /**
+     * Sends the progress after a part of the tracks was added.
+     *
+     * @param added Number of tracks added so far
+     * @param total Number of tracks to add
+     */
+    public void sendTracksAdded(int added, int total) {
+        Message responseMessage = obtainMessage(MSG_TRACKS_ADDED, added, total);
+        sendMessage(responseMessage);
+    }
+
+    /**
+     * Signals that adding the tracks finished, also if it failed.
+     */
+    public void sendTrackListAdded() {
+        sendEmptyMessage(MSG_TRACK_LIST_ADDED);
+    }
+
+    /**
+     * Called in the UI thread after a part of the tracks was added. Not called if the server
+     * added the tracks itself.
+     *
+     * @param added Number of tracks added so far
+     * @param total Number of tracks to add
+     */
+    abstract public void handleTracksAdded(int added, int total);
+
+    /**
+     * Called in the UI thread once adding the tracks finished.
+     */
+    abstract public void handleTrackListAdded();
+}
@@ -0,0 +1,294 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.handlers.serverhandler;
+
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.gateshipone.malp.BuildConfig;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseHandler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Queue of {@link MPDHandlerAction}s ordered by their {@link MPDHandlerAction.PRIORITY}.
+ * Actions of the same priority are handled in order. To avoid starvation, an action of a lower
+ * priority is preferred once it waited longer than the limit of its priority.
+ * <p/>
+ * Identical requests of coalescable action types are merged while the first one is queued or
+ * running, so the server is only queried once. The queue also counts the handled actions and
+ * their waiting times for each priority.
+ */
+public class MPDActionQueue {
+    private static final String TAG = MPDActionQueue.class.getSimpleName();
+
+    private static final int PRIORITY_COUNT = MPDHandlerAction.PRIORITY.values().length;
+
+    /**
+     * Maximum waiting time in ms before an action is preferred, indexed by
+     * {@link MPDHandlerAction.PRIORITY#ordinal()}.
+     */
+    private static final long[] MAX_WAIT_TIME = {0, 2000, 10000};
+
+    private final ArrayDeque<QueuedAction>[] mQueues;
+
+    private final long[] mHandledActions;
+
+    private final long[] mTotalWaitTime;
+
+    private final long[] mMaxWaitTime;
+
+    /**
+     * Action types whose identical requests can be answered with the same result.
+     */
+    private final Set<MPDHandlerAction.NET_HANDLER_ACTION> mCoalescableActions;
+
+    /**
+     * Action that is currently handled and still accepts identical requests.
+     */
+    private MPDHandlerAction mRunningAction;
+
+    private long mCoalescedActions;
+
+    private long mCancelledActions;
+
+    @SuppressWarnings("unchecked")
+    MPDActionQueue(Set<MPDHandlerAction.NET_HANDLER_ACTION> coalescableActions) {
+        mCoalescableActions = coalescableActions;
+        mQueues = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+        }
+        mHandledActions = new long[PRIORITY_COUNT];
+        mTotalWaitTime = new long[PRIORITY_COUNT];
+        mMaxWaitTime = new long[PRIORITY_COUNT];
+    }
+
+    /**
+     * Adds an action to the queue. If an identical request is already queued or running, the
+     * action is merged into it instead.
+     *
+     * @param action Action to add
+     * @return True if the action was queued, false if it was merged
+     */
+    synchronized boolean add(MPDHandlerAction action) {
+        if (mCoalescableActions.contains(action.getAction()) && coalesce(action)) {
+            mCoalescedActions++;
+            return false;
+        }
+        mQueues[action.getPriority().ordinal()].add(new QueuedAction(action, SystemClock.elapsedRealtime()));
+        return true;
+    }
+
+    private boolean coalesce(MPDHandlerAction action) {
+        if (mRunningAction != null && mRunningAction.isSameRequest(action)) {
+            mRunningAction.addCoalescedResponseHandler(action.getResponseHandler());
+            return true;
+        }
+
+        for (ArrayDeque<QueuedAction> queue : mQueues) {
+            for (QueuedAction queuedAction : queue) {
+                if (!queuedAction.mAction.isSameRequest(action)) {
+                    continue;
+                }
+                queuedAction.mAction.addCoalescedResponseHandler(action.getResponseHandler());
+
+                // The merged request must not wait longer than it would have on its own
+                if (action.getPriority().ordinal() < queuedAction.mAction.getPriority().ordinal()) {
+                    queue.remove(queuedAction);
+                    queuedAction.mAction.setPriority(action.getPriority());
+                    mQueues[action.getPriority().ordinal()].add(queuedAction);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Stops merging identical requests into the running action, because its result is sent now.
+     *
+     * @param action The running action
+     * @return Handlers of the requests that were merged into the action
+     */
+    synchronized List<MPDResponseHandler> finish(MPDHandlerAction action) {
+        if (mRunningAction == action) {
+            mRunningAction = null;
+        }
+        return new ArrayList<>(action.getCoalescedResponseHandlers());
+    }
+
+    /**
+     * Removes all queued actions of the given type, e.g. because they were superseded.
+     *
+     * @param type Type of the actions to remove
+     */
+    synchronized void remove(MPDHandlerAction.NET_HANDLER_ACTION type) {
+        for (ArrayDeque<QueuedAction> queue : mQueues) {
+            Iterator<QueuedAction> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mAction.getAction() == type) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops queued actions that were cancelled before they were handled.
+     */
+    private void removeCancelled() {
+        for (ArrayDeque<QueuedAction> queue : mQueues) {
+            Iterator<QueuedAction> iterator = queue.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mAction.isCancelled()) {
+                    iterator.remove();
+                    mCancelledActions++;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The next action to handle or null if the queue is empty
+     */
+    synchronized MPDHandlerAction poll() {
+        removeCancelled();
+
+        long now = SystemClock.elapsedRealtime();
+
+        // Take the action of the highest priority, unless a lower one waited too long
+        int next = -1;
+        long longestOverdue = 0;
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            QueuedAction head = mQueues[i].peek();
+            if (head == null) {
+                continue;
+            }
+            if (next == -1) {
+                next = i;
+            }
+
+            long overdue = now - head.mQueueTime - MAX_WAIT_TIME[i];
+            if (i > 0 && overdue > longestOverdue) {
+                next = i;
+                longestOverdue = overdue;
+            }
+        }
+
+        if (next == -1) {
+            return null;
+        }
+
+        QueuedAction queuedAction = mQueues[next].poll();
+        mRunningAction = queuedAction.mAction;
+        long waitTime = now - queuedAction.mQueueTime;
+        mHandledActions[next]++;
+        mTotalWaitTime[next] += waitTime;
+        mMaxWaitTime[next] = Math.max(mMaxWaitTime[next], waitTime);
+
+        if (BuildConfig.DEBUG && next > 0 && waitTime > MAX_WAIT_TIME[next]) {
+            Log.v(TAG, queuedAction.mAction.getAction() + " waited " + waitTime + " ms\n" + getStatistics());
+        }
+        return queuedAction.mAction;
+    }
+
+    /**
+     * @param priority Priority to get the value for
+     * @return Number of actions waiting in the queue
+     */
+    public synchronized int getQueueDepth(MPDHandlerAction.PRIORITY priority) {
+        return mQueues[priority.ordinal()].size();
+    }
+
+    /**
+     * @param priority Priority to get the value for
+     * @return Number of actions taken from the queue
+     */
+    public synchronized long getHandledActions(MPDHandlerAction.PRIORITY priority) {
+        return mHandledActions[priority.ordinal()];
+    }
+
+    /**
+     * @param priority Priority to get the value for
+     * @return Average time in ms the handled actions waited in the queue
+     */
+    public synchronized long getAverageWaitTime(MPDHandlerAction.PRIORITY priority) {
+        long handledActions = mHandledActions[priority.ordinal()];
+        return handledActions == 0 ? 0 : mTotalWaitTime[priority.ordinal()] / handledActions;
+    }
+
+    /**
+     * @param priority Priority to get the value for
+     * @return Longest time in ms an handled action waited in the queue
+     */
+    public synchronized long getMaxWaitTime(MPDHandlerAction.PRIORITY priority) {
+        return mMaxWaitTime[priority.ordinal()];
+    }
+
+    /**
+     * @return Number of requests that were merged into identical ones
+     */
+    public synchronized long getCoalescedActions() {
+        return mCoalescedActions;
+    }
+
+    /**
+     * @return Number of queued actions that were dropped because they were cancelled
+     */
+    public synchronized long getCancelledActions() {
+        return mCancelledActions;
+    }
+
+    public synchronized String getStatistics() {
+        StringBuilder statistics = new StringBuilder();
+        for (MPDHandlerAction.PRIORITY priority : MPDHandlerAction.PRIORITY.values()) {
+            statistics.append(priority).append(": ")
+                    .append("queued ").append(getQueueDepth(priority))
+                    .append(", handled ").append(getHandledActions(priority))
+                    .append(", average wait ").append(getAverageWaitTime(priority)).append(" ms")
+                    .append(", max wait ").append(getMaxWaitTime(priority)).append(" ms")
+                    .append('\n');
+        }
+        statistics.append("Coalesced: ").append(mCoalescedActions).append('\n');
+        statistics.append("Cancelled: ").append(mCancelledActions).append('\n');
+        return statistics.toString();
+    }
+
+    private static class QueuedAction {
+        private final MPDHandlerAction mAction;
+
+        private final long mQueueTime;
+
+        private QueuedAction(MPDHandlerAction action, long queueTime) {
+            mAction = action;
+            mQueueTime = queueTime;
+        }
+    }
+}
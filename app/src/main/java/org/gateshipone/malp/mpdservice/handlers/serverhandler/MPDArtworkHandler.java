@@ -33,6 +33,9 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.MPDException;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.List;
 
 public class MPDArtworkHandler extends MPDGenericHandler {
@@ -121,9 +124,7 @@ public class MPDArtworkHandler extends MPDGenericHandler {
                 }
                 String url = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_PATH);
 
-                byte[] imageData = getTrackArtwork(url);
-
-                ((MPDResponseAlbumArt) responseHandler).sendAlbumArtwork(imageData, url);
+                sendTrackArtwork((MPDResponseAlbumArt) responseHandler, url);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUM_ART_FOR_ALBUM) {
                 responseHandler = mpdAction.getResponseHandler();
                 if (!(responseHandler instanceof MPDResponseAlbumArt)) {
@@ -141,15 +142,13 @@ public class MPDArtworkHandler extends MPDGenericHandler {
                     Log.e(TAG, "Error fetching tracks for album: " + e.getError());
                 }
 
-                byte[] imageData = null;
                 String url = "";
                 if (tracks != null && tracks.size() > 0) {
                     MPDFileEntry track = tracks.get(0);
                     url = track.getPath();
-                    imageData = getTrackArtwork(url);
                 }
 
-                ((MPDResponseAlbumArt) responseHandler).sendAlbumArtwork(imageData, url);
+                sendTrackArtwork((MPDResponseAlbumArt) responseHandler, url);
             }
     }
 
@@ -170,6 +169,47 @@ public class MPDArtworkHandler extends MPDGenericHandler {
         MPDArtworkHandler.getHandler().sendMessage(msg);
     }
 
+    /**
+     * Fetches the artwork of the track and sends it to the response handler. If the handler
+     * provides a file, the image is streamed to it instead of being held in memory.
+     *
+     * @param responseHandler Handler to send the artwork to
+     * @param url             Path of the track
+     */
+    private void sendTrackArtwork(MPDResponseAlbumArt responseHandler, String url) {
+        File artworkFile = responseHandler.createArtworkFile();
+        if (artworkFile == null) {
+            responseHandler.sendAlbumArtwork(getTrackArtwork(url), url);
+        } else if (writeTrackArtwork(url, artworkFile)) {
+            responseHandler.sendAlbumArtworkFile(artworkFile, url);
+        } else {
+            artworkFile.delete();
+            responseHandler.sendAlbumArtwork(null, url);
+        }
+    }
+
+    private boolean writeTrackArtwork(String url, File artworkFile) {
+        if (url == null || url.isEmpty()) {
+            return false;
+        }
+        try {
+            // Try cover file first, then embedded image.
+            return writeTrackArtwork(url, false, artworkFile) || writeTrackArtwork(url, true, artworkFile);
+        } catch (MPDException e) {
+            handleMPDError(e);
+        }
+        return false;
+    }
+
+    private boolean writeTrackArtwork(String url, boolean readPicture, File artworkFile) throws MPDException {
+        try (FileOutputStream outputStream = new FileOutputStream(artworkFile)) {
+            return MPDInterface.getArtworkInstance().getAlbumArt(url, readPicture, outputStream) && artworkFile.length() > 0;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write artwork file: " + e.getMessage());
+            return false;
+        }
+    }
+
     private byte[] getTrackArtwork(String url) {
         if (url == null || url.isEmpty()) {
             return null;
@@ -23,9 +23,14 @@
 package org.gateshipone.malp.mpdservice.handlers.serverhandler;
 
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCancellationToken;
 
 public class MPDHandlerAction {
 
@@ -54,6 +59,7 @@ public class MPDHandlerAction {
         ACTION_GET_SERVER_STATISTICS,
         ACTION_GET_CURRENT_PLAYLIST,
         ACTION_GET_CURRENT_PLAYLIST_WINDOW,
+        ACTION_GET_CURRENT_PLAYLIST_CHANGES,
         ACTION_GET_SAVED_PLAYLIST,
         ACTION_GET_SAVED_PLAYLISTS,
         ACTION_GET_FILES,
@@ -147,6 +153,27 @@ public class MPDHandlerAction {
         EXTRA_OUTPUT_ID,
         EXTRA_SEARCH_TYPE,
         EXTRA_SORT_ORDER,
+        EXTRA_PLAYLIST_VERSION,
+        EXTRA_MAX_CHANGES,
+        EXTRA_SEARCH_GENERATION,
+    }
+
+    /**
+     * Priority classes used to schedule the actions of a handler.
+     */
+    public enum PRIORITY {
+        /**
+         * Requested by the user, e.g. the list that was just opened
+         */
+        INTERACTIVE,
+        /**
+         * Updates of visible data that are not requested by the user
+         */
+        PREFETCH,
+        /**
+         * Long running jobs like bulk downloads
+         */
+        BACKGROUND,
     }
 
     /**
@@ -162,11 +189,33 @@ public class MPDHandlerAction {
 
     private MPDResponseHandler pResponseHandler = null;
 
+    /**
+     * Handlers of identical requests that were merged into this action. Created on first use.
+     */
+    private List<MPDResponseHandler> pCoalescedResponseHandlers = null;
+
+    /**
+     * Token to cancel this action. Null if it can not be cancelled.
+     */
+    private MPDCancellationToken pCancellationToken = null;
+
+    /**
+     * Token checked while this action is handled. It is only cancelled if all merged requests are.
+     */
+    private final MPDCancellationToken pQueryCancellationToken = new MPDCancellationToken() {
+        @Override
+        public boolean isCancelled() {
+            return MPDHandlerAction.this.isCancelled();
+        }
+    };
+
     /**
      * The action type for this message.
      */
     private final NET_HANDLER_ACTION pAction;
 
+    private PRIORITY pPriority = PRIORITY.INTERACTIVE;
+
 
     /**
      * Simple public constructor.
@@ -185,6 +234,19 @@ public class MPDHandlerAction {
         return pAction;
     }
 
+    /**
+     * Sets the priority used to schedule this action. The default is
+     * {@link PRIORITY#INTERACTIVE}.
+     * @param priority Priority class of this action
+     */
+    public void setPriority(PRIORITY priority) {
+        pPriority = priority;
+    }
+
+    public PRIORITY getPriority() {
+        return pPriority;
+    }
+
     /**
      * Allows to put extras in Handler messages like the strings of artists,albums, etc.
      * @param type Type of the extra value
@@ -223,6 +285,43 @@ public class MPDHandlerAction {
      */
     public void setResponseHandler(MPDResponseHandler responseHandler) {
         pResponseHandler = responseHandler;
+        if ( null != responseHandler && null != responseHandler.getCancellationToken() ) {
+            pCancellationToken = responseHandler.getCancellationToken();
+        }
+    }
+
+    /**
+     * Allows to cancel this action while it is queued or handled. By default the token of the
+     * response handler is used.
+     * @param token Token to cancel the action with
+     */
+    public void setCancellationToken(MPDCancellationToken token) {
+        pCancellationToken = token;
+    }
+
+    /**
+     * @return True if this action and all requests merged into it were cancelled.
+     */
+    public synchronized boolean isCancelled() {
+        if ( null == pCancellationToken || !pCancellationToken.isCancelled() ) {
+            return false;
+        }
+        if ( null != pCoalescedResponseHandlers ) {
+            for ( MPDResponseHandler responseHandler : pCoalescedResponseHandlers ) {
+                MPDCancellationToken token = responseHandler.getCancellationToken();
+                if ( null == token || !token.isCancelled() ) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Token for the queries of this action, see {@link #isCancelled()}.
+     */
+    MPDCancellationToken getQueryCancellationToken() {
+        return pQueryCancellationToken;
     }
 
     /**
@@ -233,6 +332,48 @@ public class MPDHandlerAction {
         return pResponseHandler;
     }
 
+    /**
+     * Adds the handler of an identical request that is answered together with this action.
+     * @param responseHandler The Handler to send the response to as well.
+     */
+    synchronized void addCoalescedResponseHandler(MPDResponseHandler responseHandler) {
+        if ( null == pCoalescedResponseHandlers ) {
+            pCoalescedResponseHandlers = new ArrayList<>();
+        }
+        // A handler that already waits for the response only needs it once
+        if ( responseHandler != pResponseHandler && !pCoalescedResponseHandlers.contains(responseHandler) ) {
+            pCoalescedResponseHandlers.add(responseHandler);
+        }
+    }
+
+    /**
+     * @return The handlers of identical requests that were merged into this action.
+     */
+    synchronized List<MPDResponseHandler> getCoalescedResponseHandlers() {
+        if ( null == pCoalescedResponseHandlers ) {
+            return Collections.emptyList();
+        }
+        return pCoalescedResponseHandlers;
+    }
+
+    /**
+     * Checks if another action requests the same data, so both can be answered with one query.
+     * @param other Action to compare with
+     * @return True if type and extras of both actions are equal
+     */
+    boolean isSameRequest(MPDHandlerAction other) {
+        return pAction == other.pAction
+                && extrasEqual(pStringExtras, other.pStringExtras)
+                && extrasEqual(pIntExtras, other.pIntExtras);
+    }
+
+    private static boolean extrasEqual(Map<?, ?> extras, Map<?, ?> otherExtras) {
+        if ( null == extras || null == otherExtras ) {
+            return (null == extras || extras.isEmpty()) && (null == otherExtras || otherExtras.isEmpty());
+        }
+        return extras.equals(otherExtras);
+    }
+
     /**
      *
      * @param type Type of the extra value
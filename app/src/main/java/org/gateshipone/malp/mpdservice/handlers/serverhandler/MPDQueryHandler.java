@@ -26,6 +26,7 @@ package org.gateshipone.malp.mpdservice.handlers.serverhandler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Pair;
 
 import org.gateshipone.malp.application.utils.FormatHelper;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseAlbumList;
@@ -33,7 +34,10 @@ import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseArtis
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseHandler;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseOutputList;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponsePlaylistChanges;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseServerStatistics;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseTrackListProgress;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCancellationToken;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCapabilities;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCommands;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDException;
@@ -46,8 +50,11 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDOutput;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDStatistics;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This handler is used for all long running queries to the mpd server. This includes:
@@ -68,6 +75,34 @@ public class MPDQueryHandler extends MPDGenericHandler {
      */
     private static final String THREAD_NAME = "AndroMPD-QueryHandler";
 
+    /**
+     * Number of entries sent at once for large file listings.
+     */
+    private static final int FILE_LIST_BATCH_SIZE = 500;
+
+    /**
+     * Message type that signals a new action in {@link #mActionQueue}.
+     */
+    private static final int MSG_QUEUED_ACTION = 1;
+
+    /**
+     * Actions waiting to be handled, ordered by their priority.
+     */
+    private static final MPDActionQueue mActionQueue = new MPDActionQueue(EnumSet.of(
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMS,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMS_IN_PATH,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTIST_ALBUMS,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTSORT_ALBUMS,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTS,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTSORT,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMARTISTS,
+            MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMARTISTSORT));
+
+    /**
+     * Incremented for each search. Searches of older generations are dropped.
+     */
+    private static final AtomicInteger mSearchGeneration = new AtomicInteger();
+
 
     /**
      * HandlerThread that is used by the looper. This ensures that all requests to this handler
@@ -121,17 +156,28 @@ public class MPDQueryHandler extends MPDGenericHandler {
         // by the baseclass are handled in subclasses as well.
         super.handleMessage(msg);
 
+        MPDHandlerAction mpdAction;
+        if (msg.what == MSG_QUEUED_ACTION) {
+            // Handle the most urgent queued action instead of the one that was sent with the message
+            mpdAction = mActionQueue.poll();
+        } else if (msg.obj instanceof MPDHandlerAction) {
+            mpdAction = (MPDHandlerAction) msg.obj;
+        } else {
+            mpdAction = null;
+        }
+
         // Type checking
-        if (!(msg.obj instanceof MPDHandlerAction)) {
+        if (null == mpdAction) {
             /* Check if the message object is of correct type. Otherwise just abort here. */
             return;
         }
 
-        MPDHandlerAction mpdAction = (MPDHandlerAction) msg.obj;
-
         // ResponseHandler used to return the requested items to the caller
         MPDResponseHandler responseHandler;
 
+        // Responses of actions that are cancelled while they are handled are skipped
+        MPDInterface.getGenericInstance().setCancellationToken(mpdAction.getQueryCancellationToken());
+
         /*
          * All messages are handled the same way:
          *  * Check which action was requested
@@ -150,6 +196,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDAlbum> albumList = MPDInterface.getGenericInstance().getAlbums();
 
+                sendCoalescedAlbums(mpdAction, albumList);
                 ((MPDResponseAlbumList) responseHandler).sendAlbums(albumList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMS_IN_PATH) {
                 responseHandler = mpdAction.getResponseHandler();
@@ -159,6 +206,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
                 String path = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_PATH);
                 List<MPDAlbum> albumList = MPDInterface.getGenericInstance().getAlbumsInPath(path);
 
+                sendCoalescedAlbums(mpdAction, albumList);
                 ((MPDResponseAlbumList) responseHandler).sendAlbums(albumList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_PLAY_ALBUMS_IN_PATH) {
                 String path = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_PATH);
@@ -178,6 +226,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDAlbum> albumList = MPDInterface.getGenericInstance().getArtistAlbums(artistName);
 
+                sendCoalescedAlbums(mpdAction, albumList);
                 ((MPDResponseAlbumList) responseHandler).sendAlbums(albumList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTSORT_ALBUMS) {
                 String artistName = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_ARTIST_NAME);
@@ -188,6 +237,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDAlbum> albumList = MPDInterface.getGenericInstance().getArtistSortAlbums(artistName);
 
+                sendCoalescedAlbums(mpdAction, albumList);
                 ((MPDResponseAlbumList) responseHandler).sendAlbums(albumList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTS) {
                 responseHandler = mpdAction.getResponseHandler();
@@ -198,6 +248,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDArtist> artistList = MPDInterface.getGenericInstance().getArtists();
 
+                sendCoalescedArtists(mpdAction, artistList);
                 ((MPDResponseArtistList) responseHandler).sendArtists(artistList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTSORT) {
                 responseHandler = mpdAction.getResponseHandler();
@@ -208,6 +259,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDArtist> artistList = MPDInterface.getGenericInstance().getArtistsSort();
 
+                sendCoalescedArtists(mpdAction, artistList);
                 ((MPDResponseArtistList) responseHandler).sendArtists(artistList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMARTISTS) {
                 responseHandler = mpdAction.getResponseHandler();
@@ -224,6 +276,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
                     // If server does not support the albumartist tag
                     artistList = MPDInterface.getGenericInstance().getArtists();
                 }
+                sendCoalescedArtists(mpdAction, artistList);
                 ((MPDResponseArtistList) responseHandler).sendArtists(artistList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMARTISTSORT) {
                 responseHandler = mpdAction.getResponseHandler();
@@ -240,6 +293,7 @@ public class MPDQueryHandler extends MPDGenericHandler {
                     // If server does not support the albumartist tag
                     artistList = MPDInterface.getGenericInstance().getArtistsSort();
                 }
+                sendCoalescedArtists(mpdAction, artistList);
                 ((MPDResponseArtistList) responseHandler).sendArtists(artistList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUM_TRACKS) {
                 String albumName = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_ALBUM_NAME);
@@ -257,32 +311,25 @@ public class MPDQueryHandler extends MPDGenericHandler {
                     return;
                 }
 
-                List<MPDFileEntry> trackList = MPDInterface.getGenericInstance().getAllTracks();
-
                 // Get the set of directories
                 final HashMap<String, MPDTrack> albumPaths = new HashMap<>();
 
-                // Get a list of unique album folders
-                for (MPDFileEntry track : trackList) {
-                    if (track instanceof MPDTrack) {
-                        String dirPath = FormatHelper.getDirectoryFromPath(track.getPath());
-                        if (!albumPaths.containsKey(dirPath)) {
-                            albumPaths.put(FormatHelper.getDirectoryFromPath(track.getPath()), (MPDTrack) track);
-                        }
-                    }
-                }
-                trackList.clear();
-
-                // Get tags for all tracks
-                for (MPDTrack track : albumPaths.values()) {
-                    List<MPDFileEntry> tempFiles = MPDInterface.getGenericInstance().getFiles(track.getPath());
-                    if (tempFiles.size() == 1) {
-                        MPDFileEntry file = tempFiles.get(0);
-                        if (file instanceof MPDTrack) {
-                            trackList.add(file);
+                // Get a list of unique album folders. The tracks are processed in batches so the
+                // complete database listing is never held in memory.
+                MPDInterface.FileEntryBatchListener albumPathCollector = batch -> {
+                    for (MPDFileEntry track : batch) {
+                        if (track instanceof MPDTrack) {
+                            String dirPath = FormatHelper.getDirectoryFromPath(track.getPath());
+                            if (!albumPaths.containsKey(dirPath)) {
+                                albumPaths.put(dirPath, (MPDTrack) track);
+                            }
                         }
                     }
-                }
+                };
+                albumPathCollector.onFileEntryBatch(MPDInterface.getGenericInstance().getAllTracks(FILE_LIST_BATCH_SIZE, albumPathCollector));
+
+                // The directory listing already contains the tags of the tracks
+                List<MPDFileEntry> trackList = new ArrayList<>(albumPaths.values());
 
                 ((MPDResponseFileList) responseHandler).sendFileList(trackList);
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTIST_ALBUM_TRACKS) {
@@ -328,6 +375,21 @@ public class MPDQueryHandler extends MPDGenericHandler {
 
                 List<MPDFileEntry> trackList = MPDInterface.getGenericInstance().getCurrentPlaylistWindow(start, end);
                 ((MPDResponseFileList) responseHandler).sendFileList(trackList, start, end);
+            } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_CURRENT_PLAYLIST_CHANGES) {
+                int version = mpdAction.getIntExtra(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_PLAYLIST_VERSION);
+                int maxChanges = mpdAction.getIntExtra(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_MAX_CHANGES);
+                responseHandler = mpdAction.getResponseHandler();
+                if (!(responseHandler instanceof MPDResponsePlaylistChanges)) {
+                    return;
+                }
+
+                Pair<MPDCurrentStatus, List<MPDFileEntry>> changes = MPDInterface.getGenericInstance().getCurrentPlaylistChanges(version, maxChanges);
+                if (changes == null) {
+                    // Too many changes, the receiver needs to reload the playlist
+                    ((MPDResponsePlaylistChanges) responseHandler).sendPlaylistChanges(null, version, -1);
+                } else {
+                    ((MPDResponsePlaylistChanges) responseHandler).sendPlaylistChanges(changes.second, changes.first.getPlaylistVersion(), changes.first.getPlaylistLength());
+                }
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_SAVED_PLAYLIST) {
                 String playlistName = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_PLAYLIST_NAME);
                 responseHandler = mpdAction.getResponseHandler();
@@ -498,9 +560,8 @@ public class MPDQueryHandler extends MPDGenericHandler {
                     return;
                 }
 
-                List<MPDFileEntry> fileList = MPDInterface.getGenericInstance().getFiles(path);
-
-                ((MPDResponseFileList) responseHandler).sendFileList(fileList);
+                sendFileListBatches((MPDResponseFileList) responseHandler,
+                        listener -> MPDInterface.getGenericInstance().getFiles(path, FILE_LIST_BATCH_SIZE, listener));
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_PLAY_DIRECTORY) {
                 String path = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_PATH);
 
@@ -528,27 +589,41 @@ public class MPDQueryHandler extends MPDGenericHandler {
                 String term = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM);
                 MPDCommands.MPD_SEARCH_TYPE type = MPDCommands.MPD_SEARCH_TYPE.values()[mpdAction.getIntExtra(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_TYPE)];
 
+                int generation = mpdAction.getIntExtra(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_GENERATION);
+
                 responseHandler = mpdAction.getResponseHandler();
-                if (!(responseHandler instanceof MPDResponseFileList)) {
+                if (!(responseHandler instanceof MPDResponseFileList) || generation != mSearchGeneration.get()) {
                     return;
                 }
 
-                List<MPDFileEntry> fileList = MPDInterface.getGenericInstance().getSearchedFiles(term, type);
-
-                ((MPDResponseFileList) responseHandler).sendFileList(fileList);
+                // A superseded search is cut off by its cancellation token, see searchFiles()
+                sendFileListBatches((MPDResponseFileList) responseHandler,
+                        listener -> MPDInterface.getGenericInstance().getSearchedFiles(term, type, FILE_LIST_BATCH_SIZE, batch -> {
+                            if (generation == mSearchGeneration.get()) {
+                                listener.onFileEntryBatch(batch);
+                            }
+                        }));
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_ADD_SEARCH_FILES) {
                 String term = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM);
                 MPDCommands.MPD_SEARCH_TYPE type = MPDCommands.MPD_SEARCH_TYPE.values()[mpdAction.getIntExtra(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_TYPE)];
 
                 MPDCapabilities caps = MPDInterface.getGenericInstance().getServerCapabilities();
 
-                // Check if server has the add search result capability
-                if (null != caps && caps.hasSearchAdd()) {
-                    MPDInterface.getGenericInstance().addSearchedFiles(term, type);
-                } else {
-                    // Fetch search results and add them
-                    List<MPDFileEntry> searchResults = MPDInterface.getGenericInstance().getSearchedFiles(term, type);
-                    MPDInterface.getGenericInstance().addTrackList(searchResults);
+                responseHandler = mpdAction.getResponseHandler();
+                MPDResponseTrackListProgress progressHandler = responseHandler instanceof MPDResponseTrackListProgress ? (MPDResponseTrackListProgress) responseHandler : null;
+                try {
+                    // Check if server has the add search result capability
+                    if (null != caps && caps.hasSearchAdd()) {
+                        MPDInterface.getGenericInstance().addSearchedFiles(term, type);
+                    } else {
+                        // Fetch search results and add them
+                        List<MPDFileEntry> searchResults = MPDInterface.getGenericInstance().getSearchedFiles(term, type);
+                        MPDInterface.getGenericInstance().addTrackList(searchResults, null != progressHandler ? progressHandler::sendTracksAdded : null);
+                    }
+                } finally {
+                    if (null != progressHandler) {
+                        progressHandler.sendTrackListAdded();
+                    }
                 }
             } else if (action == MPDHandlerAction.NET_HANDLER_ACTION.ACTION_PLAY_SEARCH_FILES) {
                 String term = mpdAction.getStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM);
@@ -559,16 +634,94 @@ public class MPDQueryHandler extends MPDGenericHandler {
                 // Check if server has the add search result capability
                 if (MPDInterface.getGenericInstance().getServerCapabilities().hasSearchAdd()) {
                     MPDInterface.getGenericInstance().addSearchedFiles(term, type);
+                    MPDInterface.getGenericInstance().playSongIndex(0);
                 } else {
-                    // Fetch search results and add them
+                    // Fetch search results and add them, playback starts with the first tracks
                     List<MPDFileEntry> searchResults = MPDInterface.getGenericInstance().getSearchedFiles(term, type);
-                    MPDInterface.getGenericInstance().addTrackList(searchResults);
+                    addTrackListAndPlay(searchResults);
                 }
-
-                MPDInterface.getGenericInstance().playSongIndex(0);
             }
         } catch (MPDException e) {
             handleMPDError(e);
+        } finally {
+            MPDInterface.getGenericInstance().setCancellationToken(null);
+            mActionQueue.finish(mpdAction);
+        }
+    }
+
+    /**
+     * Adds the tracks to the current playlist and starts the playback as soon as the first
+     * tracks were added.
+     *
+     * @param tracks Tracks to add
+     */
+    private static void addTrackListAndPlay(List<MPDFileEntry> tracks) throws MPDException {
+        final boolean[] playbackStarted = {false};
+        MPDInterface.getGenericInstance().addTrackList(tracks, (added, total) -> {
+            if (!playbackStarted[0]) {
+                playbackStarted[0] = true;
+                MPDInterface.getGenericInstance().playSongIndex(0);
+            }
+        });
+
+        if (!playbackStarted[0]) {
+            MPDInterface.getGenericInstance().playSongIndex(0);
+        }
+    }
+
+    /**
+     * Sends an album list to the requests that were merged into the action. Each receiver
+     * gets its own copy of the list.
+     *
+     * @param action    Action that was handled
+     * @param albumList Result of the action
+     */
+    private static void sendCoalescedAlbums(MPDHandlerAction action, List<MPDAlbum> albumList) {
+        for (MPDResponseHandler responseHandler : mActionQueue.finish(action)) {
+            if (responseHandler instanceof MPDResponseAlbumList) {
+                ((MPDResponseAlbumList) responseHandler).sendAlbums(new ArrayList<>(albumList));
+            }
+        }
+    }
+
+    /**
+     * Sends an artist list to the requests that were merged into the action. Each receiver
+     * gets its own copy of the list.
+     *
+     * @param action     Action that was handled
+     * @param artistList Result of the action
+     */
+    private static void sendCoalescedArtists(MPDHandlerAction action, List<MPDArtist> artistList) {
+        for (MPDResponseHandler responseHandler : mActionQueue.finish(action)) {
+            if (responseHandler instanceof MPDResponseArtistList) {
+                ((MPDResponseArtistList) responseHandler).sendArtists(new ArrayList<>(artistList));
+            }
+        }
+    }
+
+    /**
+     * Request of a file listing that is delivered in batches.
+     */
+    private interface BatchedFileListing {
+        /**
+         * @return The last batch of the listing
+         */
+        List<MPDFileEntry> request(MPDInterface.FileEntryBatchListener listener) throws MPDException;
+    }
+
+    /**
+     * Sends the entries of a listing to the response handler in batches while they are parsed.
+     * The last batch is sent in any case to signal that the listing is complete.
+     *
+     * @param responseHandler Handler to send the batches to
+     * @param listing         Listing to request
+     */
+    private static void sendFileListBatches(MPDResponseFileList responseHandler, BatchedFileListing listing) throws MPDException {
+        List<MPDFileEntry> lastBatch = new ArrayList<>();
+        try {
+            lastBatch = listing.request(batch -> responseHandler.sendFileListBatch(batch, false));
+        } finally {
+            responseHandler.sendFileListBatch(lastBatch, true);
         }
     }
 
@@ -589,14 +742,16 @@ public class MPDQueryHandler extends MPDGenericHandler {
      * @param action to be sent out.
      */
     private static void sendMsg(MPDHandlerAction action) {
-        Message msg = Message.obtain();
-        if (null == msg) {
-            return;
+        if (mActionQueue.add(action)) {
+            MPDQueryHandler.getHandler().sendEmptyMessage(MSG_QUEUED_ACTION);
         }
+    }
 
-        msg.obj = action;
-
-        MPDQueryHandler.getHandler().sendMessage(msg);
+    /**
+     * @return The queue of pending actions, e.g. to inspect its statistics
+     */
+    public static MPDActionQueue getActionQueue() {
+        return mActionQueue;
     }
 
     private static void genericStringAction(MPDHandlerAction.NET_HANDLER_ACTION action,
@@ -688,9 +843,21 @@ public class MPDQueryHandler extends MPDGenericHandler {
      *                        of the MPD server is ready and parsed.
      */
     public static void getAlbums(MPDResponseAlbumList responseHandler) {
+        getAlbums(responseHandler, MPDHandlerAction.PRIORITY.INTERACTIVE);
+    }
+
+    /**
+     * Method to retrieve a list of all albums available on the currently connected MPD server.
+     *
+     * @param responseHandler The Handler that is used for asynchronous callback calls when the result
+     *                        of the MPD server is ready and parsed.
+     * @param priority        Priority to schedule the request with
+     */
+    public static void getAlbums(MPDResponseAlbumList responseHandler, MPDHandlerAction.PRIORITY priority) {
         MPDHandlerAction action = new MPDHandlerAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ALBUMS);
 
         action.setResponseHandler(responseHandler);
+        action.setPriority(priority);
 
         sendMsg(action);
     }
@@ -750,9 +917,20 @@ public class MPDQueryHandler extends MPDGenericHandler {
      * @param responseHandler The handler used to send the requested data
      */
     public static void getArtists(MPDResponseHandler responseHandler) {
+        getArtists(responseHandler, MPDHandlerAction.PRIORITY.INTERACTIVE);
+    }
+
+    /**
+     * Requests a list of all the artists available on this server
+     *
+     * @param responseHandler The handler used to send the requested data
+     * @param priority        Priority to schedule the request with
+     */
+    public static void getArtists(MPDResponseHandler responseHandler, MPDHandlerAction.PRIORITY priority) {
         MPDHandlerAction action = new MPDHandlerAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTISTS);
 
         action.setResponseHandler(responseHandler);
+        action.setPriority(priority);
 
         sendMsg(action);
     }
@@ -822,6 +1000,8 @@ public class MPDQueryHandler extends MPDGenericHandler {
         MPDHandlerAction action = new MPDHandlerAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_ARTWORK_TRACKS);
 
         action.setResponseHandler(responseHandler);
+        // Only used for bulk downloads of artwork
+        action.setPriority(MPDHandlerAction.PRIORITY.BACKGROUND);
 
         sendMsg(action);
     }
@@ -882,6 +1062,26 @@ public class MPDQueryHandler extends MPDGenericHandler {
         sendMsg(action);
     }
 
+    /**
+     * Requests the tracks of the current playlist that changed since the given playlist version.
+     * If more than maxChanges tracks changed no tracks are transferred and the receiver
+     * needs to reload the playlist.
+     *
+     * @param responseHandler The handler used to send the requested changes
+     * @param version         Playlist version known by the receiver
+     * @param maxChanges      Maximum number of changed tracks to transfer
+     */
+    public static void getCurrentPlaylistChanges(MPDResponsePlaylistChanges responseHandler, int version, int maxChanges) {
+        MPDHandlerAction action = new MPDHandlerAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_GET_CURRENT_PLAYLIST_CHANGES);
+
+        action.setResponseHandler(responseHandler);
+        action.setIntExtras(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_PLAYLIST_VERSION, version);
+        action.setIntExtras(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_MAX_CHANGES, maxChanges);
+        action.setPriority(MPDHandlerAction.PRIORITY.PREFETCH);
+
+        sendMsg(action);
+    }
+
     /**
      * Requests a list of playlists saved on the server.
      *
@@ -1150,7 +1350,20 @@ public class MPDQueryHandler extends MPDGenericHandler {
         action.setResponseHandler(responseHandler);
         action.setStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM, term);
         action.setIntExtras(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_TYPE, type.ordinal());
+        final int generation = mSearchGeneration.incrementAndGet();
+        action.setIntExtras(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_GENERATION, generation);
+
+        // The response of a running search is skipped as soon as a newer search is requested
+        final MPDCancellationToken handlerToken = responseHandler.getCancellationToken();
+        action.setCancellationToken(new MPDCancellationToken() {
+            @Override
+            public boolean isCancelled() {
+                return generation != mSearchGeneration.get() || (null != handlerToken && handlerToken.isCancelled());
+            }
+        });
 
+        // Only the latest search is sent to the server, pending ones are removed
+        mActionQueue.remove(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_SEARCH_FILES);
         sendMsg(action);
     }
 
@@ -1161,9 +1374,24 @@ public class MPDQueryHandler extends MPDGenericHandler {
      * @param type The type of items to search for
      */
     public static void searchAddFiles(String term, MPDCommands.MPD_SEARCH_TYPE type) {
-        genericStringIntAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_ADD_SEARCH_FILES,
-                MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM, term,
-                MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_TYPE, type.ordinal());
+        searchAddFiles(term, type, null);
+    }
+
+    /**
+     * Requests to add a search request
+     *
+     * @param term            The string to search for
+     * @param type            The type of items to search for
+     * @param responseHandler The handler used to send the progress or null
+     */
+    public static void searchAddFiles(String term, MPDCommands.MPD_SEARCH_TYPE type, MPDResponseTrackListProgress responseHandler) {
+        MPDHandlerAction action = new MPDHandlerAction(MPDHandlerAction.NET_HANDLER_ACTION.ACTION_ADD_SEARCH_FILES);
+
+        action.setResponseHandler(responseHandler);
+        action.setStringExtra(MPDHandlerAction.NET_HANDLER_EXTRA_STRING.EXTRA_SEARCH_TERM, term);
+        action.setIntExtras(MPDHandlerAction.NET_HANDLER_EXTRA_INT.EXTRA_SEARCH_TYPE, type.ordinal());
+
+        sendMsg(action);
     }
 
     /**
@@ -26,9 +26,11 @@ package org.gateshipone.malp.mpdservice.handlers.serverhandler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Pair;
 
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -38,6 +40,7 @@ import org.gateshipone.malp.mpdservice.handlers.MPDStatusChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDException;
 import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDCurrentStatus;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
@@ -178,21 +181,19 @@ public class MPDStateMonitoringHandler extends MPDGenericHandler {
 
         mLastTimeBase = System.nanoTime();
 
-        MPDCurrentStatus status = null;
+        // Status and current song are requested together to save a round-trip
+        Pair<MPDCurrentStatus, MPDTrack> statusAndSong;
         try {
-            status = MPDInterface.getGenericInstance().getCurrentServerStatus();
+            statusAndSong = MPDInterface.getGenericInstance().getCurrentServerStatusAndSong();
         } catch (MPDException e) {
             handleMPDError(e);
             return;
         }
+        MPDCurrentStatus status = statusAndSong.first;
 
         if (status.getCurrentSongIndex() != mLastStatus.getCurrentSongIndex() || status.getPlaylistVersion() != mLastStatus.getPlaylistVersion()) {
-            // New track started playing. Get it and inform the listener.
-            try {
-                mLastFile = MPDInterface.getGenericInstance().getCurrentSong();
-            } catch (MPDException e) {
-                handleMPDError(e);
-            }
+            // New track started playing. Inform the listener.
+            mLastFile = statusAndSong.second;
             distributeNewTrack(mLastFile);
         }
 
@@ -296,9 +297,15 @@ public class MPDStateMonitoringHandler extends MPDGenericHandler {
 
     }
 
-    public void onNoIdle() {
-        // Server idle is over (reason unclear), resync the state
-        resynchronizeState();
+    public void onNoIdle(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+        // Only resync if something changed that is part of the status or the current song
+        if (changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_PLAYER) ||
+                changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_MIXER) ||
+                changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_OPTIONS) ||
+                changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_PLAYLIST) ||
+                changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_UPDATE)) {
+            resynchronizeState();
+        }
     }
 
     public void setRefreshInterval(int interval) {
@@ -336,8 +343,8 @@ public class MPDStateMonitoringHandler extends MPDGenericHandler {
         }
 
         @Override
-        protected void onNoIdle() {
-            mParent.get().onNoIdle();
+        protected void onNoIdle(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+            mParent.get().onNoIdle(changedSubsystems);
         }
     }
 
@@ -0,0 +1,370 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.librarymirror;
+
+import android.content.Context;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.gateshipone.malp.BuildConfig;
+import org.gateshipone.malp.mpdservice.handlers.MPDIdleChangeHandler;
+import org.gateshipone.malp.mpdservice.handlers.responsehandler.MPDResponseFileList;
+import org.gateshipone.malp.mpdservice.handlers.serverhandler.MPDQueryHandler;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCapabilities;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCommands;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDException;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDInterface;
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDResponses;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDDirectory;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDStatistics;
+import org.gateshipone.malp.mpdservice.profilemanagement.MPDServerProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps a local copy of the track database of the server, so that searches can be answered
+ * without asking the server, even while offline.
+ * <p/>
+ * The mirror is synchronized in the background after connecting and whenever the database of the
+ * server changes. After the first synchronization only changed tracks are fetched, if the server
+ * supports it. Searches are answered from the last complete synchronization.
+ */
+public class MPDLibraryMirror {
+    private static final String TAG = MPDLibraryMirror.class.getSimpleName();
+
+    private static final String SYNC_THREAD_NAME = "MALP-LibraryMirrorSync";
+
+    private static final String SEARCH_THREAD_NAME = "MALP-LibraryMirrorSearch";
+
+    /**
+     * Number of tracks that are written to the mirror at once during a synchronization
+     */
+    private static final int SYNC_BATCH_SIZE = 1000;
+
+    /**
+     * Number of directories that are counted with one command list during a refresh
+     */
+    private static final int COUNT_BATCH_SIZE = 200;
+
+    private static MPDLibraryMirror mInstance;
+
+    private final Context mApplicationContext;
+
+    /**
+     * Handler for synchronizations and changes of the database. A synchronization can take
+     * a long time, so searches use their own thread.
+     */
+    private final Handler mSyncHandler;
+
+    private final Handler mSearchHandler;
+
+    private final Runnable mSyncRunnable = this::syncMirror;
+
+    /**
+     * Database of the current profile or null if the mirror is disabled
+     */
+    private volatile MPDLibraryMirrorDBHelper mDBHelper;
+
+    private long mProfileId;
+
+    /**
+     * True if the mirror contains a complete synchronization
+     */
+    private volatile boolean mReady;
+
+    private MPDLibraryMirror(Context context) {
+        mApplicationContext = context.getApplicationContext();
+
+        HandlerThread syncThread = new HandlerThread(SYNC_THREAD_NAME);
+        syncThread.start();
+        mSyncHandler = new Handler(syncThread.getLooper());
+
+        HandlerThread searchThread = new HandlerThread(SEARCH_THREAD_NAME);
+        searchThread.start();
+        mSearchHandler = new Handler(searchThread.getLooper());
+
+        MPDInterface.getGenericInstance().addMPDIdleChangeHandler(new DatabaseChangeListener(this, syncThread));
+    }
+
+    public static synchronized MPDLibraryMirror getInstance(Context context) {
+        if (null == mInstance) {
+            mInstance = new MPDLibraryMirror(context);
+        }
+        return mInstance;
+    }
+
+    /**
+     * Sets the server profile to mirror the library of.
+     *
+     * @param profile Profile of the server
+     * @param enabled True to keep a mirror for this profile, false to disable the mirror
+     */
+    public void setProfile(MPDServerProfile profile, boolean enabled) {
+        final long profileId = profile.getCreationDate();
+        mSyncHandler.post(() -> {
+            if (mDBHelper != null && enabled && profileId == mProfileId) {
+                return;
+            }
+
+            closeDatabase();
+            if (enabled) {
+                mProfileId = profileId;
+                mDBHelper = new MPDLibraryMirrorDBHelper(mApplicationContext, profileId);
+                try {
+                    // A previous synchronization can be used until the next one is finished
+                    mReady = MPDLibraryMirrorTable.getDBUpdate(mDBHelper.getReadableDatabase()) >= 0;
+                } catch (SQLException e) {
+                    Log.e(TAG, "Could not open library mirror: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the mirror of a deleted server profile.
+     *
+     * @param profile Deleted profile
+     */
+    public void removeProfile(MPDServerProfile profile) {
+        final long profileId = profile.getCreationDate();
+        mSyncHandler.post(() -> {
+            if (mDBHelper != null && profileId == mProfileId) {
+                closeDatabase();
+            }
+            mApplicationContext.deleteDatabase(MPDLibraryMirrorDBHelper.getDatabaseName(profileId));
+        });
+    }
+
+    /**
+     * Synchronizes the mirror with the server in the background, if its database changed.
+     */
+    public void sync() {
+        mSyncHandler.removeCallbacks(mSyncRunnable);
+        mSyncHandler.post(mSyncRunnable);
+    }
+
+    /**
+     * @return True if searches can be answered by the mirror
+     */
+    public boolean isReady() {
+        return mReady && mDBHelper != null;
+    }
+
+    /**
+     * Searches the mirror in the background and sends the result to the response handler.
+     * If the mirror can not be read, the server is searched instead.
+     *
+     * @param searchTerm      Search term
+     * @param type            Type of search
+     * @param responseHandler The handler used to send the found tracks
+     */
+    public void searchFiles(String searchTerm, MPDCommands.MPD_SEARCH_TYPE type, MPDResponseFileList responseHandler) {
+        mSearchHandler.post(() -> {
+            final MPDLibraryMirrorDBHelper helper = mDBHelper;
+            List<MPDFileEntry> result = null;
+            if (helper != null) {
+                long startTime = SystemClock.elapsedRealtime();
+                try {
+                    result = MPDLibraryMirrorTable.searchTracks(helper.getReadableDatabase(), searchTerm, type);
+                } catch (SQLException | IllegalStateException e) {
+                    Log.e(TAG, "Could not search library mirror: " + e.getMessage());
+                }
+
+                if (BuildConfig.DEBUG && result != null) {
+                    Log.v(TAG, "Found " + result.size() + " tracks in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+                }
+            }
+
+            if (result != null) {
+                responseHandler.sendFileList(result);
+            } else {
+                MPDQueryHandler.searchFiles(searchTerm, type, responseHandler);
+            }
+        });
+    }
+
+    private void closeDatabase() {
+        if (mDBHelper != null) {
+            mDBHelper.close();
+            mDBHelper = null;
+        }
+        mReady = false;
+    }
+
+    /**
+     * Brings the mirror up to date with the database of the server. Runs in the sync thread.
+     * If the server supports filters only the changes since the last synchronization are
+     * fetched, otherwise the complete database.
+     */
+    private void syncMirror() {
+        final MPDLibraryMirrorDBHelper helper = mDBHelper;
+        if (helper == null) {
+            return;
+        }
+
+        try {
+            final MPDStatistics statistics = MPDInterface.getGenericInstance().getServerStatistics();
+            final SQLiteDatabase database = helper.getWritableDatabase();
+            final long mirroredDBUpdate = MPDLibraryMirrorTable.getDBUpdate(database);
+            if (mirroredDBUpdate == statistics.getLastDBUpdate()) {
+                return;
+            }
+
+            // The modified-since filter needs the filter expressions of MPD 0.21
+            final MPDCapabilities capabilities = MPDInterface.getGenericInstance().getServerCapabilities();
+            boolean incremental = mirroredDBUpdate >= 0 && capabilities != null && capabilities.hasFilterExpressions();
+
+            final long startTime = SystemClock.elapsedRealtime();
+            // Searches see the old content until the new one is complete
+            database.beginTransaction();
+            try {
+                final SQLiteStatement insert = MPDLibraryMirrorTable.compileInsert(database);
+                if (incremental) {
+                    try {
+                        refreshMirror(database, insert, statistics.getSongCount());
+                    } catch (MPDException.MPDServerException e) {
+                        // Some servers announce 0.21 but reject the filter, fetch everything instead
+                        Log.w(TAG, "Could not refresh library mirror: " + e.getMessage());
+                        incremental = false;
+                    }
+                }
+                if (!incremental) {
+                    replaceMirror(database, insert);
+                }
+                insert.close();
+
+                MPDLibraryMirrorTable.setDBUpdate(database, statistics.getLastDBUpdate());
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            mReady = true;
+
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, (incremental ? "Refreshed" : "Synchronized") + " library mirror in " + (SystemClock.elapsedRealtime() - startTime) + " ms");
+            }
+        } catch (MPDException e) {
+            Log.e(TAG, "Could not synchronize library mirror: " + e.getMessage());
+        } catch (SQLException | IllegalStateException e) {
+            Log.e(TAG, "Could not write library mirror: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the content of the mirror with all tracks of the server.
+     */
+    private static void replaceMirror(SQLiteDatabase database, SQLiteStatement insert) throws MPDException {
+        MPDLibraryMirrorTable.clearTracks(database);
+        List<MPDFileEntry> lastBatch = MPDInterface.getGenericInstance().getAllTracksInfo(SYNC_BATCH_SIZE,
+                batch -> MPDLibraryMirrorTable.insertTracks(insert, batch));
+        MPDLibraryMirrorTable.insertTracks(insert, lastBatch);
+
+        MPDLibraryMirrorTable.rebuildIndex(database);
+    }
+
+    /**
+     * Fetches only the tracks that changed since the last synchronization. Removed tracks (and tracks
+     * added with an old modification time) are found by comparing the song counts of directories.
+     *
+     * @param songCount Number of songs in the database of the server
+     */
+    private static void refreshMirror(SQLiteDatabase database, SQLiteStatement insert, int songCount) throws MPDException {
+        final long since = MPDLibraryMirrorTable.getLastModified(database) / 1000;
+        List<MPDFileEntry> lastBatch = MPDInterface.getGenericInstance().getModifiedTracks(since, SYNC_BATCH_SIZE,
+                batch -> MPDLibraryMirrorTable.replaceTracks(database, insert, batch));
+        MPDLibraryMirrorTable.replaceTracks(database, insert, lastBatch);
+
+        if (MPDLibraryMirrorTable.getTrackCount(database, "") != songCount) {
+            refreshDirectory(database, insert, "");
+        }
+    }
+
+    /**
+     * Replaces the tracks of a directory and descends into all subdirectories whose song count
+     * differs between the server and the mirror.
+     *
+     * @param directory Path of the directory, empty for the root directory
+     */
+    private static void refreshDirectory(SQLiteDatabase database, SQLiteStatement insert, String directory) throws MPDException {
+        List<MPDFileEntry> entries = MPDInterface.getGenericInstance().getFiles(directory);
+
+        MPDLibraryMirrorTable.deleteDirectoryTracks(database, directory);
+        MPDLibraryMirrorTable.replaceTracks(database, insert, entries);
+
+        List<String> subdirectories = new ArrayList<>();
+        for (MPDFileEntry entry : entries) {
+            if (entry instanceof MPDDirectory) {
+                subdirectories.add(entry.getPath());
+            }
+        }
+
+        // Directories that were removed on the server
+        Set<String> removedDirectories = MPDLibraryMirrorTable.getSubdirectories(database, directory);
+        removedDirectories.removeAll(subdirectories);
+        for (String removedDirectory : removedDirectories) {
+            MPDLibraryMirrorTable.deleteDirectory(database, removedDirectory);
+        }
+
+        for (int start = 0; start < subdirectories.size(); start += COUNT_BATCH_SIZE) {
+            List<String> batch = subdirectories.subList(start, Math.min(start + COUNT_BATCH_SIZE, subdirectories.size()));
+            int[] songCounts = MPDInterface.getGenericInstance().getDirectorySongCounts(batch);
+            for (int i = 0; i < songCounts.length; i++) {
+                if (songCounts[i] != MPDLibraryMirrorTable.getTrackCount(database, batch.get(i))) {
+                    refreshDirectory(database, insert, batch.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Synchronizes the mirror if the database of the server changed.
+     */
+    private static class DatabaseChangeListener extends MPDIdleChangeHandler {
+        private final MPDLibraryMirror mLibraryMirror;
+
+        DatabaseChangeListener(final MPDLibraryMirror libraryMirror, final HandlerThread thread) {
+            super(thread.getLooper());
+            mLibraryMirror = libraryMirror;
+        }
+
+        @Override
+        protected void onIdle() {
+        }
+
+        @Override
+        protected void onNoIdle(final Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+            if (changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE)) {
+                mLibraryMirror.sync();
+            }
+        }
+    }
+}
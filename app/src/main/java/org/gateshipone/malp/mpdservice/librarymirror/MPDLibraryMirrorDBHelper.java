@@ -0,0 +1,88 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.librarymirror;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import org.gateshipone.malp.BuildConfig;
+
+public class MPDLibraryMirrorDBHelper extends SQLiteOpenHelper {
+    private static final String TAG = MPDLibraryMirrorDBHelper.class.getSimpleName();
+
+    /**
+     * Prefix of the database names. Each server profile uses its own database.
+     */
+    private static final String DATABASE_NAME_PREFIX = "library_mirror_";
+
+    /**
+     * Database version, used for migrating to new versions.
+     * Version 2: mirrors of version 1 were filled by "listall", which has no tags.
+     */
+    public static final int DATABASE_VERSION = 2;
+
+    /**
+     * Constructor to create the database.
+     *
+     * @param context   Application context to create the database in.
+     * @param profileId Id of the server profile to mirror the library of.
+     */
+    public MPDLibraryMirrorDBHelper(Context context, long profileId) {
+        super(context, getDatabaseName(profileId), null, DATABASE_VERSION);
+
+        // Searches can read while the mirror is synchronized
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @return Name of the database of the given server profile
+     */
+    public static String getDatabaseName(long profileId) {
+        return DATABASE_NAME_PREFIX + profileId;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase database) {
+        MPDLibraryMirrorTable.onCreate(database);
+    }
+
+    /**
+     * The mirror can always be fetched again from the server, so it is just recreated.
+     *
+     * @param database   Database to migrate to a different version.
+     * @param oldVersion Old version of the database to migrate from
+     * @param newVersion New version of the database to migrate to
+     */
+    @Override
+    public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Upgrading database from version: " + oldVersion + " to new version: " + newVersion);
+        }
+
+        MPDLibraryMirrorTable.dropTables(database);
+        onCreate(database);
+    }
+}
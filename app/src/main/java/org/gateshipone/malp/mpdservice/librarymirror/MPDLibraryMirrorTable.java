@@ -0,0 +1,417 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.librarymirror;
+
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.MPDCommands;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+public class MPDLibraryMirrorTable {
+    /**
+     * Table name of the SQL table containing all tracks of the server
+     */
+    public static final String SQL_TABLE_NAME = "library_tracks";
+
+    /**
+     * Full text index over the searchable columns of {@link #SQL_TABLE_NAME}
+     */
+    public static final String SQL_FTS_TABLE_NAME = "library_tracks_fts";
+
+    /**
+     * Table with a single row that describes the mirrored database
+     */
+    public static final String SQL_STATE_TABLE_NAME = "library_state";
+
+    /**
+     * Column descriptions
+     */
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_PATH = "path";
+    public static final String COLUMN_LENGTH = "length";
+    public static final String COLUMN_TRACK_NUMBER = "track_number";
+    public static final String COLUMN_DISC_NUMBER = "disc_number";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+
+    public static final String COLUMN_STATE_DB_UPDATE = "db_update";
+
+    /**
+     * One column per tag, named after the lower case tag type
+     */
+    private static final MPDTrack.StringTagTypes[] TAG_TYPES = MPDTrack.StringTagTypes.values();
+
+    /**
+     * Columns that are part of the full text index
+     */
+    private static final String[] FTS_COLUMNS = {
+            getTagColumn(MPDTrack.StringTagTypes.TITLE), getTagColumn(MPDTrack.StringTagTypes.ARTIST),
+            getTagColumn(MPDTrack.StringTagTypes.ALBUM), getTagColumn(MPDTrack.StringTagTypes.ALBUMARTIST),
+            getTagColumn(MPDTrack.StringTagTypes.COMPOSER), COLUMN_PATH
+    };
+
+    /**
+     * Number of columns before the tag columns in inserts and queries
+     */
+    private static final int FIXED_COLUMN_COUNT = 5;
+
+    /**
+     * Creates the initial database tables.
+     *
+     * @param database Database to use for table creation.
+     */
+    public static void onCreate(SQLiteDatabase database) {
+        StringBuilder tracksTable = new StringBuilder("create table if not exists " + SQL_TABLE_NAME + " (" +
+                COLUMN_ID + " integer PRIMARY KEY, " + COLUMN_PATH + " text UNIQUE, " +
+                COLUMN_LENGTH + " integer, " + COLUMN_TRACK_NUMBER + " integer, " +
+                COLUMN_DISC_NUMBER + " integer, " + COLUMN_LAST_MODIFIED + " integer");
+        for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+            tracksTable.append(", ").append(getTagColumn(tag)).append(" text");
+        }
+        tracksTable.append(");");
+        database.execSQL(tracksTable.toString());
+
+        // The index only references the rows of the track table and needs no own copy of the data
+        StringBuilder ftsTable = new StringBuilder("create virtual table if not exists " + SQL_FTS_TABLE_NAME +
+                " using fts4(content=\"" + SQL_TABLE_NAME + '"');
+        ftsTable.append(", ").append(getFTSColumnList());
+        try {
+            // Case and diacritic insensitive matching for all scripts, like MPDs search
+            database.execSQL(ftsTable + ", tokenize=unicode61);");
+        } catch (SQLiteException e) {
+            // SQLite build without the unicode61 tokenizer
+            database.execSQL(ftsTable + ");");
+        }
+
+        database.execSQL("create table if not exists " + SQL_STATE_TABLE_NAME + " (" + COLUMN_STATE_DB_UPDATE + " integer);");
+    }
+
+    /**
+     * Drops all tables.
+     *
+     * @param database Database to drop the tables in.
+     */
+    public static void dropTables(SQLiteDatabase database) {
+        database.execSQL("DROP TABLE IF EXISTS " + SQL_FTS_TABLE_NAME);
+        database.execSQL("DROP TABLE IF EXISTS " + SQL_TABLE_NAME);
+        database.execSQL("DROP TABLE IF EXISTS " + SQL_STATE_TABLE_NAME);
+    }
+
+    /**
+     * @return The database version of the server the mirror was synchronized with or -1 if
+     * it was never synchronized.
+     */
+    public static long getDBUpdate(SQLiteDatabase database) {
+        try (Cursor cursor = database.query(SQL_STATE_TABLE_NAME, new String[]{COLUMN_STATE_DB_UPDATE}, null, null, null, null, null)) {
+            if (cursor.moveToFirst()) {
+                return cursor.getLong(0);
+            }
+        }
+        return -1;
+    }
+
+    public static void setDBUpdate(SQLiteDatabase database, long dbUpdate) {
+        database.delete(SQL_STATE_TABLE_NAME, null, null);
+        database.execSQL("INSERT INTO " + SQL_STATE_TABLE_NAME + " (" + COLUMN_STATE_DB_UPDATE + ") VALUES (?);", new Object[]{dbUpdate});
+    }
+
+    /**
+     * Removes all tracks. The full text index needs to be rebuilt afterwards.
+     */
+    public static void clearTracks(SQLiteDatabase database) {
+        database.delete(SQL_TABLE_NAME, null, null);
+    }
+
+    /**
+     * Creates a statement to insert tracks with {@link #insertTracks(SQLiteStatement, List)}.
+     * Tracks with an already known path are replaced.
+     */
+    public static SQLiteStatement compileInsert(SQLiteDatabase database) {
+        StringBuilder columns = new StringBuilder(COLUMN_PATH + ", " + COLUMN_LENGTH + ", " + COLUMN_TRACK_NUMBER + ", " +
+                COLUMN_DISC_NUMBER + ", " + COLUMN_LAST_MODIFIED);
+        StringBuilder values = new StringBuilder("?, ?, ?, ?, ?");
+        for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+            columns.append(", ").append(getTagColumn(tag));
+            values.append(", ?");
+        }
+        return database.compileStatement("INSERT OR REPLACE INTO " + SQL_TABLE_NAME + " (" + columns + ") VALUES (" + values + ");");
+    }
+
+    /**
+     * Inserts the tracks of the given entries. Directories and playlists are skipped.
+     *
+     * @param statement Statement created with {@link #compileInsert(SQLiteDatabase)}
+     * @param entries   Entries to insert
+     */
+    public static void insertTracks(SQLiteStatement statement, List<MPDFileEntry> entries) {
+        for (MPDFileEntry entry : entries) {
+            if (!(entry instanceof MPDTrack)) {
+                continue;
+            }
+            MPDTrack track = (MPDTrack) entry;
+
+            statement.clearBindings();
+            statement.bindString(1, track.getPath());
+            statement.bindLong(2, track.getLength());
+            statement.bindLong(3, track.getTrackNumber());
+            statement.bindLong(4, track.getDiscNumber());
+            statement.bindLong(5, track.getLastModified().getTime());
+            for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+                String value = track.getStringTag(tag);
+                if (!value.isEmpty()) {
+                    statement.bindString(FIXED_COLUMN_COUNT + 1 + tag.ordinal(), value);
+                }
+            }
+            statement.executeInsert();
+        }
+    }
+
+    /**
+     * Replaces the tracks of the given entries and updates the full text index for them.
+     * Directories and playlists are skipped.
+     *
+     * @param database  Database to write to
+     * @param statement Statement created with {@link #compileInsert(SQLiteDatabase)}
+     * @param entries   Entries to replace
+     */
+    public static void replaceTracks(SQLiteDatabase database, SQLiteStatement statement, List<MPDFileEntry> entries) {
+        for (MPDFileEntry entry : entries) {
+            if (!(entry instanceof MPDTrack)) {
+                continue;
+            }
+
+            deleteTracks(database, COLUMN_PATH + " = ?", new String[]{entry.getPath()});
+            insertTracks(statement, Collections.singletonList(entry));
+            database.execSQL("INSERT INTO " + SQL_FTS_TABLE_NAME + " (rowid, " + getFTSColumnList() + ") SELECT " +
+                    COLUMN_ID + ", " + getFTSColumnList() + " FROM " + SQL_TABLE_NAME + " WHERE " + COLUMN_PATH + " = ?;",
+                    new Object[]{entry.getPath()});
+        }
+    }
+
+    /**
+     * Removes the tracks of a directory, but not of its subdirectories.
+     *
+     * @param database  Database to write to
+     * @param directory Path of the directory, empty for the root directory
+     */
+    public static void deleteDirectoryTracks(SQLiteDatabase database, String directory) {
+        deleteTracks(database, getDirectorySelection(directory) + " AND instr(substr(" + COLUMN_PATH + ", " +
+                (getDirectoryPrefix(directory).length() + 1) + "), '/') = 0", getDirectorySelectionArgs(directory));
+    }
+
+    /**
+     * Removes the tracks of a directory and all its subdirectories.
+     *
+     * @param database  Database to write to
+     * @param directory Path of the directory
+     */
+    public static void deleteDirectory(SQLiteDatabase database, String directory) {
+        deleteTracks(database, getDirectorySelection(directory), getDirectorySelectionArgs(directory));
+    }
+
+    /**
+     * Removes tracks and their entries of the full text index.
+     */
+    private static void deleteTracks(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        // The index of an external content table needs the old values to remove them
+        database.execSQL("INSERT INTO " + SQL_FTS_TABLE_NAME + " (" + SQL_FTS_TABLE_NAME + ", rowid, " + getFTSColumnList() +
+                ") SELECT 'delete', " + COLUMN_ID + ", " + getFTSColumnList() + " FROM " + SQL_TABLE_NAME + " WHERE " + selection + ";",
+                selectionArgs);
+        database.delete(SQL_TABLE_NAME, selection, selectionArgs);
+    }
+
+    /**
+     * @return Number of tracks in the given directory and its subdirectories
+     */
+    public static int getTrackCount(SQLiteDatabase database, String directory) {
+        try (Cursor cursor = database.rawQuery("SELECT COUNT(*) FROM " + SQL_TABLE_NAME + " WHERE " +
+                getDirectorySelection(directory), getDirectorySelectionArgs(directory))) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    /**
+     * @return Paths of the direct subdirectories of the given directory that contain tracks
+     */
+    public static Set<String> getSubdirectories(SQLiteDatabase database, String directory) {
+        Set<String> subdirectories = new HashSet<>();
+        int prefixLength = getDirectoryPrefix(directory).length();
+        // Cut the paths after the first slash behind the directory
+        String subdirectory = "substr(" + COLUMN_PATH + ", 1, " + prefixLength + " + instr(substr(" + COLUMN_PATH + ", " +
+                (prefixLength + 1) + "), '/') - 1)";
+        try (Cursor cursor = database.rawQuery("SELECT DISTINCT " + subdirectory + " FROM " + SQL_TABLE_NAME + " WHERE " +
+                getDirectorySelection(directory) + " AND instr(substr(" + COLUMN_PATH + ", " + (prefixLength + 1) + "), '/') > 0",
+                getDirectorySelectionArgs(directory))) {
+            while (cursor.moveToNext()) {
+                subdirectories.add(cursor.getString(0));
+            }
+        }
+        return subdirectories;
+    }
+
+    /**
+     * @return Newest modification time of all tracks in milliseconds or 0 if empty
+     */
+    public static long getLastModified(SQLiteDatabase database) {
+        try (Cursor cursor = database.rawQuery("SELECT MAX(" + COLUMN_LAST_MODIFIED + ") FROM " + SQL_TABLE_NAME, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Rebuilds the full text index after the tracks changed.
+     */
+    public static void rebuildIndex(SQLiteDatabase database) {
+        database.execSQL("INSERT INTO " + SQL_FTS_TABLE_NAME + "(" + SQL_FTS_TABLE_NAME + ") VALUES('rebuild');");
+    }
+
+    /**
+     * Searches the mirrored tracks. Every word of the search term needs to match the beginning
+     * of a word in the searched tags.
+     *
+     * @param database   Database to search in
+     * @param searchTerm Search term
+     * @param type       Type of search, that defines the searched tags
+     * @return List of found tracks, sorted by their path
+     */
+    public static List<MPDFileEntry> searchTracks(SQLiteDatabase database, String searchTerm, MPDCommands.MPD_SEARCH_TYPE type) {
+        List<MPDFileEntry> tracks = new ArrayList<>();
+
+        String matchQuery = createMatchQuery(searchTerm, type);
+        if (matchQuery.isEmpty()) {
+            return tracks;
+        }
+
+        String query = "SELECT * FROM " + SQL_TABLE_NAME + " WHERE " + COLUMN_ID + " IN (SELECT rowid FROM " +
+                SQL_FTS_TABLE_NAME + " WHERE " + SQL_FTS_TABLE_NAME + " MATCH ?) ORDER BY " + COLUMN_PATH;
+        try (Cursor cursor = database.rawQuery(query, new String[]{matchQuery})) {
+            int pathIndex = cursor.getColumnIndexOrThrow(COLUMN_PATH);
+            int lengthIndex = cursor.getColumnIndexOrThrow(COLUMN_LENGTH);
+            int trackNumberIndex = cursor.getColumnIndexOrThrow(COLUMN_TRACK_NUMBER);
+            int discNumberIndex = cursor.getColumnIndexOrThrow(COLUMN_DISC_NUMBER);
+            int lastModifiedIndex = cursor.getColumnIndexOrThrow(COLUMN_LAST_MODIFIED);
+            int[] tagIndices = new int[TAG_TYPES.length];
+            for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+                tagIndices[tag.ordinal()] = cursor.getColumnIndexOrThrow(getTagColumn(tag));
+            }
+
+            while (cursor.moveToNext()) {
+                MPDTrack track = new MPDTrack(cursor.getString(pathIndex));
+                track.setLength(cursor.getInt(lengthIndex));
+                track.setTrackNumber(cursor.getInt(trackNumberIndex));
+                track.setDiscNumber(cursor.getInt(discNumberIndex));
+                track.setLastModified(new Date(cursor.getLong(lastModifiedIndex)));
+                for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+                    if (!cursor.isNull(tagIndices[tag.ordinal()])) {
+                        track.setStringTag(tag, cursor.getString(tagIndices[tag.ordinal()]));
+                    }
+                }
+                tracks.add(track);
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * Creates the FTS query for a search term. Each word is used as a prefix and restricted to
+     * the column of the search type.
+     */
+    private static String createMatchQuery(String searchTerm, MPDCommands.MPD_SEARCH_TYPE type) {
+        String columnPrefix;
+        switch (type) {
+            case MPD_SEARCH_TRACK:
+                columnPrefix = getTagColumn(MPDTrack.StringTagTypes.TITLE) + ':';
+                break;
+            case MPD_SEARCH_ALBUM:
+                columnPrefix = getTagColumn(MPDTrack.StringTagTypes.ALBUM) + ':';
+                break;
+            case MPD_SEARCH_ARTIST:
+                columnPrefix = getTagColumn(MPDTrack.StringTagTypes.ARTIST) + ':';
+                break;
+            case MPD_SEARCH_FILE:
+                columnPrefix = COLUMN_PATH + ':';
+                break;
+            default:
+                columnPrefix = "";
+                break;
+        }
+
+        StringBuilder matchQuery = new StringBuilder();
+        for (String word : searchTerm.split("\\s+")) {
+            // Quotes would end the phrase of the word
+            word = word.replace("\"", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (matchQuery.length() > 0) {
+                matchQuery.append(' ');
+            }
+            matchQuery.append(columnPrefix).append('"').append(word).append("*\"");
+        }
+        return matchQuery.toString();
+    }
+
+    private static String getDirectoryPrefix(String directory) {
+        return directory.isEmpty() ? "" : directory + '/';
+    }
+
+    /**
+     * Selects all paths within a directory. Uses a range of the path index instead of a LIKE
+     * pattern, '0' is the character following '/'.
+     */
+    private static String getDirectorySelection(String directory) {
+        return directory.isEmpty() ? "1 = 1" : COLUMN_PATH + " >= ? AND " + COLUMN_PATH + " < ?";
+    }
+
+    private static String[] getDirectorySelectionArgs(String directory) {
+        return directory.isEmpty() ? new String[0] : new String[]{directory + '/', directory + '0'};
+    }
+
+    private static String getFTSColumnList() {
+        StringBuilder columns = new StringBuilder();
+        for (String column : FTS_COLUMNS) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append(column);
+        }
+        return columns.toString();
+    }
+
+    private static String getTagColumn(MPDTrack.StringTagTypes tag) {
+        return tag.name().toLowerCase(Locale.US);
+    }
+}
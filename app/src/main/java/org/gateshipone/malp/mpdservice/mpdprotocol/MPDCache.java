@@ -29,12 +29,13 @@ import java.util.List;
 
 public class MPDCache {
 
-    private List<MPDArtist> mAlbumArtists;
-    private List<MPDArtist> mArtists;
-    private List<MPDArtist> mArtistsSort;
-    private List<MPDArtist> mAlbumArtistsSort;
+    // Lists are set and read by different threads
+    private volatile List<MPDArtist> mAlbumArtists;
+    private volatile List<MPDArtist> mArtists;
+    private volatile List<MPDArtist> mArtistsSort;
+    private volatile List<MPDArtist> mAlbumArtistsSort;
 
-    private List<MPDAlbum> mAlbums;
+    private volatile List<MPDAlbum> mAlbums;
 
     private final long mVersion;
 
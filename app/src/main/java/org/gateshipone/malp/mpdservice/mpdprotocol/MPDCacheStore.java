@@ -0,0 +1,208 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.gateshipone.malp.BuildConfig;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDArtist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Stores the lists of a {@link MPDCache} in a file, so that they survive a restart of the
+ * application. The stored lists are only valid for the database version they were fetched for.
+ */
+class MPDCacheStore {
+    private static final String TAG = MPDCacheStore.class.getSimpleName();
+
+    /**
+     * Version of the file format. Files with a different format version are ignored.
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private final File mFile;
+
+    MPDCacheStore(@NonNull File file) {
+        mFile = file;
+    }
+
+    @NonNull
+    File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Loads the stored lists.
+     *
+     * @return The stored cache or null if no (readable) cache is stored
+     */
+    @Nullable
+    synchronized MPDCache load() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        long startTime = System.currentTimeMillis();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            MPDCache cache = new MPDCache(input.readLong());
+            cache.cacheArtists(readArtists(input));
+            cache.cacheArtistsSort(readArtists(input));
+            cache.cacheAlbumArtists(readArtists(input));
+            cache.cacheAlbumArtistsSort(readArtists(input));
+            cache.cacheAlbums(readAlbums(input));
+
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Loaded stored cache for version " + cache.getVersion() + " in " + (System.currentTimeMillis() - startTime) + " ms");
+            }
+            return cache;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not read stored cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores all lists of the given cache. The file is replaced atomically, so that an
+     * interrupted write does not leave a broken cache behind.
+     *
+     * @param cache Cache to store
+     */
+    synchronized void save(@NonNull MPDCache cache) {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(cache.getVersion());
+            writeArtists(output, cache.getArtists());
+            writeArtists(output, cache.getArtistsSort());
+            writeArtists(output, cache.getAlbumArtists());
+            writeArtists(output, cache.getAlbumArtistsSort());
+            writeAlbums(output, cache.getAlbums());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not store cache: " + e.getMessage());
+            tempFile.delete();
+            return;
+        }
+
+        if (!tempFile.renameTo(mFile)) {
+            Log.e(TAG, "Could not replace stored cache");
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Removes the stored lists.
+     */
+    synchronized void delete() {
+        mFile.delete();
+        new File(mFile.getPath() + ".tmp").delete();
+    }
+
+    private static void writeArtists(DataOutputStream output, List<MPDArtist> artists) throws IOException {
+        if (artists == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(artists.size());
+        for (MPDArtist artist : artists) {
+            output.writeUTF(artist.getArtistName());
+            output.writeInt(artist.getMBIDCount());
+            for (int i = 0; i < artist.getMBIDCount(); i++) {
+                output.writeUTF(artist.getMBID(i));
+            }
+        }
+    }
+
+    private static List<MPDArtist> readArtists(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < 0) {
+            return null;
+        }
+
+        List<MPDArtist> artists = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MPDArtist artist = new MPDArtist(input.readUTF());
+            int mbidCount = input.readInt();
+            for (int j = 0; j < mbidCount; j++) {
+                artist.addMBID(input.readUTF());
+            }
+            artists.add(artist);
+        }
+        return artists;
+    }
+
+    private static void writeAlbums(DataOutputStream output, List<MPDAlbum> albums) throws IOException {
+        if (albums == null) {
+            output.writeInt(-1);
+            return;
+        }
+
+        output.writeInt(albums.size());
+        for (MPDAlbum album : albums) {
+            output.writeUTF(album.getName());
+            output.writeUTF(album.getMBID());
+            output.writeUTF(album.getArtistName());
+            output.writeUTF(album.getArtistSortName());
+            output.writeLong(album.getDate().getTime());
+        }
+    }
+
+    private static List<MPDAlbum> readAlbums(DataInputStream input) throws IOException {
+        int count = input.readInt();
+        if (count < 0) {
+            return null;
+        }
+
+        List<MPDAlbum> albums = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            MPDAlbum album = new MPDAlbum(input.readUTF());
+            album.setMBID(input.readUTF());
+            album.setArtistName(input.readUTF());
+            album.setArtistSortName(input.readUTF());
+            album.setDate(new Date(input.readLong()));
+            albums.add(album);
+        }
+        return albums;
+    }
+}
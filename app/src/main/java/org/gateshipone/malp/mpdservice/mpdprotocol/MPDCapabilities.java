@@ -43,6 +43,8 @@ public class MPDCapabilities {
     private boolean mHasIdle;
     private final boolean mHasRangedCurrentPlaylist;
     private boolean mHasSearchAdd;
+    private boolean mHasFilterExpressions;
+    private boolean mHasSortedFindAdd;
 
     private boolean mHasMusicBrainzTags;
     private boolean mHasListGroup;
@@ -70,6 +72,8 @@ public class MPDCapabilities {
     private boolean mHasAlbumArt;
     private boolean mHasReadPicture;
 
+    private boolean mHasBinaryLimit;
+
     public MPDCapabilities(String version, List<String> commands, List<String> tags) {
         String[] versions = version.split("\\.");
         if (versions.length == 3) {
@@ -116,6 +120,11 @@ public class MPDCapabilities {
 
         if (mMinorVersion >= 21 || mMajorVersion > 0) {
             mHasAlbumArt = true;
+            mHasFilterExpressions = true;
+        }
+
+        if (mMinorVersion >= 23 || mMajorVersion > 0) {
+            mHasSortedFindAdd = true;
         }
 
 
@@ -124,6 +133,7 @@ public class MPDCapabilities {
             mHasSearchAdd = commands.contains(MPDCommands.MPD_COMMAND_ADD_SEARCH_FILES_CMD_NAME);
             mHasPlaylistFind = commands.contains(MPDCommands.MPD_COMMAND_PLAYLIST_FIND);
             mHasReadPicture = commands.contains(MPDCommands.MPD_COMMAND_READ_PICTURE);
+            mHasBinaryLimit = commands.contains(MPDCommands.MPD_COMMAND_BINARY_LIMIT);
         }
 
 
@@ -158,6 +168,14 @@ public class MPDCapabilities {
         return mHasSearchAdd;
     }
 
+    public boolean hasFilterExpressions() {
+        return mHasFilterExpressions;
+    }
+
+    public boolean hasSortedFindAdd() {
+        return mHasSortedFindAdd;
+    }
+
     public boolean hasListGroup() {
         return mHasListGroup;
     }
@@ -218,6 +236,14 @@ public class MPDCapabilities {
         return mHasReadPicture;
     }
 
+    public boolean hasBinaryLimit() {
+        return mHasBinaryLimit;
+    }
+
+    public boolean isMopidyDetected() {
+        return mMopidyDetected;
+    }
+
     public boolean hasListGroupingFixed() {
         return mMultipleListGroupFixed;
     }
@@ -231,10 +257,13 @@ public class MPDCapabilities {
                 + "IDLE support: " + mHasIdle + '\n'
                 + "Windowed playlist: " + mHasRangedCurrentPlaylist + '\n'
                 + "Fast search add: " + mHasSearchAdd + '\n'
+                + "Filter expressions: " + mHasFilterExpressions + '\n'
+                + "Sorted find add: " + mHasSortedFindAdd + '\n'
                 + "List grouping: " + mHasListGroup + '\n'
                 + "List filtering: " + mHasListFiltering + '\n'
                 + "Fast ranged currentplaylist delete: " + mHasCurrentPlaylistRemoveRange + '\n'
                 + "MPD based album artwork: " + mHasAlbumArt + '|' + mHasReadPicture + '\n'
+                + "Binary limit: " + mHasBinaryLimit + '\n'
                 + (mMopidyDetected ? "Mopidy detected, consider using the real MPD server (www.musicpd.org)!\n" : "")
                 + (mMPDBug408Active ? "Temporarily limited protocol usage active because of MPD bug #408 and arbitrary protocol changes\n" : "");
     }
@@ -243,6 +272,8 @@ public class MPDCapabilities {
         Log.w(TAG, "Enabling workarounds for detected Mopidy server");
         mHasListGroup = false;
         mHasListFiltering = false;
+        mHasFilterExpressions = false;
+        mHasSortedFindAdd = false;
         mMopidyDetected = true;
 
         // Command is listed in "commands" but mopidy returns "not implemented"
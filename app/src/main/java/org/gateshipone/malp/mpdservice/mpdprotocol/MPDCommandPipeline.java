@@ -0,0 +1,119 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects multiple read commands that are sent to the server in one command list. The responses
+ * are split at each "list_OK" and handed to the parser of the corresponding command, so every
+ * command gets its own typed {@link Result}.
+ */
+class MPDCommandPipeline {
+
+    /**
+     * Parser for the response of a single command of the pipeline.
+     *
+     * @param <T> Type of the parsed response
+     */
+    interface ResponseParser<T> {
+        T parseResponse(MPDConnection connection) throws MPDException;
+    }
+
+    /**
+     * Result of a single command. Only available after the pipeline was executed.
+     *
+     * @param <T> Type of the parsed response
+     */
+    static class Result<T> {
+        private T mValue;
+
+        /**
+         * @return The parsed response or null if the command was not executed
+         * (e.g. because a previous command of the pipeline failed)
+         */
+        @Nullable
+        T get() {
+            return mValue;
+        }
+    }
+
+    private static class Entry<T> {
+        private final String mCommand;
+        private final ResponseParser<T> mParser;
+        private final Result<T> mResult;
+
+        private Entry(String command, ResponseParser<T> parser) {
+            mCommand = command;
+            mParser = parser;
+            mResult = new Result<>();
+        }
+
+        private void parse(MPDConnection connection) throws MPDException {
+            mResult.mValue = mParser.parseResponse(connection);
+        }
+    }
+
+    private final List<Entry<?>> mEntries = new ArrayList<>();
+
+    /**
+     * Queues a command for the pipeline.
+     *
+     * @param command Command string to send to the server
+     * @param parser  Parser that is used for the response of this command
+     * @return Result object that holds the response after the pipeline was executed
+     */
+    <T> Result<T> add(String command, ResponseParser<T> parser) {
+        Entry<T> entry = new Entry<>(command, parser);
+        mEntries.add(entry);
+        return entry.mResult;
+    }
+
+    /**
+     * Sends all queued commands and parses their responses.
+     *
+     * @param connection Connection to use
+     * @throws MPDException If one of the commands failed. Results of the following commands
+     *                      stay empty.
+     */
+    void execute(MPDConnection connection) throws MPDException {
+        List<String> commands = new ArrayList<>(mEntries.size());
+        for (Entry<?> entry : mEntries) {
+            commands.add(entry.mCommand);
+        }
+
+        connection.sendMPDCommandList(commands);
+
+        for (Entry<?> entry : mEntries) {
+            // No more responses follow if the list was aborted
+            if (!connection.isCommandListPending()) {
+                break;
+            }
+            entry.parse(connection);
+        }
+    }
+}
@@ -24,10 +24,15 @@ package org.gateshipone.malp.mpdservice.mpdprotocol;
 
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDCurrentStatus;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class MPDCommands {
 
     public static final String MPD_COMMAND_CLOSE = "close";
 
+    public static final String MPD_COMMAND_PING = "ping";
+
     public static String MPD_COMMAND_PASSWORD(String password) {
         return "password \"" + escapeString(password) + "\"";
     }
@@ -127,6 +132,24 @@ public class MPDCommands {
 
     public static final String MPD_COMMAND_REQUEST_ALL_FILES = "listall";
 
+    public static final String MPD_COMMAND_REQUEST_ALL_FILES_INFO = "listallinfo";
+
+    /**
+     * Requests all songs that were modified since the given time. Requires MPD 0.21.
+     *
+     * @param since Time as UNIX time stamp (seconds)
+     */
+    public static String MPD_COMMAND_REQUEST_FILES_MODIFIED_SINCE(long since) {
+        return "find \"(modified-since '" + since + "')\"";
+    }
+
+    /**
+     * Counts the songs within a directory and its subdirectories. Requires MPD 0.21.
+     */
+    public static String MPD_COMMAND_COUNT_DIRECTORY(String path) {
+        return "count \"" + escapeString("(base '" + escapeFilterValue(path) + "')") + '"';
+    }
+
     /* Control commands */
     public static String MPD_COMMAND_PAUSE(boolean pause) {
         return "pause " + (pause ? "1" : "0");
@@ -147,6 +170,14 @@ public class MPDCommands {
         return "playlistinfo " + start + ':' + end;
     }
 
+    public static String MPD_COMMAND_GET_CURRENT_PLAYLIST_CHANGES(int version) {
+        return "plchanges " + version;
+    }
+
+    public static String MPD_COMMAND_GET_CURRENT_PLAYLIST_CHANGES_POSID(int version) {
+        return "plchangesposid " + version;
+    }
+
     public static String MPD_COMMAND_GET_SAVED_PLAYLIST(String playlistName) {
         return "listplaylistinfo \"" + escapeString(playlistName) + "\"";
     }
@@ -181,12 +212,76 @@ public class MPDCommands {
     public static final String MPD_COMMAND_STOP_IDLE = "noidle";
 
     public static final String MPD_START_COMMAND_LIST = "command_list_begin";
+    public static final String MPD_START_COMMAND_LIST_OK = "command_list_ok_begin";
     public static final String MPD_END_COMMAND_LIST = "command_list_end";
 
     public static String MPD_COMMAND_ADD_FILE(String url) {
         return "add \"" + escapeString(url) + "\"";
     }
 
+    /**
+     * Filter that matches the tracks of an album. Requires MPD 0.21.
+     * <p/>
+     * Unlike the client-side filtering, the artist and the MusicBrainz ID are compared
+     * case-sensitively. "find" has no case-insensitive equality and "search" would ignore the case
+     * of the album name as well. As the names are taken from the tag lists of the server, only
+     * tracks whose tags differ in case from the listed ones are missed.
+     *
+     * @param albumName  Name of the album
+     * @param artistName Artist that has to match either the artist or album artist tag. Can be empty.
+     * @param mbid       MusicBrainz ID of the album or null to ignore it. Empty to match tracks without the tag.
+     * @param sortTags   True to match the artist with the sort tags instead
+     */
+    public static String MPD_FILTER_ALBUM_TRACKS(String albumName, String artistName, String mbid, boolean sortTags) {
+        List<String> expressions = new ArrayList<>();
+        expressions.add("(album == '" + escapeFilterValue(albumName) + "')");
+        if (null != mbid) {
+            expressions.add("(MUSICBRAINZ_ALBUMID == '" + escapeFilterValue(mbid) + "')");
+        }
+        if (!artistName.isEmpty()) {
+            String artist = escapeFilterValue(artistName);
+            // Filters have no OR, so "artist OR albumartist" is expressed as "NOT(NOT artist AND NOT albumartist)"
+            expressions.add("(!((" + (sortTags ? "artistsort" : "artist") + " != '" + artist + "') AND ("
+                    + (sortTags ? "albumartistsort" : "albumartist") + " != '" + artist + "')))");
+        }
+
+        StringBuilder filter = new StringBuilder();
+        if (expressions.size() == 1) {
+            filter.append(expressions.get(0));
+        } else {
+            filter.append('(');
+            for (int i = 0; i < expressions.size(); i++) {
+                if (i > 0) {
+                    filter.append(" AND ");
+                }
+                filter.append(expressions.get(i));
+            }
+            filter.append(')');
+        }
+        return filter.toString();
+    }
+
+    /**
+     * Restricts a filter to the tracks of one disc.
+     *
+     * @param disc Disc tag to match. Empty to match tracks without the tag.
+     */
+    public static String MPD_FILTER_DISC(String filter, String disc) {
+        return "(" + filter + " AND (disc == '" + escapeFilterValue(disc) + "'))";
+    }
+
+    public static String MPD_COMMAND_LIST_DISCS(String filter) {
+        return "list disc \"" + escapeString(filter) + '"';
+    }
+
+    /**
+     * Adds the tracks matching the filter on the server side, sorted numerically by their track
+     * number. Requires MPD 0.23.
+     */
+    public static String MPD_COMMAND_ADD_TRACKS_SORTED(String filter) {
+        return "findadd \"" + escapeString(filter) + "\" sort Track";
+    }
+
     public static String MPD_COMMAND_ADD_FILE_AT_INDEX(String url, int index) {
         return "addid \"" + escapeString(url) + "\"  " + index;
     }
@@ -323,6 +418,12 @@ public class MPDCommands {
 
     public static final String MPD_COMMAND_READ_PICTURE = "readpicture";
 
+    public static final String MPD_COMMAND_BINARY_LIMIT = "binarylimit";
+
+    public static String MPD_COMMAND_SET_BINARY_LIMIT(int size) {
+        return MPD_COMMAND_BINARY_LIMIT + " " + size;
+    }
+
     /**
      * Searches the song of an given URL in the current playlist. MPD will respond by
      * returning a track object if found or nothing else.
@@ -341,6 +442,14 @@ public class MPDCommands {
         return input.replaceAll("\\\\","\\\\\\\\").replaceAll("\"", "\\\\\"");
     }
 
+    /**
+     * Escapes a value that is quoted with single quotes within a filter expression.
+     * The expression itself needs to be escaped with {@link #escapeString(String)} afterwards.
+     */
+    private static String escapeFilterValue(String input) {
+        return input.replace("\\", "\\\\").replace("'", "\\'");
+    }
+
     public static String MPD_COMMAND_GET_ALBUMART(String url, int offset) {
         return "albumart \"" + escapeString(url) + "\" " + offset;
     }
@@ -22,7 +22,6 @@
 
 package org.gateshipone.malp.mpdservice.mpdprotocol;
 
-import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -34,14 +33,22 @@ import org.gateshipone.malp.mpdservice.handlers.MPDIdleChangeHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDArtist;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.Semaphore;
 
 /**
@@ -124,21 +131,58 @@ class MPDConnection {
      */
     private static final int DEIDLE_TIMEOUT = 5 * 1000;
 
+    /**
+     * Time to wait for the connection lock on disconnect before the deidle is requested again
+     * (time in ms)
+     */
+    private static final int DISCONNECT_DEIDLE_RETRY_TIME = 200;
+
     /**
      * Time to wait for response from server. If server is not answering this prevents a livelock
      * after 5 seconds. (time in ns)
      */
     private static final long RESPONSE_TIMEOUT = 5L * 1000L * 1000L * 1000L;
 
+    private static final int IDLE_WAIT_TIME = 500;
+
+    private static final int AUTO_DISCONNECT_TIME = 5 * 1000;
+
     /**
-     * Time to sleep the process waiting for a server response. This reduces the busy-waiting to
-     * a bit more efficent sleep/check pattern.
+     * Time after which a connection that never idles sends a ping. This prevents the server from
+     * closing the connection after its connection_timeout (60 seconds by default). (time in ms)
      */
-    private static final int RESPONSE_WAIT_SLEEP_TIME = 100;
+    private static final int KEEP_ALIVE_TIME = 30 * 1000;
 
-    private static final int IDLE_WAIT_TIME = 500;
+    /**
+     * Time to wait until a lost idle only connection is reconnected (time in ms)
+     */
+    private static final int IDLE_RECONNECT_TIME = 10 * 1000;
 
-    private static final int AUTO_DISCONNECT_TIME = 5 * 1000;
+    /**
+     * Maximum time to wait until a lost idle only connection is reconnected. The wait time is
+     * doubled after each failed attempt up to this value. (time in ms)
+     */
+    private static final int MAX_IDLE_RECONNECT_TIME = 5 * 60 * 1000;
+
+    /**
+     * Defines how the connection is used.
+     */
+    enum CONNECTION_MODE {
+        /**
+         * Connection is used for commands and idles in between to get notified about changes
+         */
+        COMMANDS_AND_IDLE,
+        /**
+         * Connection is only used for commands and never idles
+         */
+        COMMANDS_ONLY,
+        /**
+         * Connection is never used for commands and only idles to get notified about changes
+         */
+        IDLE_ONLY,
+    }
+
+    private volatile CONNECTION_MODE mConnectionMode = CONNECTION_MODE.COMMANDS_AND_IDLE;
 
     /* Internal server parameters used for initiating the connection */
     private String mHostname;
@@ -149,6 +193,21 @@ class MPDConnection {
 
     private MPDSocketInterface mSocketInterface;
 
+    /**
+     * True if this connection reads prepared responses instead of a socket.
+     */
+    private boolean mOffline;
+
+    /**
+     * Directory to record the sessions of new connections to. Null if disabled.
+     */
+    private static volatile File mSessionRecordingDirectory;
+
+    /**
+     * Records the data of the current socket, if session recording is enabled.
+     */
+    private MPDSessionRecorder mSessionRecorder;
+
     /* MPD server properties */
     private MPDCapabilities mServerCapabilities;
 
@@ -171,6 +230,17 @@ class MPDConnection {
      */
     private boolean mCapabilitiesChanged;
 
+    /**
+     * Number of "list_OK" responses that are still expected for a command list sent with
+     * {@link #sendMPDCommandList(List)}.
+     */
+    private int mPendingListResponses;
+
+    /**
+     * Token of the query that is currently running on this connection.
+     */
+    private volatile MPDCancellationToken mCancellationToken;
+
     /**
      * One listener for the state of the connection (connected, disconnected)
      */
@@ -186,8 +256,48 @@ class MPDConnection {
 
     private final Semaphore mConnectionLock;
 
+    /**
+     * Listener that is called directly from the idle thread when subsystems changed on the server.
+     */
+    interface SubsystemChangeListener {
+        void onSubsystemsChanged(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems);
+    }
+
+    private SubsystemChangeListener mSubsystemChangeListener;
+
+    /**
+     * Listener that is called from the reading thread after the workaround for Mopidy was enabled.
+     */
+    interface MopidyDetectionListener {
+        void onMopidyDetected();
+    }
+
+    private MopidyDetectionListener mMopidyDetectionListener;
+
     private final boolean mAutoDisconnect;
 
+    /**
+     * Idle only connection that is connected and disconnected together with this connection.
+     */
+    private volatile MPDConnection mIdleConnection;
+
+    /**
+     * True while the connection this idle only connection belongs to is connected. A lost idle
+     * only connection is only reconnected in this case.
+     */
+    private volatile boolean mOwnerConnected;
+
+    /**
+     * Time to wait until the next reconnect of this idle only connection (time in ms)
+     */
+    private int mReconnectTime = IDLE_RECONNECT_TIME;
+
+    /**
+     * Maximum size of binary chunks to request from the server after connecting. 0 keeps the
+     * default of the server (8 KiB).
+     */
+    private int mBinaryLimit;
+
     /**
      * Creates disconnected MPDConnection with following parameters
      */
@@ -209,6 +319,22 @@ class MPDConnection {
         changeState(CONNECTION_STATES.DISCONNECTED);
     }
 
+    /**
+     * Creates a connection that reads the responses from the given socket interface instead of
+     * a socket, e.g. to run the response parsers on prepared responses or on a session recorded
+     * with {@link MPDSessionRecorder}. See {@link MPDSessionReplay#createConnection(File, float)}.
+     *
+     * @param socketInterface Interface positioned at the start of a response
+     * @param capabilities    Capabilities of the server, they select the parser variants
+     */
+    MPDConnection(MPDSocketInterface socketInterface, MPDCapabilities capabilities) {
+        this(false);
+        mSocketInterface = socketInterface;
+        mServerCapabilities = capabilities;
+        mOffline = true;
+        changeState(CONNECTION_STATES.READY_FOR_COMMANDS);
+    }
+
 
     /**
      * Private function to handle read error. Try to disconnect and remove old sockets.
@@ -226,6 +352,7 @@ class MPDConnection {
             if (null != mSocketInterface) {
                 mSocketInterface = null;
             }
+            stopSessionRecording();
 
             /* Clear TCP-Socket up */
             if (null != mSocket && mSocket.isConnected()) {
@@ -246,6 +373,122 @@ class MPDConnection {
 
         // Notify listener
         notifyDisconnect();
+
+        disconnectIdleConnection();
+
+        if (mConnectionMode == CONNECTION_MODE.IDLE_ONLY) {
+            // Nobody else will reconnect this connection, so try again later
+            synchronized (mIDLETimer) {
+                int reconnectTime = mReconnectTime;
+                mReconnectTime = Math.min(2 * reconnectTime, MAX_IDLE_RECONNECT_TIME);
+                scheduleReconnect(reconnectTime);
+            }
+        }
+    }
+
+    /**
+     * Sets an idle only connection that follows the state of this connection. It is connected
+     * after this connection connected and disconnected if this connection is disconnected.
+     *
+     * @param idleConnection Idle only connection or null to remove it
+     */
+    void setIdleConnection(MPDConnection idleConnection) {
+        MPDConnection oldConnection = mIdleConnection;
+        if (oldConnection != null) {
+            oldConnection.mOwnerConnected = false;
+        }
+        mIdleConnection = idleConnection;
+    }
+
+    private void connectIdleConnection() {
+        MPDConnection idleConnection = mIdleConnection;
+        if (idleConnection != null) {
+            idleConnection.mOwnerConnected = true;
+            synchronized (idleConnection.mIDLETimer) {
+                idleConnection.mReconnectTime = IDLE_RECONNECT_TIME;
+                idleConnection.scheduleReconnect(0);
+            }
+        }
+    }
+
+    private void disconnectIdleConnection() {
+        MPDConnection idleConnection = mIdleConnection;
+        if (idleConnection != null) {
+            idleConnection.mOwnerConnected = false;
+            idleConnection.disconnectFromServer();
+        }
+    }
+
+    /**
+     * Schedules a reconnect of this idle only connection if its owner connection is connected.
+     *
+     * @param delay Time to wait before reconnecting (time in ms)
+     */
+    private void scheduleReconnect(int delay) {
+        if (!mOwnerConnected) {
+            return;
+        }
+
+        synchronized (mIDLETimer) {
+            if (mIDLETask != null) {
+                mIDLETask.cancel();
+            }
+            mIDLETask = new ReconnectTask();
+            mIDLETimer.schedule(mIDLETask, delay);
+        }
+    }
+
+    /**
+     * Sets the size of binary chunks (e.g. for album art) that is requested from the server
+     * if it supports the binarylimit command. Takes effect with the next connect.
+     *
+     * @param binaryLimit Maximum size of binary chunks in bytes
+     */
+    void setBinaryLimit(int binaryLimit) {
+        mBinaryLimit = binaryLimit;
+    }
+
+    /**
+     * Sets how this connection is used. Changes take effect the next time the connection
+     * would start to idle.
+     *
+     * @param mode Mode to use
+     */
+    void setConnectionMode(CONNECTION_MODE mode) {
+        mConnectionMode = mode;
+    }
+
+    /**
+     * Enables recording of the raw data of all connections established afterwards.
+     *
+     * @param directory Directory to write the recordings to or null to disable recording
+     */
+    static void setSessionRecordingDirectory(File directory) {
+        mSessionRecordingDirectory = directory;
+    }
+
+    private void startSessionRecording() {
+        stopSessionRecording();
+
+        File directory = mSessionRecordingDirectory;
+        if (directory == null) {
+            return;
+        }
+
+        File file = new File(directory, "mpd-session-" + System.currentTimeMillis() + "-" + Integer.toHexString(System.identityHashCode(this)) + ".rec");
+        try {
+            mSessionRecorder = new MPDSessionRecorder(file);
+            Log.v(TAG, "Recording session to: " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Could not start session recording: " + e.getMessage());
+        }
+    }
+
+    private void stopSessionRecording() {
+        if (mSessionRecorder != null) {
+            mSessionRecorder.close();
+            mSessionRecorder = null;
+        }
     }
 
     /**
@@ -311,7 +554,15 @@ class MPDConnection {
             /* Create the reader used for reading from the socket. */
             if (mSocketInterface == null) {
                 try {
-                    mSocketInterface = new MPDSocketInterface(mSocket.getInputStream(), mSocket.getOutputStream());
+                    InputStream inputStream = mSocket.getInputStream();
+                    OutputStream outputStream = mSocket.getOutputStream();
+
+                    startSessionRecording();
+                    if (mSessionRecorder != null) {
+                        inputStream = mSessionRecorder.recordInput(inputStream);
+                        outputStream = mSessionRecorder.recordOutput(outputStream);
+                    }
+                    mSocketInterface = new MPDSocketInterface(inputStream, outputStream);
                 } catch (IOException e) {
                     handleSocketError();
                     mConnectionLock.release();
@@ -395,6 +646,19 @@ class MPDConnection {
                 mCapabilitiesChanged = false;
             }
 
+            if (mBinaryLimit > 0 && mServerCapabilities.hasBinaryLimit()) {
+                // Request larger binary chunks to reduce the number of round-trips
+                writeLine(MPDCommands.MPD_COMMAND_SET_BINARY_LIMIT(mBinaryLimit));
+                try {
+                    waitForResponse();
+                } catch (IOException e) {
+                    handleSocketError();
+                    mConnectionLock.release();
+                    throw new MPDException.MPDConnectionException(e.getLocalizedMessage());
+                }
+                checkResponse();
+            }
+
             // Set the timeout to infinite again
             try {
                 mSocket.setSoTimeout(SOCKET_TIMEOUT);
@@ -413,6 +677,16 @@ class MPDConnection {
 
             // Notify listener
             notifyConnected();
+
+            if (mConnectionMode == CONNECTION_MODE.IDLE_ONLY) {
+                synchronized (mIDLETimer) {
+                    mReconnectTime = IDLE_RECONNECT_TIME;
+                }
+                // No command will follow that starts the idling later
+                scheduleIDLE();
+            } else {
+                connectIdleConnection();
+            }
         } else {
             // Connection not established
             mConnectionLock.release();
@@ -445,7 +719,11 @@ class MPDConnection {
         stopIDLE();
 
         try {
-            mConnectionLock.acquire();
+            // The connection can start to idle after the deidle request, e.g. if it was still
+            // connecting. Request the deidle again in this case, the idle thread holds the lock.
+            while (!mConnectionLock.tryAcquire(DISCONNECT_DEIDLE_RETRY_TIME, TimeUnit.MILLISECONDS)) {
+                stopIDLE();
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
@@ -461,6 +739,7 @@ class MPDConnection {
             if (null != mSocketInterface) {
                 mSocketInterface = null;
             }
+            stopSessionRecording();
 
             /* Clear TCP-Socket up */
             if (null != mSocket && mSocket.isConnected()) {
@@ -487,6 +766,8 @@ class MPDConnection {
         cancelIDLEWait();
 
         mConnectionLock.release();
+
+        disconnectIdleConnection();
     }
 
     /**
@@ -625,6 +906,74 @@ class MPDConnection {
         writeLine(command);
     }
 
+    /**
+     * Sends multiple commands to the MPD server with one command list ("command_list_ok_begin").
+     * The server answers each command with its response followed by "list_OK", so all commands
+     * cost only one round-trip.
+     * <p>
+     * CAUTION: After using this command the response of every command needs to be read
+     * in order. {@link #readKey()} returns null at the end of each response. As long as
+     * {@link #isCommandListPending()} is true, another response follows.
+     *
+     * @param commands Command strings to send to the MPD server
+     */
+    void sendMPDCommandList(List<String> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.v(TAG, "Send command list: " + commands);
+        }
+
+        // Ensures that the server is not idling before sending the command
+        stopIDLE();
+
+        // Acquire lock
+        try {
+            mConnectionLock.acquire();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+
+        synchronized (this) {
+            if (mConnectionState != CONNECTION_STATES.READY_FOR_COMMANDS) {
+                Log.w(TAG, "Trying to send a command list to MPD in wrong state: " + mConnectionState);
+                mConnectionLock.release();
+                return;
+            }
+        }
+
+        // Write the complete list at once
+        StringBuilder commandList = new StringBuilder(MPDCommands.MPD_START_COMMAND_LIST_OK);
+        for (String command : commands) {
+            commandList.append('\n').append(command);
+        }
+        commandList.append('\n').append(MPDCommands.MPD_END_COMMAND_LIST);
+
+        mPendingListResponses = commands.size();
+        writeLine(commandList.toString());
+
+        changeState(CONNECTION_STATES.WAITING_FOR_RESPONSE);
+
+        // This waits until the server sends a response (OK,ACK(failure) or the requested data)
+        try {
+            waitForResponse();
+        } catch (IOException e) {
+            mPendingListResponses = 0;
+            handleSocketError();
+            mConnectionLock.release();
+        }
+    }
+
+    /**
+     * @return True if responses of a command list sent with {@link #sendMPDCommandList(List)}
+     * are still to be read. False once all responses were read or the list was aborted by an error.
+     */
+    boolean isCommandListPending() {
+        return mPendingListResponses > 0;
+    }
+
     /**
      * This will start a command list to the server. It can be used to speed up multiple requests
      * like adding songs to the current playlist. Make sure that the idle timeout is stopped
@@ -785,8 +1134,10 @@ class MPDConnection {
         new IdleThread().start();
 
         // Notify idle listeners
-        for (MPDIdleChangeHandler listener : mIdleListeners) {
-            listener.idle();
+        synchronized (mIdleListeners) {
+            for (MPDIdleChangeHandler listener : mIdleListeners) {
+                listener.idle();
+            }
         }
     }
 
@@ -795,33 +1146,34 @@ class MPDConnection {
     }
 
     /**
-     * Function only actively waits for reader to get ready for
-     * the response.
+     * Blocks until the server starts to respond. The socket read timeout is temporarily set to
+     * the given timeout, so a server that is not answering can not block forever.
+     *
+     * @param timeOut Time to wait for the response (time in ns)
      */
     private void waitForResponse(long timeOut) throws IOException {
         if (BuildConfig.DEBUG) {
             Log.v(TAG, "Waiting for response");
         }
-        if (null != mSocketInterface) {
-            long currentTime = System.nanoTime();
+        if (null == mSocketInterface || null == mSocket) {
+            throw new IOException();
+        }
 
-            while (!readyRead()) {
-                long compareTime = System.nanoTime() - currentTime;
-                // Terminate waiting after waiting to long. This indicates that the server is not responding
-                if (compareTime > timeOut) {
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "Stuck waiting for server response");
-                    }
-                    printStackTrace();
-                    throw new IOException();
-                }
-                if (compareTime > 500L * 1000L * 1000L) {
-                    SystemClock.sleep(RESPONSE_WAIT_SLEEP_TIME);
-                }
+        final int socketTimeout = mSocket.getSoTimeout();
+        mSocket.setSoTimeout((int) TimeUnit.NANOSECONDS.toMillis(timeOut));
+        try {
+            mSocketInterface.waitForData();
+        } catch (SocketTimeoutException e) {
+            // Terminate waiting after waiting to long. This indicates that the server is not responding
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Stuck waiting for server response");
             }
-        } else {
-            throw new IOException();
+            printStackTrace();
+            throw e;
+        } finally {
+            mSocket.setSoTimeout(socketTimeout);
         }
+
         if (mConnectionState != CONNECTION_STATES.CONNECTING) {
             changeState(CONNECTION_STATES.RECEIVING);
         }
@@ -849,7 +1201,11 @@ class MPDConnection {
      * @return True if connected to MPD server, false otherwise
      */
     synchronized boolean isConnected() {
-        return null != mSocket && mSocket.isConnected();
+        if (null == mSocket) {
+            // An offline connection has no socket
+            return mOffline && null != mSocketInterface;
+        }
+        return mSocket.isConnected();
     }
 
 
@@ -922,6 +1278,37 @@ class MPDConnection {
         }
     }
 
+    /**
+     * Sets the internal listener that is notified about changed subsystems without a
+     * detour over a message queue.
+     *
+     * @param listener Listener to set
+     */
+    void setSubsystemChangeListener(SubsystemChangeListener listener) {
+        mSubsystemChangeListener = listener;
+    }
+
+    /**
+     * Sets the listener that is notified if this connection detected Mopidy, e.g. so that
+     * connections sharing the same server can enable the workaround as well.
+     *
+     * @param listener Listener to set
+     */
+    void setMopidyDetectionListener(MopidyDetectionListener listener) {
+        mMopidyDetectionListener = listener;
+    }
+
+    /**
+     * Unregisters a listener to be notified about changes in idle state of this connection.
+     *
+     * @param listener Listener to unregister from this connection
+     */
+    void removeIdleListener(MPDIdleChangeHandler listener) {
+        synchronized (mIdleListeners) {
+            mIdleListeners.remove(listener);
+        }
+    }
+
     /**
      * This method should only be used by the idling mechanism.
      * It buffers the read line so that the deidle method can check if deidling was successful.
@@ -993,7 +1380,12 @@ class MPDConnection {
                     Log.v(TAG, "External changes");
                 }
 
+                // Collect all changed subsystems until the OK
+                Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems = EnumSet.noneOf(MPDResponses.MPD_SUBSYSTEM.class);
                 while (!response.equals("OK")) {
+                    if (response.startsWith(MPDResponses.MPD_RESPONSE_CHANGED)) {
+                        changedSubsystems.add(MPDResponses.getSubsystem(response.substring(MPDResponses.MPD_RESPONSE_CHANGED.length())));
+                    }
                     try {
                         response = readLineInternal();
                     } catch (MPDException e) {
@@ -1001,10 +1393,14 @@ class MPDConnection {
                     }
                 }
 
+                if (BuildConfig.DEBUG) {
+                    Log.v(TAG, "Changed subsystems: " + changedSubsystems);
+                }
+
                 changeState(CONNECTION_STATES.READY_FOR_COMMANDS);
 
                 mConnectionLock.release();
-                notifyIdleListener();
+                notifyIdleListener(changedSubsystems);
 
                 scheduleIDLE();
             } else if (response.isEmpty()) {
@@ -1075,10 +1471,21 @@ class MPDConnection {
      */
     @NonNull
     String readValue() throws MPDException, MPDSocketInterface.NoKeyReadException {
+        return readValue(false);
+    }
+
+    /**
+     * Reads a value from the socket.
+     *
+     * @param deduplicate True to share String instances for values that repeat often
+     * @return The read string. Empty if no data is available.
+     */
+    @NonNull
+    String readValue(boolean deduplicate) throws MPDException, MPDSocketInterface.NoKeyReadException {
         if (mSocketInterface != null) {
             String keyValue;
             try {
-                keyValue = mSocketInterface.readValue();
+                keyValue = mSocketInterface.readValue(deduplicate);
             } catch (IOException e) {
                 handleSocketError();
                 mConnectionLock.release();
@@ -1090,17 +1497,78 @@ class MPDConnection {
         return "";
     }
 
+    /**
+     * Skips a value from the socket without copying it.
+     */
+    void skipValue() throws MPDSocketInterface.NoKeyReadException {
+        if (mSocketInterface != null) {
+            try {
+                mSocketInterface.skipValue();
+            } catch (IOException e) {
+                handleSocketError();
+                mConnectionLock.release();
+            }
+        }
+    }
+
+    /**
+     * Skips the rest of a response after a key was read. No objects are created for the skipped
+     * lines, so cancelled queries can drain large responses cheaply.
+     */
+    void skipResponse() throws MPDException {
+        MPDResponses.MPD_RESPONSE_KEY key;
+        do {
+            try {
+                skipValue();
+            } catch (MPDSocketInterface.NoKeyReadException e) {
+                e.printStackTrace();
+            }
+            key = readKey();
+        } while (key != null && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_OK && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ACK);
+    }
+
+    /**
+     * Sets the token that is checked while parsing responses of this connection.
+     *
+     * @param token Token of the running query or null
+     */
+    void setCancellationToken(@Nullable MPDCancellationToken token) {
+        mCancellationToken = token;
+    }
+
+    /**
+     * @return True if the running query was cancelled and its response can be skipped
+     */
+    boolean isCancelled() {
+        MPDCancellationToken token = mCancellationToken;
+        return token != null && token.isCancelled();
+    }
+
     @Nullable
     MPDResponses.MPD_RESPONSE_KEY readKey() throws MPDException {
         if (mSocketInterface != null) {
             MPDResponses.MPD_RESPONSE_KEY key;
             try {
                 key = mSocketInterface.readKey();
+
+                if (key == MPDResponses.MPD_RESPONSE_KEY.RESPONSE_LIST_OK) {
+                    // End of one response within a command list
+                    mPendingListResponses--;
+                    if (mPendingListResponses > 0) {
+                        return null;
+                    }
+
+                    // The last response is followed by the OK of the command list itself
+                    key = mSocketInterface.readKey();
+                }
             } catch (IOException e) {
+                mPendingListResponses = 0;
                 handleSocketError();
                 mConnectionLock.release();
                 return null;
             } catch (MPDException mpdException) {
+                // An error aborts the rest of a command list
+                mPendingListResponses = 0;
                 String errorLine = mpdException.getError();
 
                 // Check for mopidy grouping error signature
@@ -1135,18 +1603,28 @@ class MPDConnection {
     }
 
 
-    byte[] readBinary(int size) throws MPDException {
+    /**
+     * Reads binary data from the socket into the given stream. The data is read from the
+     * socket completely even if writing to the stream fails.
+     *
+     * @param size         Size of the binary data in bytes
+     * @param outputStream Stream to write the data to. If null the data is skipped.
+     * @return False if writing to the stream failed
+     * @throws MPDException.MPDConnectionException If reading from the socket failed
+     */
+    boolean readBinary(int size, OutputStream outputStream) throws MPDException.MPDConnectionException {
         if (mSocketInterface != null) {
             try {
-                return mSocketInterface.readBinary(size);
+                return mSocketInterface.readBinary(size, outputStream);
             } catch (IOException e) {
                 handleSocketError();
-                return null;
+                throw new MPDException.MPDConnectionException(e.getLocalizedMessage());
             }
         }
-        return new byte[0];
+        throw new MPDException.MPDConnectionException("Not connected");
     }
 
+
     /**
      * Internal readLine without unlocking of the connection or state changes
      *
@@ -1202,10 +1680,17 @@ class MPDConnection {
         }
     }
 
-    private void notifyIdleListener() {
+    private void notifyIdleListener(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+        // The set is shared by all listeners
+        changedSubsystems = Collections.unmodifiableSet(changedSubsystems);
+
+        if (mSubsystemChangeListener != null) {
+            mSubsystemChangeListener.onSubsystemsChanged(changedSubsystems);
+        }
+
         synchronized (mIdleListeners) {
             for (MPDIdleChangeHandler listener : mIdleListeners) {
-                listener.noIdle();
+                listener.noIdle(changedSubsystems);
             }
         }
     }
@@ -1216,7 +1701,7 @@ class MPDConnection {
      * that this client is connected to Mopidy so we enable a workaround and reconnect
      * to force the GUI to reload the contents.
      */
-    private void enableMopidyWorkaround() {
+    void enableMopidyWorkaround() {
         // Enable the workaround in the capabilities object
         mServerCapabilities.enableMopidyWorkaround();
 
@@ -1227,6 +1712,11 @@ class MPDConnection {
         } catch (MPDException e) {
             // FIXME what to do?
         }
+
+        final MopidyDetectionListener listener = mMopidyDetectionListener;
+        if (listener != null) {
+            listener.onMopidyDetected();
+        }
     }
 
     /**
@@ -1243,12 +1733,19 @@ class MPDConnection {
                 mIDLETask.cancel();
             }
             int timeout;
-            if (!mAutoDisconnect) {
-                mIDLETask = new StartIDLETask();
-                timeout = IDLE_WAIT_TIME;
-            } else {
+            if (mAutoDisconnect) {
                 mIDLETask = new StartDisconnectTask();
                 timeout = AUTO_DISCONNECT_TIME;
+            } else if (mConnectionMode == CONNECTION_MODE.COMMANDS_ONLY) {
+                mIDLETask = new KeepAliveTask();
+                timeout = KEEP_ALIVE_TIME;
+            } else if (mConnectionMode == CONNECTION_MODE.IDLE_ONLY) {
+                // Nothing else is done with this connection, idle again right away
+                mIDLETask = new StartIDLETask();
+                timeout = 0;
+            } else {
+                mIDLETask = new StartIDLETask();
+                timeout = IDLE_WAIT_TIME;
             }
             mIDLETimer.schedule(mIDLETask, timeout);
         }
@@ -1385,6 +1882,53 @@ class MPDConnection {
         }
     }
 
+    private class KeepAliveTask extends TimerTask {
+        @Override
+        public void run() {
+            synchronized (mIDLETimer) {
+                if (mIDLETask == null) {
+                    // Wait was cancelled.
+                    return;
+                }
+            }
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Keep alive ping");
+            }
+            try {
+                // The OK of the ping schedules the next one
+                sendSimpleMPDCommand(MPDCommands.MPD_COMMAND_PING);
+            } catch (MPDException e) {
+                Log.e(TAG, "Keep alive ping failed: " + e.getError());
+            }
+        }
+    }
+
+    private class ReconnectTask extends TimerTask {
+        @Override
+        public void run() {
+            synchronized (mIDLETimer) {
+                if (mIDLETask == null) {
+                    // Wait was cancelled.
+                    return;
+                }
+                mIDLETask = null;
+            }
+            if (!mOwnerConnected || isConnected()) {
+                // Already connected or not needed anymore
+                return;
+            }
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Reconnect idle connection");
+            }
+            try {
+                connectToServer();
+            } catch (MPDException e) {
+                // A failed attempt schedules the next one
+                Log.e(TAG, "Reconnect of idle connection failed: " + e.getError());
+            }
+        }
+    }
+
     /**
      * Helper class for a task that terminates the noidle command if no response is received from
      * the MPD server. This is necessary as the socket is set to an indefinite timeout before
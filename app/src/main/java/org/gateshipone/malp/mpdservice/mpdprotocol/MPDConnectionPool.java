@@ -0,0 +1,143 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Small pool of connections used for long running queries (e.g. database listings). Every
+ * connection of the pool is a lane that is used by only one query at a time, so that a long
+ * browse does not block the connection used for playback control.
+ * <p/>
+ * The connections disconnect automatically if unused for a while and reconnect on demand.
+ */
+class MPDConnectionPool {
+    private static final String TAG = MPDConnectionPool.class.getSimpleName();
+
+    /**
+     * Query executed on a connection of the pool.
+     *
+     * @param <T> Type of the query result
+     */
+    interface Query<T> {
+        T run(MPDConnection connection) throws MPDException;
+    }
+
+    private final MPDConnection[] mConnections;
+
+    /**
+     * Connections that are currently not used by a query.
+     */
+    private final BlockingQueue<MPDConnection> mFreeConnections;
+
+    /**
+     * Set if a connection could not be established, e.g. because the server limits the number
+     * of clients (max_connections). Queries fall back to the control connection until reset.
+     */
+    private volatile boolean mUnavailable;
+
+    /**
+     * @param size Number of connections in the pool. 0 disables the pool.
+     */
+    MPDConnectionPool(int size) {
+        mConnections = new MPDConnection[size];
+        mFreeConnections = new ArrayBlockingQueue<>(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            mConnections[i] = new MPDConnection(true);
+            mConnections[i].setConnectionMode(MPDConnection.CONNECTION_MODE.COMMANDS_ONLY);
+            mFreeConnections.add(mConnections[i]);
+        }
+    }
+
+    /**
+     * Sets the listener that is notified if a connection of the pool detected Mopidy.
+     */
+    void setMopidyDetectionListener(MPDConnection.MopidyDetectionListener listener) {
+        for (MPDConnection connection : mConnections) {
+            connection.setMopidyDetectionListener(listener);
+        }
+    }
+
+    void setServerParameters(String hostname, String password, int port) {
+        for (MPDConnection connection : mConnections) {
+            connection.setServerParameters(hostname, password, port);
+        }
+        mUnavailable = false;
+    }
+
+    /**
+     * Allows the pool to be used again after a connection failed.
+     */
+    void reset() {
+        mUnavailable = false;
+    }
+
+    void disconnect() {
+        for (MPDConnection connection : mConnections) {
+            connection.disconnectFromServer();
+        }
+    }
+
+    /**
+     * Takes a free connection of the pool and connects it if necessary. Waits if all
+     * connections are in use. The connection must be handed back with {@link #release}.
+     *
+     * @return The connection to use or null if the pool is disabled or no connection could be
+     * established.
+     */
+    @Nullable
+    MPDConnection acquire() {
+        if (mConnections.length == 0 || mUnavailable) {
+            return null;
+        }
+
+        MPDConnection connection;
+        try {
+            connection = mFreeConnections.take();
+        } catch (InterruptedException e) {
+            return null;
+        }
+
+        if (!connection.isConnected()) {
+            try {
+                connection.connectToServer();
+            } catch (MPDException e) {
+                Log.w(TAG, "Could not connect pool connection, using the control connection: " + e.getError());
+                mUnavailable = true;
+                mFreeConnections.add(connection);
+                return null;
+            }
+        }
+        return connection;
+    }
+
+    void release(MPDConnection connection) {
+        mFreeConnections.add(connection);
+    }
+}
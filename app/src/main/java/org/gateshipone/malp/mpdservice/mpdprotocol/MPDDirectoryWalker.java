@@ -0,0 +1,100 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDDirectory;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Walks the database of the server directory by directory. Each step lists a bounded number of
+ * directories with one command list, so huge databases do not exceed the output buffer of the
+ * server and other commands can run in between. The walk can be stopped and resumed at any time.
+ */
+public class MPDDirectoryWalker {
+
+    /**
+     * Maximum number of directories that are listed with one command list
+     */
+    private static final int DIRECTORIES_PER_REQUEST = 32;
+
+    private final MPDInterface mMPDInterface;
+
+    /**
+     * Directories that still need to be listed
+     */
+    private final ArrayDeque<String> mPendingDirectories = new ArrayDeque<>();
+
+    /**
+     * Creates a walker for a directory and all its subdirectories.
+     *
+     * @param mpdInterface Interface of the server to walk
+     * @param root         Path of the directory to start with, empty for the whole database
+     */
+    public MPDDirectoryWalker(MPDInterface mpdInterface, String root) {
+        mMPDInterface = mpdInterface;
+        mPendingDirectories.add(root);
+    }
+
+    /**
+     * @return True if not all directories were listed yet
+     */
+    public boolean hasNext() {
+        return !mPendingDirectories.isEmpty();
+    }
+
+    /**
+     * Lists the next directories until at least the given number of entries were found
+     * or the walk is finished.
+     *
+     * @param minEntries Minimum number of entries to return, 0 for a single request
+     * @return Tracks and directories that were found
+     */
+    public List<MPDFileEntry> next(int minEntries) throws MPDException {
+        List<MPDFileEntry> result = new ArrayList<>();
+        do {
+            List<String> directories = new ArrayList<>(Math.min(DIRECTORIES_PER_REQUEST, mPendingDirectories.size()));
+            while (directories.size() < DIRECTORIES_PER_REQUEST && hasNext()) {
+                directories.add(mPendingDirectories.poll());
+            }
+
+            // Each request is a separate command list, so the connection is released in between
+            for (List<MPDFileEntry> entries : mMPDInterface.getDirectoryListings(directories)) {
+                for (MPDFileEntry entry : entries) {
+                    if (entry instanceof MPDDirectory) {
+                        mPendingDirectories.add(entry.getPath());
+                        result.add(entry);
+                    } else if (entry instanceof MPDTrack) {
+                        result.add(entry);
+                    }
+                }
+            }
+        } while (result.size() < minEntries && hasNext());
+        return result;
+    }
+}
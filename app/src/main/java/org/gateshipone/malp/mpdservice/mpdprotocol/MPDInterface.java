@@ -23,8 +23,14 @@
 package org.gateshipone.malp.mpdservice.mpdprotocol;
 
 
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.Pair;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.gateshipone.malp.BuildConfig;
 import org.gateshipone.malp.mpdservice.handlers.MPDConnectionStateChangeHandler;
 import org.gateshipone.malp.mpdservice.handlers.MPDIdleChangeHandler;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
@@ -35,34 +41,160 @@ import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDOutput;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDStatistics;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MPDInterface {
     private static final String TAG = MPDInterface.class.getSimpleName();
 
+    /**
+     * Receives the entries of large file listings in batches while they are parsed.
+     */
+    public interface FileEntryBatchListener {
+        /**
+         * Called from the thread that requested the listing for every full batch.
+         *
+         * @param batch Entries of the batch. The list is not used by the caller afterwards.
+         */
+        void onFileEntryBatch(List<MPDFileEntry> batch);
+    }
+
+    /**
+     * Receives the progress of {@link #addTrackList(List, TrackListProgressListener)}.
+     */
+    public interface TrackListProgressListener {
+        /**
+         * Called after the server acknowledged a chunk of tracks.
+         *
+         * @param added Number of tracks added so far
+         * @param total Number of tracks to add
+         */
+        void onTracksAdded(int added, int total) throws MPDException;
+    }
+
     private final MPDConnection mConnection;
 
+    /**
+     * Optional second connection that only idles to listen for server events. If it is used,
+     * the command connection never idles and commands do not need to wait for the noidle first.
+     */
+    private MPDConnection mIdleConnection;
+
+    private boolean mUseDedicatedIdleConnection;
+
+    private final List<MPDIdleChangeHandler> mIdleListeners = new ArrayList<>();
+
     private static String mHostname;
     private static int mPort;
     private static String mPassword;
 
-    private MPDCache mCache;
+    /**
+     * Connections used for long running queries so that they do not block the control connection
+     * ({@link #mConnection}) used for playback and status commands.
+     */
+    private final MPDConnectionPool mBulkConnections;
+
+    /**
+     * Cancellation tokens of the threads that issue bulk queries.
+     */
+    private final ThreadLocal<MPDCancellationToken> mCancellationTokens = new ThreadLocal<>();
+
+    private volatile MPDCache mCache;
+
+    /**
+     * Guards the validation and replacement of {@link #mCache}, which happen on the threads of
+     * the callers, the idle connection and the status requests.
+     */
+    private final Object mCacheLock = new Object();
+
+    /**
+     * Optional file store for {@link #mCache}, so that the lists do not need to be fetched
+     * again after a restart.
+     */
+    private volatile MPDCacheStore mCacheStore;
+
+    /**
+     * True if the stored cache was already loaded for the current server.
+     */
+    private volatile boolean mStoredCacheChecked;
+
+    /**
+     * Validates the stored cache and writes the cache to its file, so that the requests wait
+     * for neither.
+     */
+    private final Timer mCacheTimer = new Timer(true);
+
+    /**
+     * True while a write of the cache is scheduled. Lists fetched in the meantime are written
+     * with it.
+     */
+    private final AtomicBoolean mCacheStorePending = new AtomicBoolean();
+
+    /**
+     * Time the database version of {@link #mCache} was last confirmed by the server statistics.
+     */
+    private volatile long mCacheValidationTime;
+
+    /**
+     * The cache is dropped on database idle events, so the statistics are only requested
+     * again after this time in case an event was missed (time in ms).
+     */
+    private static final long CACHE_VALIDATION_INTERVAL = 5 * 60 * 1000; // 5 min
 
     private static final long MAX_IMAGE_SIZE = 50 * 1024 * 1024; // 50 MB
 
-    private MPDInterface(boolean autoDisconnect) {
+    /**
+     * Size of binary chunks requested for album art. Larger chunks need less round-trips.
+     */
+    private static final int ARTWORK_BINARY_LIMIT = 1024 * 1024; // 1 MiB
+
+    /**
+     * Number of connections used for long running queries. MPD does not tell clients its
+     * max_connections setting (100 by default), so this is kept small. If the server refuses
+     * the connections, the queries are sent via the control connection.
+     */
+    private static final int BULK_CONNECTION_COUNT = 2;
+
+    /**
+     * Tracks of the first command list when adding tracks. It is small so that the first
+     * tracks are available (e.g. for playback) quickly.
+     */
+    private static final int ADD_TRACKS_FIRST_CHUNK_SIZE = 16;
+
+    /**
+     * Maximum number of tracks per command list when adding tracks.
+     */
+    private static final int ADD_TRACKS_CHUNK_SIZE = 500;
+
+    /**
+     * Maximum size of a command list when adding tracks. Well below the default
+     * max_command_list_size of MPD (2 MiB).
+     */
+    private static final int ADD_TRACKS_CHUNK_BYTES = 256 * 1024; // 256 kB
+
+    private MPDInterface(boolean autoDisconnect, int bulkConnectionCount) {
         mConnection = new MPDConnection(autoDisconnect);
+        mConnection.setSubsystemChangeListener(this::onSubsystemsChanged);
+        mBulkConnections = new MPDConnectionPool(bulkConnectionCount);
+        mBulkConnections.setMopidyDetectionListener(this::onMopidyDetected);
     }
 
     public static synchronized MPDInterface getGenericInstance() {
         if (mGenericInterface == null) {
-            mGenericInterface = new MPDInterface(false);
+            mGenericInterface = new MPDInterface(false, BULK_CONNECTION_COUNT);
             mGenericInterface.setInstanceServerParameters(mHostname, mPassword, mPort);
         }
 
@@ -71,13 +203,51 @@ public class MPDInterface {
 
     public static synchronized MPDInterface getArtworkInstance() {
         if (mArtworkInterface == null) {
-            mArtworkInterface = new MPDInterface(true);
+            mArtworkInterface = new MPDInterface(true, 0);
+            mArtworkInterface.mConnection.setBinaryLimit(ARTWORK_BINARY_LIMIT);
             mArtworkInterface.setInstanceServerParameters(mHostname, mPassword, mPort);
         }
 
         return mArtworkInterface;
     }
 
+    /**
+     * Enables recording of the raw data of all connections that are established afterwards.
+     * Only meant for debugging, the recordings contain the complete traffic with the server.
+     *
+     * @param directory Directory to write the recordings to or null to disable recording
+     */
+    public static void setSessionRecordingDirectory(File directory) {
+        MPDConnection.setSessionRecordingDirectory(directory);
+    }
+
+    /**
+     * Sets the file to store the cached library lists in. Each server profile should use
+     * its own file.
+     *
+     * @param file File to store the lists in or null to only cache them in memory
+     */
+    public void setCacheFile(@Nullable File file) {
+        mCacheStore = file != null ? new MPDCacheStore(file) : null;
+        mStoredCacheChecked = false;
+    }
+
+    /**
+     * Removes the lists stored in the given file, e.g. because its server profile was removed.
+     *
+     * @param file File that was used with {@link #setCacheFile(File)}
+     */
+    public void deleteCacheFile(@NonNull File file) {
+        final MPDCacheStore store = mCacheStore;
+        if (store != null && store.getFile().equals(file)) {
+            // Also stops scheduled writes of the cache
+            mCacheStore = null;
+            store.delete();
+        } else {
+            new MPDCacheStore(file).delete();
+        }
+    }
+
     // Connection methods
 
     private static MPDInterface mArtworkInterface;
@@ -97,17 +267,42 @@ public class MPDInterface {
     }
 
     private void setInstanceServerParameters(String hostname, String password, int port) {
-        mCache = new MPDCache(0);
+        synchronized (mCacheLock) {
+            mCache = new MPDCache(0);
+            mStoredCacheChecked = false;
+        }
         mConnection.setServerParameters(hostname, password, port);
+        mBulkConnections.setServerParameters(hostname, password, port);
+        synchronized (mIdleListeners) {
+            if (mIdleConnection != null) {
+                mIdleConnection.setServerParameters(hostname, password, port);
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the use of a second connection that only idles to listen for
+     * server events. Takes effect with the next call to {@link #connect()}.
+     *
+     * @param enabled True to use a dedicated idle connection
+     */
+    public synchronized void setDedicatedIdleConnection(boolean enabled) {
+        mUseDedicatedIdleConnection = enabled;
     }
 
     public synchronized void connect() throws MPDException {
+        updateIdleConnection();
+        // Also connects the dedicated idle connection
         mConnection.connectToServer();
-        invalidateCache();
+        mBulkConnections.reset();
+        // Drops the cached lists if the database changed while disconnected
+        checkCacheState();
     }
 
     public synchronized void disconnect() {
+        // Also disconnects the dedicated idle connection
         mConnection.disconnectFromServer();
+        mBulkConnections.disconnect();
     }
 
     public boolean isConnected() {
@@ -124,9 +319,102 @@ public class MPDInterface {
     }
 
     public void addMPDIdleChangeHandler(MPDIdleChangeHandler listener) {
-        mConnection.setIdleListener(listener);
+        synchronized (mIdleListeners) {
+            mIdleListeners.add(listener);
+            getIdlingConnection().setIdleListener(listener);
+        }
+    }
+
+    public void removeMPDIdleChangeHandler(MPDIdleChangeHandler listener) {
+        synchronized (mIdleListeners) {
+            mIdleListeners.remove(listener);
+            getIdlingConnection().removeIdleListener(listener);
+        }
+    }
+
+    /**
+     * @return The connection that notifies about server events
+     */
+    private MPDConnection getIdlingConnection() {
+        return mIdleConnection != null ? mIdleConnection : mConnection;
+    }
+
+    /**
+     * Creates or removes the dedicated idle connection depending on the setting and moves the
+     * idle listeners to the connection that idles.
+     */
+    private void updateIdleConnection() {
+        MPDConnection removedConnection = null;
+        synchronized (mIdleListeners) {
+            if (mUseDedicatedIdleConnection == (mIdleConnection != null)) {
+                return;
+            }
+
+            MPDConnection oldIdlingConnection = getIdlingConnection();
+            if (mUseDedicatedIdleConnection) {
+                mIdleConnection = new MPDConnection(false);
+                mIdleConnection.setConnectionMode(MPDConnection.CONNECTION_MODE.IDLE_ONLY);
+                mIdleConnection.setServerParameters(mHostname, mPassword, mPort);
+                mIdleConnection.setSubsystemChangeListener(this::onSubsystemsChanged);
+                mConnection.setConnectionMode(MPDConnection.CONNECTION_MODE.COMMANDS_ONLY);
+            } else {
+                removedConnection = mIdleConnection;
+                mIdleConnection = null;
+                mConnection.setConnectionMode(MPDConnection.CONNECTION_MODE.COMMANDS_AND_IDLE);
+            }
+            mConnection.setIdleConnection(mIdleConnection);
+
+            for (MPDIdleChangeHandler listener : mIdleListeners) {
+                oldIdlingConnection.removeIdleListener(listener);
+                getIdlingConnection().setIdleListener(listener);
+            }
+        }
+
+        if (removedConnection != null) {
+            removedConnection.disconnectFromServer();
+        }
     }
 
+    /**
+     * Runs a long running query on a connection of the pool. If no pool connection is
+     * available the control connection is used.
+     *
+     * @param query Query to run
+     * @return The result of the query
+     */
+    private <T> T runBulkQuery(MPDConnectionPool.Query<T> query) throws MPDException {
+        MPDConnection connection = mBulkConnections.acquire();
+        if (connection == null) {
+            synchronized (this) {
+                return runCancellableQuery(mConnection, query);
+            }
+        }
+
+        try {
+            return runCancellableQuery(connection, query);
+        } finally {
+            mBulkConnections.release(connection);
+        }
+    }
+
+    private <T> T runCancellableQuery(MPDConnection connection, MPDConnectionPool.Query<T> query) throws MPDException {
+        connection.setCancellationToken(mCancellationTokens.get());
+        try {
+            return query.run(connection);
+        } finally {
+            connection.setCancellationToken(null);
+        }
+    }
+
+    /**
+     * Sets the token for the bulk queries issued by the calling thread. Once it is cancelled
+     * the responses of these queries are skipped instead of parsed.
+     *
+     * @param token Token to use or null to reset it
+     */
+    public void setCancellationToken(@Nullable MPDCancellationToken token) {
+        mCancellationTokens.set(token);
+    }
 
     /*
      * **********************
@@ -144,20 +432,20 @@ public class MPDInterface {
      */
     public List<MPDAlbum> getAlbums() throws MPDException {
         List<MPDAlbum> albums;
-        checkCacheState();
+        final MPDCache cache = checkCacheState();
 
-        albums = mCache.getAlbums();
+        albums = cache.getAlbums();
         if (albums != null) {
             return albums;
         }
 
-        synchronized (this) {
+        final MPDCapabilities capabilities = getServerCapabilities();
+        albums = runBulkQuery(connection -> {
             // Get a list of albums. Check if server is new enough for MB and AlbumArtist filtering
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMS(mConnection.getServerCapabilities()));
-
-            // Remove empty albums at beginning of the list
-            albums = MPDResponseParser.parseMPDAlbums(mConnection);
-        }
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMS(capabilities));
+            return MPDResponseParser.parseMPDAlbums(connection);
+        });
+        // Remove empty albums at beginning of the list
         ListIterator<MPDAlbum> albumIterator = albums.listIterator();
         while (albumIterator.hasNext()) {
             MPDAlbum album = albumIterator.next();
@@ -168,7 +456,8 @@ public class MPDInterface {
             }
         }
 
-        mCache.cacheAlbums(albums);
+        cache.cacheAlbums(albums);
+        storeCache(cache);
         return albums;
     }
 
@@ -180,13 +469,13 @@ public class MPDInterface {
     public List<MPDAlbum> getAlbumsInPath(String path) throws MPDException {
         List<MPDAlbum> albums;
 
-        synchronized (this) {
+        final MPDCapabilities capabilities = getServerCapabilities();
+        albums = runBulkQuery(connection -> {
             // Get a list of albums. Check if server is new enough for MB and AlbumArtist filtering
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMS_FOR_PATH(path, mConnection.getServerCapabilities()));
-
-            // Remove empty albums at beginning of the list
-            albums = MPDResponseParser.parseMPDAlbums(mConnection);
-        }
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMS_FOR_PATH(path, capabilities));
+            return MPDResponseParser.parseMPDAlbums(connection);
+        });
+        // Remove empty albums at beginning of the list
         ListIterator<MPDAlbum> albumIterator = albums.listIterator();
         while (albumIterator.hasNext()) {
             MPDAlbum album = albumIterator.next();
@@ -212,17 +501,24 @@ public class MPDInterface {
         }
 
         if (capabilities.hasTagAlbumArtist() && capabilities.hasListGroup()) {
-            Set<MPDAlbum> result;
-            synchronized (this) {
-                // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities));
-                // Use a hashset for the results, to filter duplicates that will exist.
-                result = new HashSet<>(MPDResponseParser.parseMPDAlbums(mConnection));
-
-                // Also get the list where artistName matches on AlbumArtist
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTIST_ALBUMS(artistName, capabilities));
+            MPDCommandPipeline pipeline = new MPDCommandPipeline();
+            // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
+            MPDCommandPipeline.Result<ArrayList<MPDAlbum>> artistAlbums = pipeline.add(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities), MPDResponseParser::parseMPDAlbums);
+            // Also get the list where artistName matches on AlbumArtist
+            MPDCommandPipeline.Result<ArrayList<MPDAlbum>> albumArtistAlbums = pipeline.add(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTIST_ALBUMS(artistName, capabilities), MPDResponseParser::parseMPDAlbums);
+
+            runBulkQuery(connection -> {
+                pipeline.execute(connection);
+                return null;
+            });
 
-                result.addAll(MPDResponseParser.parseMPDAlbums(mConnection));
+            // Use a hashset for the results, to filter duplicates that will exist.
+            Set<MPDAlbum> result = new HashSet<>();
+            if (artistAlbums.get() != null) {
+                result.addAll(artistAlbums.get());
+            }
+            if (albumArtistAlbums.get() != null) {
+                result.addAll(albumArtistAlbums.get());
             }
 
             List<MPDAlbum> resultList = new ArrayList<>(result);
@@ -231,11 +527,11 @@ public class MPDInterface {
             Collections.sort(resultList);
             return resultList;
         } else {
-            synchronized (this) {
+            return runBulkQuery(connection -> {
                 // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities));
-                return MPDResponseParser.parseMPDAlbums(mConnection);
-            }
+                connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities));
+                return MPDResponseParser.parseMPDAlbums(connection);
+            });
         }
     }
 
@@ -258,17 +554,24 @@ public class MPDInterface {
 
 
         if (capabilities.hasTagAlbumArtist() && capabilities.hasListGroup()) {
-            Set<MPDAlbum> result;
-            synchronized (this) {
-                // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTISTSORT_ALBUMS(artistName, capabilities));
-                // Use a hashset for the results, to filter duplicates that will exist.
-                result = new HashSet<>(MPDResponseParser.parseMPDAlbums(mConnection));
-
-                // Also get the list where artistName matches on AlbumArtistSort
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTSORT_ALBUMS(artistName, capabilities));
+            MPDCommandPipeline pipeline = new MPDCommandPipeline();
+            // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
+            MPDCommandPipeline.Result<ArrayList<MPDAlbum>> artistAlbums = pipeline.add(MPDCommands.MPD_COMMAND_REQUEST_ARTISTSORT_ALBUMS(artistName, capabilities), MPDResponseParser::parseMPDAlbums);
+            // Also get the list where artistName matches on AlbumArtistSort
+            MPDCommandPipeline.Result<ArrayList<MPDAlbum>> albumArtistAlbums = pipeline.add(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTSORT_ALBUMS(artistName, capabilities), MPDResponseParser::parseMPDAlbums);
+
+            runBulkQuery(connection -> {
+                pipeline.execute(connection);
+                return null;
+            });
 
-                result.addAll(MPDResponseParser.parseMPDAlbums(mConnection));
+            // Use a hashset for the results, to filter duplicates that will exist.
+            Set<MPDAlbum> result = new HashSet<>();
+            if (artistAlbums.get() != null) {
+                result.addAll(artistAlbums.get());
+            }
+            if (albumArtistAlbums.get() != null) {
+                result.addAll(albumArtistAlbums.get());
             }
 
             List<MPDAlbum> resultList = new ArrayList<>(result);
@@ -277,11 +580,11 @@ public class MPDInterface {
             Collections.sort(resultList);
             return resultList;
         } else {
-            synchronized (this) {
+            return runBulkQuery(connection -> {
                 // Get all albums that artistName is part of (Also the legacy album list pre v. 0.19)
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities));
-                return MPDResponseParser.parseMPDAlbums(mConnection);
-            }
+                connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTIST_ALBUMS(artistName, capabilities));
+                return MPDResponseParser.parseMPDAlbums(connection);
+            });
         }
     }
 
@@ -290,23 +593,27 @@ public class MPDInterface {
      *
      * @return List of MPDArtist objects
      */
-    public synchronized List<MPDArtist> getArtists() throws MPDException {
-        checkCacheState();
-        List<MPDArtist> artists = mCache.getArtists();
+    public List<MPDArtist> getArtists() throws MPDException {
+        final MPDCache cache = checkCacheState();
+        List<MPDArtist> artists = cache.getArtists();
         if (artists != null) {
             return artists;
         }
 
-        // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTISTS(mConnection.getServerCapabilities().hasListGroup() && mConnection.getServerCapabilities().hasMusicBrainzTags()));
+        final MPDCapabilities capabilities = getServerCapabilities();
+        artists = runBulkQuery(connection -> {
+            // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTISTS(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
+            return MPDResponseParser.parseMPDArtists(connection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
+        });
 
         // Remove first empty artist
-        artists = MPDResponseParser.parseMPDArtists(mConnection, mConnection.getServerCapabilities().hasMusicBrainzTags(), mConnection.getServerCapabilities().hasListGroup());
         if (artists.size() > 0 && artists.get(0).getArtistName().isEmpty()) {
             artists.remove(0);
         }
 
-        mCache.cacheArtists(artists);
+        cache.cacheArtists(artists);
+        storeCache(cache);
         return artists;
     }
 
@@ -315,29 +622,32 @@ public class MPDInterface {
      *
      * @return List of MPDArtist objects
      */
-    public synchronized List<MPDArtist> getArtistsSort() throws MPDException {
-        checkCacheState();
-        List<MPDArtist> artists = mCache.getArtistsSort();
+    public List<MPDArtist> getArtistsSort() throws MPDException {
+        final MPDCache cache = checkCacheState();
+        List<MPDArtist> artists = cache.getArtistsSort();
         if (artists != null) {
             return artists;
         }
 
-        MPDCapabilities capabilities = mConnection.getServerCapabilities();
+        MPDCapabilities capabilities = getServerCapabilities();
         // Check if tag is supported
         if (!capabilities.hasTagArtistSort()) {
             return getArtists();
         }
 
-        // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTISTS_SORT(mConnection.getServerCapabilities().hasListGroup() && mConnection.getServerCapabilities().hasMusicBrainzTags()));
+        artists = runBulkQuery(connection -> {
+            // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ARTISTS_SORT(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
+            return MPDResponseParser.parseMPDArtists(connection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
+        });
 
         // Remove first empty artist
-        artists = MPDResponseParser.parseMPDArtists(mConnection, mConnection.getServerCapabilities().hasMusicBrainzTags(), mConnection.getServerCapabilities().hasListGroup());
         if (artists.size() > 0 && artists.get(0).getArtistName().isEmpty()) {
             artists.remove(0);
         }
 
-        mCache.cacheArtistsSort(artists);
+        cache.cacheArtistsSort(artists);
+        storeCache(cache);
         return artists;
     }
 
@@ -348,9 +658,9 @@ public class MPDInterface {
      * @return List of MPDArtist objects
      */
     public List<MPDArtist> getAlbumArtists() throws MPDException {
-        checkCacheState();
+        final MPDCache cache = checkCacheState();
         // Get list of artists for MBID correction
-        List<MPDArtist> normalArtists = mCache.getAlbumArtists();
+        List<MPDArtist> normalArtists = cache.getAlbumArtists();
         if (normalArtists != null) {
             return normalArtists;
         }
@@ -361,13 +671,11 @@ public class MPDInterface {
             capabilities = mConnection.getServerCapabilities();
         }
 
-        List<MPDArtist> artists;
-        synchronized (this) {
+        List<MPDArtist> artists = runBulkQuery(connection -> {
             // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTS(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
-
-            artists = MPDResponseParser.parseMPDArtists(mConnection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
-        }
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTS(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
+            return MPDResponseParser.parseMPDArtists(connection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
+        });
 
         // If MusicBrainz support is present, try to correct the MBIDs
         if (capabilities.hasMusicBrainzTags()) {
@@ -391,7 +699,8 @@ public class MPDInterface {
             artists.remove(0);
         }
 
-        mCache.cacheAlbumArtists(artists);
+        cache.cacheAlbumArtists(artists);
+        storeCache(cache);
         return artists;
     }
 
@@ -401,9 +710,9 @@ public class MPDInterface {
      * @return List of MPDArtist objects
      */
     public List<MPDArtist> getAlbumArtistsSort() throws MPDException {
-        checkCacheState();
+        final MPDCache cache = checkCacheState();
 
-        List<MPDArtist> normalArtists = mCache.getAlbumArtistsSort();
+        List<MPDArtist> normalArtists = cache.getAlbumArtistsSort();
         if (normalArtists != null) {
             return normalArtists;
         }
@@ -421,13 +730,11 @@ public class MPDInterface {
         normalArtists = getArtistsSort();
 
 
-        List<MPDArtist> artists;
-        synchronized (this) {
+        List<MPDArtist> artists = runBulkQuery(connection -> {
             // Get a list of artists. If server is new enough this will contain MBIDs for artists, that are tagged correctly.
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTS_SORT(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
-
-            artists = MPDResponseParser.parseMPDArtists(mConnection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
-        }
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMARTISTS_SORT(capabilities.hasListGroup() && capabilities.hasMusicBrainzTags()));
+            return MPDResponseParser.parseMPDArtists(connection, capabilities.hasMusicBrainzTags(), capabilities.hasListGroup());
+        });
 
         // If MusicBrainz support is present, try to correct the MBIDs
         if (capabilities.hasMusicBrainzTags()) {
@@ -450,7 +757,8 @@ public class MPDInterface {
         if (artists.size() > 0 && artists.get(0).getArtistName().isEmpty()) {
             artists.remove(0);
         }
-        mCache.cacheAlbumArtistsSort(artists);
+        cache.cacheAlbumArtistsSort(artists);
+        storeCache(cache);
         return artists;
     }
 
@@ -462,10 +770,10 @@ public class MPDInterface {
     public List<MPDFileEntry> getPlaylists() throws MPDException {
         List<MPDFileEntry> playlists;
 
-        synchronized (this) {
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_SAVED_PLAYLISTS);
-            playlists = MPDResponseParser.parseMPDTracks(mConnection);
-        }
+        playlists = runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_SAVED_PLAYLISTS);
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
         Collections.sort(playlists);
         return playlists;
     }
@@ -475,12 +783,87 @@ public class MPDInterface {
      *
      * @return A list of all tracks in MPDTrack objects
      */
-    public synchronized List<MPDFileEntry> getAllTracks() throws MPDException {
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALL_FILES, 120L * 1000L * 1000L * 1000L);
+    public List<MPDFileEntry> getAllTracks() throws MPDException {
+        return getAllTracks(0, null);
+    }
 
-        return MPDResponseParser.parseMPDTracks(mConnection);
+    /**
+     * Gets all tracks from MPD server in batches. The database is walked a few directories at a
+     * time with {@link MPDDirectoryWalker}, so other commands can run in between.
+     *
+     * @param batchSize Minimum number of entries per batch
+     * @param listener  Listener to receive all but the last batch
+     * @return The last batch of tracks
+     */
+    public List<MPDFileEntry> getAllTracks(int batchSize, FileEntryBatchListener listener) throws MPDException {
+        MPDDirectoryWalker walker = new MPDDirectoryWalker(this, "");
+        List<MPDFileEntry> batch = new ArrayList<>();
+        while (walker.hasNext()) {
+            batch.addAll(walker.next(batchSize - batch.size()));
+            if (listener != null && batchSize > 0 && batch.size() >= batchSize && walker.hasNext()) {
+                listener.onFileEntryBatch(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        return batch;
     }
 
+    /**
+     * Gets all tracks with their tags from MPD server in batches. This could take a long time
+     * to process. Be warned.
+     *
+     * @param batchSize Number of entries per batch
+     * @param listener  Listener to receive all but the last batch
+     * @return The last batch of tracks
+     */
+    public List<MPDFileEntry> getAllTracksInfo(int batchSize, FileEntryBatchListener listener) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALL_FILES_INFO, 120L * 1000L * 1000L * 1000L);
+            return MPDResponseParser.parseMPDTracks(connection, batchSize, listener);
+        });
+    }
+
+    /**
+     * Gets the tracks that were modified since the given time in batches.
+     * Requires {@link MPDCapabilities#hasFilterExpressions()}.
+     *
+     * @param since     Time as UNIX time stamp (seconds)
+     * @param batchSize Number of entries per batch
+     * @param listener  Listener to receive all but the last batch
+     * @return The last batch of tracks
+     */
+    public List<MPDFileEntry> getModifiedTracks(long since, int batchSize, FileEntryBatchListener listener) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_FILES_MODIFIED_SINCE(since));
+            return MPDResponseParser.parseMPDTracks(connection, batchSize, listener);
+        });
+    }
+
+    /**
+     * Counts the songs of multiple directories (including their subdirectories) with one round-trip.
+     * Requires {@link MPDCapabilities#hasFilterExpressions()}.
+     *
+     * @param directories Paths of the directories
+     * @return Number of songs for each directory or -1 if it could not be counted
+     */
+    public int[] getDirectorySongCounts(List<String> directories) throws MPDException {
+        return runBulkQuery(connection -> {
+            MPDCommandPipeline pipeline = new MPDCommandPipeline();
+            List<MPDCommandPipeline.Result<MPDStatistics>> results = new ArrayList<>(directories.size());
+            for (String directory : directories) {
+                // The count response uses the same keys as the statistics
+                results.add(pipeline.add(MPDCommands.MPD_COMMAND_COUNT_DIRECTORY(directory), MPDResponseParser::parseMPDStatistic));
+            }
+            pipeline.execute(connection);
+
+            int[] counts = new int[directories.size()];
+            for (int i = 0; i < counts.length; i++) {
+                MPDStatistics count = results.get(i).get();
+                counts[i] = count != null ? count.getSongCount() : -1;
+            }
+            return counts;
+        });
+    }
 
     /**
      * Returns the list of tracks that are part of albumName
@@ -489,14 +872,12 @@ public class MPDInterface {
      * @return List of MPDTrack track objects
      */
     public List<MPDFileEntry> getAlbumTracks(String albumName, String mbid) throws MPDException {
-        List<MPDFileEntry> result;
-        synchronized (this) {
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
-
-            result = MPDResponseParser.parseMPDTracks(mConnection);
-            if (!mbid.isEmpty()) {
-                MPDFileListFilter.filterAlbumMBID(result, mbid);
-            }
+        List<MPDFileEntry> result = runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
+        if (!mbid.isEmpty()) {
+            MPDFileListFilter.filterAlbumMBID(result, mbid);
         }
         MPDSortHelper.sortFileListNumeric(result);
         return result;
@@ -512,16 +893,13 @@ public class MPDInterface {
      * @return List of MPDTrack track objects
      */
     public List<MPDFileEntry> getArtistAlbumTracks(String albumName, String artistName, String mbid) throws MPDException {
-        List<MPDFileEntry> result;
-        synchronized (this) {
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
-
-            // Filter tracks with artistName
-            result = MPDResponseParser.parseMPDTracks(mConnection);
-            // Filter if one of the arguments is non-empty
-            if (!mbid.isEmpty() || !artistName.isEmpty()) {
-                MPDFileListFilter.filterAlbumMBIDandAlbumArtist(result, mbid, artistName);
-            }
+        List<MPDFileEntry> result = runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
+        // Filter tracks with artistName if one of the arguments is non-empty
+        if (!mbid.isEmpty() || !artistName.isEmpty()) {
+            MPDFileListFilter.filterAlbumMBIDandAlbumArtist(result, mbid, artistName);
         }
         // Sort with disc & track number
         MPDSortHelper.sortFileListNumeric(result);
@@ -545,16 +923,13 @@ public class MPDInterface {
             return getArtistAlbumTracks(albumName, artistName, mbid);
         }
 
-        List<MPDFileEntry> result;
-        synchronized (this) {
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
-
-            // Filter tracks with artistName
-            result = MPDResponseParser.parseMPDTracks(mConnection);
-            // Filter if one of the arguments is non-empty
-            if (!mbid.isEmpty() || !artistName.isEmpty()) {
-                MPDFileListFilter.filterAlbumMBIDandAlbumArtistSort(result, mbid, artistName);
-            }
+        List<MPDFileEntry> result = runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUM_TRACKS(albumName));
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
+        // Filter tracks with artistName if one of the arguments is non-empty
+        if (!mbid.isEmpty() || !artistName.isEmpty()) {
+            MPDFileListFilter.filterAlbumMBIDandAlbumArtistSort(result, mbid, artistName);
         }
         // Sort with disc & track number
         MPDSortHelper.sortFileListNumeric(result);
@@ -566,11 +941,13 @@ public class MPDInterface {
      *
      * @return List of MPDTrack items with all tracks of the current playlist
      */
-    public synchronized List<MPDFileEntry> getCurrentPlaylist() throws MPDException {
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST);
+    public List<MPDFileEntry> getCurrentPlaylist() throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST);
 
-        /* Parse the return */
-        return MPDResponseParser.parseMPDTracks(mConnection);
+            /* Parse the return */
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
     }
 
     /**
@@ -578,11 +955,13 @@ public class MPDInterface {
      *
      * @return List of MPDTrack items with all tracks of the current playlist
      */
-    public synchronized List<MPDFileEntry> getCurrentPlaylistWindow(int start, int end) throws MPDException {
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST_WINDOW(start, end));
+    public List<MPDFileEntry> getCurrentPlaylistWindow(int start, int end) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST_WINDOW(start, end));
 
-        /* Parse the return */
-        return MPDResponseParser.parseMPDTracks(mConnection);
+            /* Parse the return */
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
     }
 
     /**
@@ -590,11 +969,13 @@ public class MPDInterface {
      *
      * @return List of MPDTrack items with all tracks of the current playlist
      */
-    public synchronized List<MPDFileEntry> getSavedPlaylist(String playlistName) throws MPDException {
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_SAVED_PLAYLIST(playlistName));
+    public List<MPDFileEntry> getSavedPlaylist(String playlistName) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_SAVED_PLAYLIST(playlistName));
 
-        /* Parse the return */
-        return MPDResponseParser.parseMPDTracks(mConnection);
+            /* Parse the return */
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
     }
 
     /**
@@ -603,17 +984,53 @@ public class MPDInterface {
      * @return List of MPDTrack items with all tracks of the current playlist
      */
     public List<MPDFileEntry> getFiles(String path) throws MPDException {
-        List<MPDFileEntry> retList;
-        synchronized (this) {
-            mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_FILES_INFO(path));
+        List<MPDFileEntry> retList = runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_FILES_INFO(path));
 
             // Parse the return
-            retList = MPDResponseParser.parseMPDTracks(mConnection);
-        }
+            return MPDResponseParser.parseMPDTracks(connection);
+        });
         Collections.sort(retList);
         return retList;
     }
 
+    /**
+     * Requests the files for a specific path with info in batches. The entries are not sorted.
+     *
+     * @param batchSize Number of entries per batch
+     * @param listener  Listener to receive all but the last batch
+     * @return The last batch of entries
+     */
+    public List<MPDFileEntry> getFiles(String path, int batchSize, FileEntryBatchListener listener) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_FILES_INFO(path));
+            return MPDResponseParser.parseMPDTracks(connection, batchSize, listener);
+        });
+    }
+
+    /**
+     * Lists the content of multiple directories with one round-trip. The entries are not sorted.
+     *
+     * @param directories Paths of the directories
+     * @return Entries of each directory in the order of the paths
+     */
+    List<List<MPDFileEntry>> getDirectoryListings(List<String> directories) throws MPDException {
+        return runBulkQuery(connection -> {
+            MPDCommandPipeline pipeline = new MPDCommandPipeline();
+            List<MPDCommandPipeline.Result<ArrayList<MPDFileEntry>>> results = new ArrayList<>(directories.size());
+            for (String directory : directories) {
+                results.add(pipeline.add(MPDCommands.MPD_COMMAND_GET_FILES_INFO(directory), MPDResponseParser::parseMPDTracks));
+            }
+            pipeline.execute(connection);
+
+            List<List<MPDFileEntry>> listings = new ArrayList<>(directories.size());
+            for (MPDCommandPipeline.Result<ArrayList<MPDFileEntry>> result : results) {
+                listings.add(result.get());
+            }
+            return listings;
+        });
+    }
+
     /**
      * Requests the files for a specific search term and type
      *
@@ -621,11 +1038,26 @@ public class MPDInterface {
      * @param type The type of items to search
      * @return List of MPDTrack items with all tracks matching the search
      */
-    public synchronized List<MPDFileEntry> getSearchedFiles(String term, MPDCommands.MPD_SEARCH_TYPE type) throws MPDException {
-        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_SEARCH_FILES(term, type));
+    public List<MPDFileEntry> getSearchedFiles(String term, MPDCommands.MPD_SEARCH_TYPE type) throws MPDException {
+        return getSearchedFiles(term, type, 0, null);
+    }
 
-        /* Parse the return */
-        return MPDResponseParser.parseMPDTracks(mConnection);
+    /**
+     * Requests the files for a specific search term and type in batches
+     *
+     * @param term      The search term to use
+     * @param type      The type of items to search
+     * @param batchSize Number of entries per batch
+     * @param listener  Listener to receive all but the last batch
+     * @return The last batch of matching tracks
+     */
+    public List<MPDFileEntry> getSearchedFiles(String term, MPDCommands.MPD_SEARCH_TYPE type, int batchSize, FileEntryBatchListener listener) throws MPDException {
+        return runBulkQuery(connection -> {
+            connection.sendMPDCommand(MPDCommands.MPD_COMMAND_SEARCH_FILES(term, type));
+
+            /* Parse the return */
+            return MPDResponseParser.parseMPDTracks(connection, batchSize, listener);
+        });
     }
 
     /**
@@ -649,7 +1081,68 @@ public class MPDInterface {
     public synchronized MPDCurrentStatus getCurrentServerStatus() throws MPDException {
         /* Request status */
         mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_STATUS);
-        return MPDResponseParser.parseMPDCurrentStatus(mConnection);
+        MPDCurrentStatus status = MPDResponseParser.parseMPDCurrentStatus(mConnection);
+        onStatusReceived(status);
+        return status;
+    }
+
+    /**
+     * Requests the currentstatus package and the current song from the mpd server with
+     * one round-trip.
+     *
+     * @return Pair of the CurrentStatus object and the MPDTrack entry for the song playing
+     * (null if no song is playing).
+     */
+    public synchronized Pair<MPDCurrentStatus, MPDTrack> getCurrentServerStatusAndSong() throws MPDException {
+        MPDCommandPipeline pipeline = new MPDCommandPipeline();
+        MPDCommandPipeline.Result<MPDCurrentStatus> status = pipeline.add(MPDCommands.MPD_COMMAND_GET_CURRENT_STATUS, MPDResponseParser::parseMPDCurrentStatus);
+        // Reuse the parsing function for tracks here.
+        MPDCommandPipeline.Result<ArrayList<MPDFileEntry>> song = pipeline.add(MPDCommands.MPD_COMMAND_GET_CURRENT_SONG, MPDResponseParser::parseMPDTracks);
+
+        pipeline.execute(mConnection);
+
+        MPDCurrentStatus currentStatus = status.get();
+        if (currentStatus == null) {
+            currentStatus = new MPDCurrentStatus();
+        }
+        onStatusReceived(currentStatus);
+
+        MPDTrack currentSong = null;
+        List<MPDFileEntry> songList = song.get();
+        if (songList != null && songList.size() == 1 && songList.get(0) instanceof MPDTrack) {
+            currentSong = (MPDTrack) songList.get(0);
+        }
+        return new Pair<>(currentStatus, currentSong);
+    }
+
+    /**
+     * Requests the songs of the current playlist that changed since the given playlist version.
+     * These are new songs and songs that changed their position. Removed songs are not listed,
+     * the playlist needs to be shortened to the new length instead.
+     *
+     * @param version    Playlist version to get the changes for
+     * @param maxChanges Maximum number of changes to request
+     * @return The status after the changes (for the new version and length) and the changed songs
+     * or null if more than maxChanges songs changed.
+     */
+    public synchronized Pair<MPDCurrentStatus, List<MPDFileEntry>> getCurrentPlaylistChanges(int version, int maxChanges) throws MPDException {
+        // Check how many positions changed first, this does not transfer the song tags
+        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST_CHANGES_POSID(version));
+        if (MPDResponseParser.parseMPDPlaylistChangeCount(mConnection) > maxChanges) {
+            return null;
+        }
+
+        // Request the changes together with the status, so that both belong to the same version
+        MPDCommandPipeline pipeline = new MPDCommandPipeline();
+        MPDCommandPipeline.Result<ArrayList<MPDFileEntry>> changes = pipeline.add(MPDCommands.MPD_COMMAND_GET_CURRENT_PLAYLIST_CHANGES(version), MPDResponseParser::parseMPDTracks);
+        MPDCommandPipeline.Result<MPDCurrentStatus> status = pipeline.add(MPDCommands.MPD_COMMAND_GET_CURRENT_STATUS, MPDResponseParser::parseMPDCurrentStatus);
+
+        pipeline.execute(mConnection);
+
+        if (changes.get() == null || status.get() == null) {
+            return null;
+        }
+        return new Pair<>(status.get(), changes.get());
     }
 
     /**
@@ -661,7 +1154,9 @@ public class MPDInterface {
         /* Request status */
         mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_STATISTICS);
 
-        return MPDResponseParser.parseMPDStatistic(mConnection);
+        MPDStatistics statistics = MPDResponseParser.parseMPDStatistic(mConnection);
+        onDatabaseVersionReceived(statistics.getLastDBUpdate());
+        return statistics;
     }
 
     /**
@@ -817,18 +1312,60 @@ public class MPDInterface {
      *
      * @param tracks List of MPDFileEntry objects to add to the current playlist.
      */
-    public synchronized void addTrackList(List<MPDFileEntry> tracks) throws MPDException {
+    public void addTrackList(List<MPDFileEntry> tracks) throws MPDException {
+        addTrackList(tracks, null);
+    }
+
+    /**
+     * Adds songs in bounded command lists. Each list is acknowledged by the server before the
+     * next one is sent, so large selections do not exceed the max_command_list_size of the server
+     * and other commands can be sent in between. The first list is small so that the first
+     * tracks are available quickly.
+     *
+     * @param tracks   List of MPDFileEntry objects to add to the current playlist.
+     * @param listener Listener to receive the progress after each command list or null
+     */
+    public void addTrackList(List<MPDFileEntry> tracks, @Nullable TrackListProgressListener listener) throws MPDException {
         if (null == tracks) {
             return;
         }
-        mConnection.startCommandList();
 
+        List<String> commands = new ArrayList<>();
         for (MPDFileEntry track : tracks) {
             if (track instanceof MPDTrack) {
-                mConnection.sendMPDRAWCommand(MPDCommands.MPD_COMMAND_ADD_FILE(track.getPath()));
+                commands.add(MPDCommands.MPD_COMMAND_ADD_FILE(track.getPath()));
+            }
+        }
+
+        int added = 0;
+        int chunkSize = ADD_TRACKS_FIRST_CHUNK_SIZE;
+        while (added < commands.size()) {
+            int chunkEnd = added;
+            int chunkBytes = 0;
+            while (chunkEnd < commands.size() && chunkEnd - added < chunkSize && chunkBytes < ADD_TRACKS_CHUNK_BYTES) {
+                // Approximation, most paths are ASCII
+                chunkBytes += commands.get(chunkEnd).length() + 1;
+                chunkEnd++;
+            }
+
+            synchronized (this) {
+                mConnection.startCommandList();
+                for (String command : commands.subList(added, chunkEnd)) {
+                    mConnection.sendMPDRAWCommand(command);
+                }
+                // Waits for the acknowledgement of the server
+                mConnection.endCommandList();
+            }
+            added = chunkEnd;
+            chunkSize = ADD_TRACKS_CHUNK_SIZE;
+
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "Added " + added + " of " + commands.size() + " tracks");
+            }
+            if (null != listener) {
+                listener.onTracksAdded(added, commands.size());
             }
         }
-        mConnection.endCommandList();
     }
 
     /**
@@ -839,7 +1376,13 @@ public class MPDInterface {
      *                   allows filtering of album tracks to a specified artist. Can also
      *                   be left empty then all tracks from the album will be added.
      */
-    public synchronized void addAlbumTracks(String albumname, String artistname, String mbid) throws MPDException {
+    public void addAlbumTracks(String albumname, String artistname, String mbid) throws MPDException {
+        MPDCapabilities capabilities = getServerCapabilities();
+        if (null != capabilities && capabilities.hasSortedFindAdd()) {
+            addFilteredTracks(Collections.singletonList(createAlbumTracksFilter(capabilities, albumname, artistname, mbid, false)));
+            return;
+        }
+
         List<MPDFileEntry> tracks = getArtistAlbumTracks(albumname, artistname, mbid);
         addTrackList(tracks);
     }
@@ -852,19 +1395,82 @@ public class MPDInterface {
      *                   allows filtering of album tracks to a specified artist. Can also
      *                   be left empty then all tracks from the album will be added.
      */
-    public synchronized void addArtistSortAlbumTracks(String albumname, String artistname, String mbid) throws MPDException {
+    public void addArtistSortAlbumTracks(String albumname, String artistname, String mbid) throws MPDException {
+        MPDCapabilities capabilities = getServerCapabilities();
+        if (null != capabilities && capabilities.hasSortedFindAdd()) {
+            addFilteredTracks(Collections.singletonList(createAlbumTracksFilter(capabilities, albumname, artistname, mbid, hasArtistSortTags(capabilities))));
+            return;
+        }
+
         List<MPDFileEntry> tracks = getArtistSortAlbumTracks(albumname, artistname, mbid);
         addTrackList(tracks);
     }
 
+    /**
+     * Creates a filter that matches the same tracks as the client-side filtering of
+     * {@link #getArtistAlbumTracks(String, String, String)}, see
+     * {@link MPDCommands#MPD_FILTER_ALBUM_TRACKS(String, String, String, boolean)}.
+     */
+    private static String createAlbumTracksFilter(MPDCapabilities capabilities, String albumName, String artistName, String mbid, boolean sortTags) {
+        // The MBID is only checked if the client-side filter would check it as well
+        boolean filterMBID = capabilities.hasMusicBrainzTags() && (!mbid.isEmpty() || !artistName.isEmpty());
+        return MPDCommands.MPD_FILTER_ALBUM_TRACKS(albumName, artistName, filterMBID ? mbid : null, sortTags);
+    }
+
+    private static boolean hasArtistSortTags(MPDCapabilities capabilities) {
+        return capabilities.hasTagAlbumArtistSort() || capabilities.hasTagArtistSort();
+    }
+
+    /**
+     * Adds the tracks matching the filters on the server side in the order of
+     * {@link MPDSortHelper#sortFileListNumeric(List)}, so they do not need to be transferred.
+     * MPD sorts numerically by one tag only, so the discs of all filters are listed first and
+     * then added one by one sorted by track number, with one command list for each step.
+     *
+     * @param filters Filters of the albums in the order to add them
+     */
+    private void addFilteredTracks(List<String> filters) throws MPDException {
+        MPDCommandPipeline pipeline = new MPDCommandPipeline();
+        List<MPDCommandPipeline.Result<List<String>>> discs = new ArrayList<>(filters.size());
+        for (String filter : filters) {
+            discs.add(pipeline.add(MPDCommands.MPD_COMMAND_LIST_DISCS(filter), MPDResponseParser::parseMPDDiscs));
+        }
+        synchronized (this) {
+            pipeline.execute(mConnection);
+        }
+
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < filters.size(); i++) {
+            List<String> albumDiscs = discs.get(i).get();
+            if (null == albumDiscs) {
+                continue;
+            }
+            for (String disc : albumDiscs) {
+                commands.add(MPDCommands.MPD_COMMAND_ADD_TRACKS_SORTED(MPDCommands.MPD_FILTER_DISC(filters.get(i), disc)));
+            }
+        }
+        if (commands.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            mConnection.startCommandList();
+            for (String command : commands) {
+                mConnection.sendMPDRAWCommand(command);
+            }
+            mConnection.endCommandList();
+        }
+    }
+
 
     /**
      * Adds all albums of an artist to the current playlist. Will first get a list of albums for the
-     * artist and then call addAlbumTracks for every album on this result.
+     * artist and then call addAlbumTracks for every album on this result. The interface is only
+     * locked per request, so other commands are not blocked while a large artist is added.
      *
      * @param artistname Name of the artist to enqueue the albums from.
      */
-    public synchronized void addArtist(String artistname, MPDAlbum.MPD_ALBUM_SORT_ORDER sortOrder) throws MPDException {
+    public void addArtist(String artistname, MPDAlbum.MPD_ALBUM_SORT_ORDER sortOrder) throws MPDException {
         List<MPDAlbum> albums = getArtistAlbums(artistname);
         if (null == albums) {
             return;
@@ -875,6 +1481,16 @@ public class MPDInterface {
             Collections.sort(albums, new MPDAlbum.MPDAlbumDateComparator());
         }
 
+        MPDCapabilities capabilities = getServerCapabilities();
+        if (null != capabilities && capabilities.hasSortedFindAdd()) {
+            List<String> filters = new ArrayList<>(albums.size());
+            for (MPDAlbum album : albums) {
+                filters.add(createAlbumTracksFilter(capabilities, album.getName(), artistname, album.getMBID(), false));
+            }
+            addFilteredTracks(filters);
+            return;
+        }
+
         for (MPDAlbum album : albums) {
             // This will add all tracks from album where artistname is either the artist or
             // the album artist.
@@ -888,7 +1504,7 @@ public class MPDInterface {
      *
      * @param artistname Name of the artist to enqueue the albums from.
      */
-    public synchronized void addArtistSort(String artistname, MPDAlbum.MPD_ALBUM_SORT_ORDER sortOrder) throws MPDException {
+    public void addArtistSort(String artistname, MPDAlbum.MPD_ALBUM_SORT_ORDER sortOrder) throws MPDException {
         List<MPDAlbum> albums = getArtistSortAlbums(artistname);
 
 
@@ -897,6 +1513,16 @@ public class MPDInterface {
             Collections.sort(albums, new MPDAlbum.MPDAlbumDateComparator());
         }
 
+        MPDCapabilities capabilities = getServerCapabilities();
+        if (null != capabilities && capabilities.hasSortedFindAdd()) {
+            List<String> filters = new ArrayList<>(albums.size());
+            for (MPDAlbum album : albums) {
+                filters.add(createAlbumTracksFilter(capabilities, album.getName(), artistname, album.getMBID(), hasArtistSortTags(capabilities)));
+            }
+            addFilteredTracks(filters);
+            return;
+        }
+
         for (MPDAlbum album : albums) {
             // This will add all tracks from album where artistname is either the artist or
             // the album artist.
@@ -1097,43 +1723,67 @@ public class MPDInterface {
         mConnection.sendSimpleMPDCommand(MPDCommands.MPD_COMMAND_UPDATE_DATABASE(path));
     }
 
+    /**
+     * Fetches the album art for a file from the server.
+     *
+     * @param path        Path of the file to get the image for
+     * @param readPicture True to read the picture embedded in the file, false for a cover file
+     *                    in the directory of the file
+     * @return The image data or null if no image is available
+     */
     public byte[] getAlbumArt(String path, boolean readPicture) throws MPDException {
+        AlbumArtBuffer imageData = new AlbumArtBuffer();
+        if (!getAlbumArt(path, readPicture, imageData)) {
+            return null;
+        }
+        return imageData.getImageData();
+    }
+
+    /**
+     * Fetches the album art for a file from the server. The binary chunks are written directly
+     * from the socket to the given stream without copying them to intermediate arrays.
+     *
+     * @param path         Path of the file to get the image for
+     * @param readPicture  True to read the picture embedded in the file, false for a cover file
+     *                     in the directory of the file
+     * @param outputStream Stream to write the image data to
+     * @return True if an image was written completely. If false, data written to the stream
+     * so far must be discarded.
+     */
+    public boolean getAlbumArt(String path, boolean readPicture, OutputStream outputStream) throws MPDException {
         // Check if server supports either of the two artwork commands
         if ((!readPicture && !mConnection.getServerCapabilities().hasAlbumArt()) || (readPicture && !mConnection.getServerCapabilities().hasReadPicture())) {
-            return null;
+            return false;
         }
 
         // Size of the complete image
         long imageSize = 0;
-        // Remaining data to read
-        int dataToRead = 0;
-        // Size of the current chunk (usually 8KiB or less)
-        int chunkSize = 0;
-
-        // Image return value. Accumulates all chunks to final image
-        byte[] imageData = null;
+        // Data read so far, used as offset for the next chunk
+        long dataRead = 0;
+        // Size of the current chunk (depends on the binary limit of the connection)
+        int chunkSize;
 
-        // Used to check if the initial image allocation happened
+        // Used to check if the image size was read
         boolean firstRun = true;
 
         // Signalizes if an error happened during reading and that image data must be discarded
         boolean abort = false;
         String line;
-        while (dataToRead != 0 || firstRun) {
+        while (dataRead < imageSize || firstRun) {
             // Request the image
             if (!readPicture) {
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_ALBUMART(path, ((int)imageSize - dataToRead)));
+                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_ALBUMART(path, (int) dataRead));
             } else {
-                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_READPICTURE(path, ((int) imageSize - dataToRead)));
+                mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_READPICTURE(path, (int) dataRead));
             }
             try {
                 line = mConnection.readLine();
             } catch (MPDException e) {
-                return null;
+                return false;
             }
             if (firstRun && (line == null || line.startsWith("OK"))) {
                 // No image found
-                return null;
+                return false;
             }
 
             while (line != null && !line.startsWith("OK")) {
@@ -1141,20 +1791,15 @@ public class MPDInterface {
                     if (firstRun) {
                         try {
                             imageSize = Long.parseLong(line.substring(MPDResponses.MPD_RESPONSE_SIZE.length()));
-                            if(imageSize > MAX_IMAGE_SIZE) {
+                            if (imageSize > MAX_IMAGE_SIZE) {
                                 Log.e(TAG, "Size=" + imageSize + " unsupported for path=" + path + " - Aborting download with " + (readPicture ? "readPicture" : "albumArt"));
-                                // Ensure no more data after the initial chunk is read
-                                imageSize = 0;
                                 abort = true;
-                            } else {
-                                // Allocate complete image data
-                                imageData = new byte[(int)imageSize];
-                                dataToRead = (int)imageSize;
+                            } else if (outputStream instanceof AlbumArtBuffer) {
+                                // Allocate the image once instead of growing the buffer per chunk
+                                ((AlbumArtBuffer) outputStream).setImageSize((int) imageSize);
                             }
                         } catch (NumberFormatException e) {
                             Log.e(TAG, "Can't understand MPD anymore (imageSize): " + path + " - " + e.getMessage());
-                            // Ensure no more data after the initial chunk is read
-                            imageSize = 0;
                             abort = true;
                         }
                         firstRun = false;
@@ -1172,53 +1817,234 @@ public class MPDInterface {
                         throw new MPDException("Cover error:" + e.getMessage());
                     }
 
-                    byte[] readData;
-                    try {
-                        // Do the actual binary read from the socket. The precise length must be known a priori.
-                        readData = mConnection.readBinary(chunkSize);
-                    } catch (MPDException e) {
-                        return null;
+                    if (!abort && (chunkSize == 0 || dataRead + chunkSize > imageSize)) {
+                        Log.e(TAG, "imageSize=" + imageSize + " dataRead=" + dataRead + " chunkSize=" + chunkSize);
+                        Log.e(TAG, "Abort processing the image=" + path + " because MPD provides other data than announced");
+                        abort = true;
                     }
 
-                    // Only use the chunk if no error condition triggered
-                    if (!abort) {
-                        if (((imageSize - dataToRead) + chunkSize) > imageSize) {
-                            Log.e(TAG, "imageSize=" + imageSize + " dataToRead=" + dataToRead + " chunkSize=" + chunkSize);
-                            Log.e(TAG, "Abort processing the image=" + path + " because MPD provides more data than announced");
-                            // Ensure no more data is going to be read
-                            dataToRead = 0;
+                    // Do the actual binary read from the socket. The precise length must be known a priori.
+                    // After an error the data is only skipped.
+                    try {
+                        if (!mConnection.readBinary(chunkSize, abort ? null : outputStream)) {
+                            // Writing the image failed, the chunk was still read from the socket
+                            Log.e(TAG, "Could not write the image=" + path);
                             abort = true;
-                        } else {
-                            // Copy chunk to final output array
-                            System.arraycopy(readData, 0, imageData, ((int) imageSize - dataToRead), chunkSize);
-                            dataToRead -= chunkSize;
                         }
+                    } catch (MPDException e) {
+                        return false;
                     }
+                    dataRead += chunkSize;
                 }
 
                 try {
                     line = mConnection.readLine();
                 } catch (MPDException e) {
-                    return null;
+                    return false;
                 }
             }
+
+            if (abort) {
+                // Discard potential broken image data, no more data is requested
+                return false;
+            }
         }
-        if (!abort) {
-            return imageData;
-        } else {
-            // Discard potential broken image data
-            return null;
+        return true;
+    }
+
+    /**
+     * Buffer for album art that is allocated once with the size of the image announced by
+     * the server.
+     */
+    private static class AlbumArtBuffer extends ByteArrayOutputStream {
+        AlbumArtBuffer() {
+            super(0);
+        }
+
+        void setImageSize(int size) {
+            if (buf.length < size) {
+                buf = Arrays.copyOf(buf, size);
+            }
+        }
+
+        /**
+         * @return The image data, without a copy if the buffer was sized correctly
+         */
+        byte[] getImageData() {
+            return count == buf.length ? buf : toByteArray();
+        }
+    }
+
+    /**
+     * Called from the idle thread of the connection if subsystems changed on the server.
+     *
+     * @param changedSubsystems Set of changed subsystems
+     */
+    /**
+     * Called from a pool connection that detected Mopidy. The queries are built with the
+     * capabilities of the control connection, so the workaround is enabled there as well. The
+     * control connection reconnects, which makes the GUI reload the lists.
+     */
+    private void onMopidyDetected() {
+        synchronized (this) {
+            if (!mConnection.getServerCapabilities().isMopidyDetected()) {
+                mConnection.enableMopidyWorkaround();
+            }
+        }
+
+        // The list that failed was cut off, it must not be kept in the cache
+        synchronized (mCacheLock) {
+            mCache = new MPDCache(0);
+        }
+    }
+
+    private void onSubsystemsChanged(Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems) {
+        if (changedSubsystems.contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE)) {
+            // Database changed, drop the cached lists. The next request will fetch them again.
+            synchronized (mCacheLock) {
+                mCache = new MPDCache(0);
+            }
+        }
+    }
+
+    /**
+     * Checks if the cached lists belong to the current database. The server is only asked if the
+     * cache is empty or was not confirmed for {@link #CACHE_VALIDATION_INTERVAL}.
+     *
+     * @return The validated cache. Lists fetched afterwards must be added to this instance, so
+     * that they are dropped if the cache is replaced in the meantime.
+     */
+    private MPDCache checkCacheState() throws MPDException {
+        synchronized (mCacheLock) {
+            if (mCache.getVersion() != 0 && SystemClock.elapsedRealtime() - mCacheValidationTime < CACHE_VALIDATION_INTERVAL) {
+                return mCache;
+            }
+
+            // Use the stored lists right away once after the server was set. They are validated in the background.
+            final MPDCacheStore store = mCacheStore;
+            if (!mStoredCacheChecked && store != null) {
+                mStoredCacheChecked = true;
+                MPDCache storedCache = store.load();
+                if (storedCache != null) {
+                    mCache = storedCache;
+                    mCacheValidationTime = SystemClock.elapsedRealtime();
+                    validateStoredCache(storedCache);
+                    return mCache;
+                }
+            }
+        }
+
+        final long lastDBUpdate = getServerStatistics().getLastDBUpdate();
+
+        synchronized (mCacheLock) {
+            if (mCache.getVersion() == lastDBUpdate) {
+                return mCache;
+            }
+
+            Log.v(TAG, "MPD cache invalidate");
+            mCache = new MPDCache(lastDBUpdate);
+            mCacheValidationTime = SystemClock.elapsedRealtime();
+            return mCache;
+        }
+    }
+
+    /**
+     * Called whenever a status is received. While the database is updated the cache is
+     * checked with the server statistics on its next use.
+     *
+     * @param status Received status
+     */
+    private void onStatusReceived(MPDCurrentStatus status) {
+        if (status.getUpdateDBJob() >= 0) {
+            synchronized (mCacheLock) {
+                mCacheValidationTime = 0;
+            }
+        }
+    }
+
+    /**
+     * Called whenever the server statistics are received, also for requests not related to the cache.
+     *
+     * @param lastDBUpdate Database version of the server
+     */
+    private void onDatabaseVersionReceived(long lastDBUpdate) {
+        synchronized (mCacheLock) {
+            if (mCache.getVersion() == lastDBUpdate) {
+                mCacheValidationTime = SystemClock.elapsedRealtime();
+            } else if (mCache.getVersion() != 0) {
+                // Database changed without an event, drop the cached lists
+                mCache = new MPDCache(0);
+            }
         }
     }
 
-    private void checkCacheState() throws MPDException {
-        if (mCache.getVersion() != getServerStatistics().getLastDBUpdate()) {
-            invalidateCache();
+    /**
+     * Checks the stored lists with the server statistics in the background. If the database
+     * changed, the lists are dropped and the idle listeners are notified about the changed
+     * database, so that they request the lists again.
+     *
+     * @param storedCache Cache that was loaded from its file
+     */
+    private void validateStoredCache(final MPDCache storedCache) {
+        mCacheTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                long lastDBUpdate = 0;
+                if (isConnected()) {
+                    try {
+                        // Also drops the outdated lists, see onDatabaseVersionReceived
+                        lastDBUpdate = getServerStatistics().getLastDBUpdate();
+                    } catch (MPDException e) {
+                        Log.e(TAG, "Could not validate stored cache: " + e.getError());
+                    }
+                }
+
+                if (lastDBUpdate == 0) {
+                    // Checked again with the next request
+                    synchronized (mCacheLock) {
+                        mCacheValidationTime = 0;
+                    }
+                } else if (lastDBUpdate != storedCache.getVersion()) {
+                    if (BuildConfig.DEBUG) {
+                        Log.v(TAG, "Stored cache is outdated");
+                    }
+                    notifyDatabaseChanged();
+                }
+            }
+        }, 0);
+    }
+
+    private void notifyDatabaseChanged() {
+        final Set<MPDResponses.MPD_SUBSYSTEM> changedSubsystems = Collections.unmodifiableSet(EnumSet.of(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE));
+        synchronized (mIdleListeners) {
+            for (MPDIdleChangeHandler listener : mIdleListeners) {
+                listener.noIdle(changedSubsystems);
+            }
         }
     }
 
-    private void invalidateCache() throws MPDException {
-        Log.v(TAG, "MPD cache invalidate");
-        mCache = new MPDCache(getServerStatistics().getLastDBUpdate());
+    /**
+     * Schedules a write of the cache if it was not replaced while its lists were fetched.
+     * Lists fetched until the write starts are written with it.
+     *
+     * @param cache Cache with the new lists
+     */
+    private void storeCache(MPDCache cache) {
+        final MPDCacheStore store = mCacheStore;
+        if (store == null || cache != mCache || !mCacheStorePending.compareAndSet(false, true)) {
+            return;
+        }
+
+        mCacheTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                mCacheStorePending.set(false);
+                final MPDCache currentCache = mCache;
+                // Skip the write if the server or its database changed in the meantime
+                if (store == mCacheStore && currentCache.getVersion() != 0) {
+                    store.save(currentCache);
+                }
+            }
+        }, 0);
     }
 }
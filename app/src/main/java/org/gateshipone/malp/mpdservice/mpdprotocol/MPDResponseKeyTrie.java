@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Byte based trie over all known MPD response keys. This allows {@link MPDSocketInterface} to
+ * resolve the key of a "key: value" line directly from its read buffer, one byte at a time,
+ * without creating a String object for every line of a response.
+ * <p/>
+ * Nodes are stored in flat arrays (first child / next sibling) to keep the structure small.
+ */
+class MPDResponseKeyTrie {
+    /**
+     * Node index returned if the bytes read so far are not the prefix of any known key.
+     */
+    static final int NO_MATCH = -1;
+
+    /**
+     * Node index to start a new key lookup with.
+     */
+    static final int ROOT = 0;
+
+    private byte[] mLabels;
+    private int[] mFirstChild;
+    private int[] mNextSibling;
+    private MPDResponses.MPD_RESPONSE_KEY[] mKeys;
+
+    private int mNodeCount;
+
+    MPDResponseKeyTrie(Map<String, MPDResponses.MPD_RESPONSE_KEY> keyMap) {
+        int capacity = 64;
+        mLabels = new byte[capacity];
+        mFirstChild = new int[capacity];
+        mNextSibling = new int[capacity];
+        mKeys = new MPDResponses.MPD_RESPONSE_KEY[capacity];
+
+        // Create the root node
+        createNode((byte) 0);
+
+        for (Map.Entry<String, MPDResponses.MPD_RESPONSE_KEY> entry : keyMap.entrySet()) {
+            insert(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue());
+        }
+    }
+
+    /**
+     * Advances the lookup by one byte.
+     *
+     * @param node Current node, {@link #ROOT} for the first byte of a key.
+     * @param b    Next byte of the key
+     * @return The next node or {@link #NO_MATCH} if no known key continues with this byte.
+     */
+    int step(int node, byte b) {
+        if (node == NO_MATCH) {
+            return NO_MATCH;
+        }
+
+        int child = mFirstChild[node];
+        while (child != NO_MATCH) {
+            if (mLabels[child] == b) {
+                return child;
+            }
+            child = mNextSibling[child];
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * @param node Node that was reached after the last byte of a key.
+     * @return The key for this node or {@link MPDResponses.MPD_RESPONSE_KEY#RESPONSE_UNKNOWN} if
+     * the bytes did not form a complete known key.
+     */
+    MPDResponses.MPD_RESPONSE_KEY getKey(int node) {
+        if (node == NO_MATCH || mKeys[node] == null) {
+            return MPDResponses.MPD_RESPONSE_KEY.RESPONSE_UNKNOWN;
+        }
+        return mKeys[node];
+    }
+
+    private void insert(byte[] key, MPDResponses.MPD_RESPONSE_KEY value) {
+        int node = ROOT;
+        for (byte b : key) {
+            int child = step(node, b);
+            if (child == NO_MATCH) {
+                child = createNode(b);
+                mNextSibling[child] = mFirstChild[node];
+                mFirstChild[node] = child;
+            }
+            node = child;
+        }
+        mKeys[node] = value;
+    }
+
+    private int createNode(byte label) {
+        if (mNodeCount == mLabels.length) {
+            int capacity = mLabels.length * 2;
+            mLabels = Arrays.copyOf(mLabels, capacity);
+            mFirstChild = Arrays.copyOf(mFirstChild, capacity);
+            mNextSibling = Arrays.copyOf(mNextSibling, capacity);
+            mKeys = Arrays.copyOf(mKeys, capacity);
+        }
+
+        int node = mNodeCount++;
+        mLabels[node] = label;
+        mFirstChild[node] = NO_MATCH;
+        mNextSibling[node] = NO_MATCH;
+        return node;
+    }
+}
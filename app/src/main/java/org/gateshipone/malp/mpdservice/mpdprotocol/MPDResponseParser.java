@@ -25,6 +25,7 @@ package org.gateshipone.malp.mpdservice.mpdprotocol;
 
 import android.util.Log;
 
+import org.gateshipone.malp.BuildConfig;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDArtist;
 import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDCurrentStatus;
@@ -41,11 +42,36 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 class MPDResponseParser {
     private static final String TAG = MPDResponseParser.class.getSimpleName();
 
+    /**
+     * Keys of track listings whose values repeat for many tracks. Their values are deduplicated
+     * while reading so that all tracks share the same String instances.
+     */
+    private static final Set<MPDResponses.MPD_RESPONSE_KEY> DEDUPLICATED_TRACK_KEYS = EnumSet.of(
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ARTIST,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ARTISTSORT,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ALBUMARTIST,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ALBUMARTISTSORT,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ALBUM,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_DATE,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_GENRE,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_LABEL,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_COMPOSER,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_PERFORMER,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_CONDUCTOR,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_WORK,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_WORK_MBID,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ALBUM_MBID,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ARTIST_MBID,
+            MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ALBUMARTIST_MBID
+    );
+
     /**
      * Parses the return of MPD when a list of albums was requested.
      *
@@ -322,6 +348,21 @@ class MPDResponseParser {
      * @throws MPDException if an error from MPD was received during reading
      */
     static ArrayList<MPDFileEntry> parseMPDTracks(final MPDConnection connection) throws MPDException {
+        return parseMPDTracks(connection, 0, null);
+    }
+
+    /**
+     * Parses the response of MPD for file listings like {@link #parseMPDTracks(MPDConnection)} but
+     * hands the parsed entries to the listener in batches while the response is still read.
+     *
+     * @param batchSize Number of entries per batch
+     * @param listener  Listener to receive the batches or null to collect all entries
+     * @return Entries of the last batch (or all entries if no listener was set)
+     * @throws MPDException if an error from MPD was received during reading
+     */
+    static ArrayList<MPDFileEntry> parseMPDTracks(final MPDConnection connection, final int batchSize, final MPDInterface.FileEntryBatchListener listener) throws MPDException {
+        // Number of entries already handed to the listener
+        int deliveredCount = 0;
         ArrayList<MPDFileEntry> trackList = new ArrayList<>();
         if (!connection.isConnected()) {
             return trackList;
@@ -336,8 +377,17 @@ class MPDResponseParser {
 
         String value = "";
         while (key != null && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_OK && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ACK) {
+            // Nobody waits for the result anymore, drain the response without parsing it
+            if (connection.isCancelled()) {
+                connection.skipResponse();
+                if (BuildConfig.DEBUG) {
+                    Log.v(TAG, "Skipped cancelled file listing after " + (deliveredCount + trackList.size()) + " entries");
+                }
+                return new ArrayList<>();
+            }
+
             try {
-                value = connection.readValue();
+                value = connection.readValue(DEDUPLICATED_TRACK_KEYS.contains(key));
             } catch (MPDSocketInterface.NoKeyReadException e) {
                 e.printStackTrace();
             }
@@ -368,6 +418,12 @@ class MPDResponseParser {
                     break;
             }
 
+            // Hand over completed entries as soon as a batch is full
+            if (listener != null && trackList.size() >= batchSize) {
+                deliveredCount += trackList.size();
+                listener.onFileEntryBatch(trackList);
+                trackList = new ArrayList<>();
+            }
 
             // Currently parsing a file (check its properties)
             if (tempFileEntry instanceof MPDTrack) {
@@ -639,6 +695,35 @@ class MPDResponseParser {
         return status;
     }
 
+    /**
+     * Parses the response of plchangesposid.
+     *
+     * @return Number of changed positions
+     * @throws MPDException if an error from MPD was received during reading
+     */
+    static int parseMPDPlaylistChangeCount(final MPDConnection connection) throws MPDException {
+        int changeCount = 0;
+        if (!connection.isConnected()) {
+            return changeCount;
+        }
+
+        MPDResponses.MPD_RESPONSE_KEY key = connection.readKey();
+        while (key != null && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_OK && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ACK) {
+            try {
+                connection.readValue();
+            } catch (MPDSocketInterface.NoKeyReadException e) {
+                e.printStackTrace();
+            }
+
+            // Every change consists of the position and the id of the song
+            if (key == MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ID) {
+                changeCount++;
+            }
+            key = connection.readKey();
+        }
+        return changeCount;
+    }
+
     private static int parseSingleState(String value) {
         if ("oneshot".equals(value)) {
             return MPDCurrentStatus.MPD_OPTION_ONESHOT;
@@ -781,6 +866,48 @@ class MPDResponseParser {
         return tagList;
     }
 
+    /**
+     * Parses the response of "list disc". The values are sorted numerically like the disc
+     * numbers of tracks, values without a number come first.
+     *
+     * @return List of the disc tags
+     * @throws MPDException if an error from MPD was received during reading
+     */
+    static List<String> parseMPDDiscs(final MPDConnection connection) throws MPDException {
+        ArrayList<String> discList = new ArrayList<>();
+
+        MPDResponses.MPD_RESPONSE_KEY key = connection.readKey();
+
+        String value = "";
+        while (key != null && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_OK && key != MPDResponses.MPD_RESPONSE_KEY.RESPONSE_ACK) {
+            try {
+                value = connection.readValue();
+            } catch (MPDSocketInterface.NoKeyReadException e) {
+                e.printStackTrace();
+            }
+            if (key == MPDResponses.MPD_RESPONSE_KEY.RESPONSE_DISC) {
+                discList.add(value);
+            }
+
+            key = connection.readKey();
+        }
+
+        Collections.sort(discList, (disc1, disc2) -> Integer.compare(parseDiscNumber(disc1), parseDiscNumber(disc2)));
+        return discList;
+    }
+
+    /**
+     * @return The disc number of a disc tag like "1" or "1/3", 0 if it has no number
+     */
+    private static int parseDiscNumber(String disc) {
+        String[] discNumberSep = disc.replaceAll(" ", "").split("/");
+        try {
+            return Integer.parseInt(discNumberSep[0]);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     /**
      * Private parsing method for MPDs output lists.
      *
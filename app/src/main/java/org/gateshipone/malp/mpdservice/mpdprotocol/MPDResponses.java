@@ -42,6 +42,7 @@ public class MPDResponses {
 
     public enum MPD_RESPONSE_KEY {
         RESPONSE_OK,
+        RESPONSE_LIST_OK,
         RESPONSE_ACK,
         RESPONSE_ALBUM,
         RESPONSE_ALBUM_MBID,
@@ -113,6 +114,7 @@ public class MPDResponses {
 
         // Create dumb mapping
         map.put("OK", MPD_RESPONSE_KEY.RESPONSE_OK);
+        map.put("list_OK", MPD_RESPONSE_KEY.RESPONSE_LIST_OK);
         map.put("ACK", MPD_RESPONSE_KEY.RESPONSE_ACK);
         map.put("Album", MPD_RESPONSE_KEY.RESPONSE_ALBUM);
         map.put("MUSICBRAINZ_ALBUMID", MPD_RESPONSE_KEY.RESPONSE_ALBUM_MBID);
@@ -182,4 +184,61 @@ public class MPDResponses {
 
     public static final Map<String, MPD_RESPONSE_KEY> RESPONSE_KEYMAP = createResponseMap();
 
+    /**
+     * Byte based lookup structure of {@link #RESPONSE_KEYMAP} used while reading from the socket.
+     */
+    static final MPDResponseKeyTrie RESPONSE_KEY_TRIE = new MPDResponseKeyTrie(RESPONSE_KEYMAP);
+
+    /**
+     * Subsystems that are reported as "changed: subsystem" after an idle command.
+     */
+    public enum MPD_SUBSYSTEM {
+        SUBSYSTEM_DATABASE,
+        SUBSYSTEM_UPDATE,
+        SUBSYSTEM_STORED_PLAYLIST,
+        SUBSYSTEM_PLAYLIST,
+        SUBSYSTEM_PLAYER,
+        SUBSYSTEM_MIXER,
+        SUBSYSTEM_OUTPUT,
+        SUBSYSTEM_OPTIONS,
+        SUBSYSTEM_PARTITION,
+        SUBSYSTEM_STICKER,
+        SUBSYSTEM_SUBSCRIPTION,
+        SUBSYSTEM_MESSAGE,
+        SUBSYSTEM_NEIGHBOR,
+        SUBSYSTEM_MOUNT,
+        SUBSYSTEM_UNKNOWN,
+    }
+
+    private static Map<String, MPD_SUBSYSTEM> createSubsystemMap() {
+        Map<String, MPD_SUBSYSTEM> map = new HashMap<>(MPD_SUBSYSTEM.values().length);
+
+        map.put("database", MPD_SUBSYSTEM.SUBSYSTEM_DATABASE);
+        map.put("update", MPD_SUBSYSTEM.SUBSYSTEM_UPDATE);
+        map.put("stored_playlist", MPD_SUBSYSTEM.SUBSYSTEM_STORED_PLAYLIST);
+        map.put("playlist", MPD_SUBSYSTEM.SUBSYSTEM_PLAYLIST);
+        map.put("player", MPD_SUBSYSTEM.SUBSYSTEM_PLAYER);
+        map.put("mixer", MPD_SUBSYSTEM.SUBSYSTEM_MIXER);
+        map.put("output", MPD_SUBSYSTEM.SUBSYSTEM_OUTPUT);
+        map.put("options", MPD_SUBSYSTEM.SUBSYSTEM_OPTIONS);
+        map.put("partition", MPD_SUBSYSTEM.SUBSYSTEM_PARTITION);
+        map.put("sticker", MPD_SUBSYSTEM.SUBSYSTEM_STICKER);
+        map.put("subscription", MPD_SUBSYSTEM.SUBSYSTEM_SUBSCRIPTION);
+        map.put("message", MPD_SUBSYSTEM.SUBSYSTEM_MESSAGE);
+        map.put("neighbor", MPD_SUBSYSTEM.SUBSYSTEM_NEIGHBOR);
+        map.put("mount", MPD_SUBSYSTEM.SUBSYSTEM_MOUNT);
+
+        return map;
+    }
+
+    private static final Map<String, MPD_SUBSYSTEM> SUBSYSTEM_MAP = createSubsystemMap();
+
+    /**
+     * @param subsystem Subsystem name as sent by MPD
+     * @return Matching subsystem or {@link MPD_SUBSYSTEM#SUBSYSTEM_UNKNOWN}
+     */
+    static MPD_SUBSYSTEM getSubsystem(String subsystem) {
+        MPD_SUBSYSTEM result = SUBSYSTEM_MAP.get(subsystem);
+        return result != null ? result : MPD_SUBSYSTEM.SUBSYSTEM_UNKNOWN;
+    }
 }
\ No newline at end of file
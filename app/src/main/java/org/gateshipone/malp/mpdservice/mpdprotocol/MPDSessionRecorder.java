@@ -0,0 +1,179 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Records the raw byte stream of a connection to a file, for debugging slow responses and
+ * stalls against a real server. The recording can be read again with {@link MPDSessionReplay}.
+ * <p/>
+ * The file consists of records with the following layout:
+ * <ul>
+ * <li>1 byte direction: {@link #DIRECTION_RECEIVED} or {@link #DIRECTION_SENT}</li>
+ * <li>8 bytes time since the start of the session in nanoseconds</li>
+ * <li>4 bytes length of the data</li>
+ * <li>The data itself</li>
+ * </ul>
+ * The password command is recorded without the password.
+ */
+class MPDSessionRecorder implements Closeable {
+    private static final String TAG = MPDSessionRecorder.class.getSimpleName();
+
+    static final byte DIRECTION_RECEIVED = '<';
+    static final byte DIRECTION_SENT = '>';
+
+    private static final byte[] PASSWORD_COMMAND = "password ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REDACTED_PASSWORD_COMMAND = "password ***\n".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The recording is written to the file at least this often, so that it can be read while
+     * the session stalls (time in ns).
+     */
+    private static final long FLUSH_INTERVAL = 1000L * 1000 * 1000;
+
+    private final DataOutputStream mOutput;
+
+    private final long mStartTime;
+
+    private long mLastFlushTime;
+
+    private boolean mFailed;
+
+    /**
+     * @param file File to write the recording to. An existing file is overwritten.
+     */
+    MPDSessionRecorder(File file) throws IOException {
+        mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        mStartTime = System.nanoTime();
+        mLastFlushTime = mStartTime;
+    }
+
+    /**
+     * @param inputStream Stream of the socket
+     * @return Stream that records all data read from the given stream
+     */
+    InputStream recordInput(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int data = super.read();
+                if (data >= 0) {
+                    record(DIRECTION_RECEIVED, new byte[]{(byte) data}, 0, 1);
+                }
+                return data;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    record(DIRECTION_RECEIVED, buffer, offset, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * @param outputStream Stream of the socket
+     * @return Stream that records all data written to the given stream
+     */
+    OutputStream recordOutput(OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int data) throws IOException {
+                out.write(data);
+                record(DIRECTION_SENT, new byte[]{(byte) data}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+                if (startsWith(buffer, offset, length, PASSWORD_COMMAND)) {
+                    record(DIRECTION_SENT, REDACTED_PASSWORD_COMMAND, 0, REDACTED_PASSWORD_COMMAND.length);
+                } else {
+                    record(DIRECTION_SENT, buffer, offset, length);
+                }
+            }
+        };
+    }
+
+    private synchronized void record(byte direction, byte[] buffer, int offset, int length) {
+        if (mFailed) {
+            return;
+        }
+
+        try {
+            mOutput.writeByte(direction);
+            mOutput.writeLong(System.nanoTime() - mStartTime);
+            mOutput.writeInt(length);
+            mOutput.write(buffer, offset, length);
+
+            // The buffered stream writes full buffers on its own, the rest is flushed on close
+            final long now = System.nanoTime();
+            if (now - mLastFlushTime > FLUSH_INTERVAL) {
+                mOutput.flush();
+                mLastFlushTime = now;
+            }
+        } catch (IOException e) {
+            // Recording must never disturb the connection itself
+            Log.e(TAG, "Stopped session recording: " + e.getMessage());
+            mFailed = true;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            mOutput.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing session recording: " + e.getMessage());
+        }
+    }
+
+    private static boolean startsWith(byte[] buffer, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
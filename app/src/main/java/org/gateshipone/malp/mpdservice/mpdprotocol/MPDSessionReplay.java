@@ -0,0 +1,173 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Plays back a session recorded with {@link MPDSessionRecorder}. The data received from the server
+ * is provided as a stream with the recorded timing, optionally accelerated. Data sent by the client
+ * is discarded, the replay does not check that the same commands are sent again.
+ */
+class MPDSessionReplay extends InputStream {
+    private final DataInputStream mInput;
+
+    /**
+     * Factor to speed up the replay. 0 replays all data without any delay.
+     */
+    private final float mSpeed;
+
+    private final long mStartTime;
+
+    private byte[] mRecord = new byte[0];
+    private int mRecordPos;
+
+    /**
+     * @param file  Recording to play back
+     * @param speed Factor to speed up the replay, e.g. 1 for the recorded speed, 2 for double
+     *              speed or 0 to deliver the data as fast as possible.
+     */
+    MPDSessionReplay(File file, float speed) throws IOException {
+        mInput = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        mSpeed = speed;
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Creates a socket interface that reads the recorded server responses.
+     *
+     * @param file  Recording to play back
+     * @param speed Factor to speed up the replay, see {@link #MPDSessionReplay(File, float)}
+     */
+    static MPDSocketInterface createSocketInterface(File file, float speed) throws IOException {
+        return new MPDSocketInterface(new MPDSessionReplay(file, speed), new OutputStream() {
+            @Override
+            public void write(int b) {
+                // Commands are not checked during replay
+            }
+        });
+    }
+
+    /**
+     * Creates a connection that reads the recorded server responses, so that the response
+     * parsers can be run on a recorded session. The version from the greeting of the server
+     * selects the parser variants.
+     *
+     * @param file  Recording to play back
+     * @param speed Factor to speed up the replay, see {@link #MPDSessionReplay(File, float)}
+     */
+    static MPDConnection createConnection(File file, float speed) throws IOException {
+        MPDSocketInterface socketInterface = createSocketInterface(file, speed);
+        // "OK MPD <version>"
+        String greeting = socketInterface.readLine();
+        String version = greeting != null && greeting.startsWith("OK MPD ") ? greeting.substring(7) : "";
+        return new MPDConnection(socketInterface, new MPDCapabilities(version, null, null));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextRecord()) {
+            return -1;
+        }
+        return mRecord[mRecordPos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextRecord()) {
+            return -1;
+        }
+
+        int read = Math.min(length, mRecord.length - mRecordPos);
+        System.arraycopy(mRecord, mRecordPos, buffer, offset, read);
+        mRecordPos += read;
+        return read;
+    }
+
+    @Override
+    public int available() {
+        return mRecord.length - mRecordPos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mInput.close();
+    }
+
+    /**
+     * Loads the next record received from the server if the current one is consumed and waits
+     * until it is due.
+     *
+     * @return False if the end of the recording is reached
+     */
+    private boolean nextRecord() throws IOException {
+        while (mRecordPos == mRecord.length) {
+            byte direction;
+            long time;
+            try {
+                direction = mInput.readByte();
+                time = mInput.readLong();
+                mRecord = new byte[mInput.readInt()];
+                mInput.readFully(mRecord);
+                mRecordPos = 0;
+            } catch (EOFException e) {
+                return false;
+            }
+
+            if (direction != MPDSessionRecorder.DIRECTION_RECEIVED) {
+                mRecordPos = mRecord.length;
+                continue;
+            }
+
+            waitUntil(time);
+        }
+        return true;
+    }
+
+    private void waitUntil(long recordedTime) throws IOException {
+        if (mSpeed <= 0) {
+            return;
+        }
+
+        long delay = (long) (recordedTime / mSpeed) - (System.nanoTime() - mStartTime);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay / (1000 * 1000), (int) (delay % (1000 * 1000)));
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+}
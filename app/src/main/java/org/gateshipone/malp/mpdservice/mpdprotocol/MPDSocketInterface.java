@@ -25,6 +25,7 @@ package org.gateshipone.malp.mpdservice.mpdprotocol;
 import android.util.Log;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -48,12 +49,19 @@ public class MPDSocketInterface {
 
     private static final int READ_BUFFER_SIZE = 4 * 1024; // 4 kB
 
+    private static final String ACK_PREFIX = "ACK";
+
     private final byte[] mReadBuffer;
 
     private int mReadBufferWritePos;
     private int mReadBufferReadPos;
 
-    private final ByteArrayOutputStream mLineBuffer;
+    private final LineBuffer mLineBuffer;
+
+    /**
+     * Deduplicates values that are read repeatedly, e.g. tag values of large listings.
+     */
+    private final MPDStringTable mStringTable;
 
 
     /**
@@ -71,7 +79,8 @@ public class MPDSocketInterface {
         mReadBufferReadPos = 0;
         mReadBufferWritePos = 0;
 
-        mLineBuffer = new ByteArrayOutputStream();
+        mLineBuffer = new LineBuffer();
+        mStringTable = new MPDStringTable();
     }
 
 
@@ -83,7 +92,11 @@ public class MPDSocketInterface {
      * @throws IOException
      */
     private void fillReadBuffer() throws IOException {
-        mReadBufferWritePos = mInputStream.read(mReadBuffer, 0, READ_BUFFER_SIZE);
+        int read = mInputStream.read(mReadBuffer, 0, READ_BUFFER_SIZE);
+        if (read < 0) {
+            throw new EOFException("Connection closed by server");
+        }
+        mReadBufferWritePos = read;
         mReadBufferReadPos = 0;
     }
 
@@ -165,56 +178,59 @@ public class MPDSocketInterface {
             readLine();
         }
         mValueRead = false;
-        mLineBuffer.reset();
+
+        // The key is matched byte by byte against all known keys, no copy of the data is needed.
+        int trieNode = MPDResponseKeyTrie.ROOT;
+        int keyLength = 0;
+        int ackMatched = 0;
 
         int localReadPos = mReadBufferReadPos;
         // Read until newline
         while (true) {
             // End of buffer reached
             if (localReadPos == mReadBufferWritePos) {
-                // Copy what we've read so far to the string buffer
-                mLineBuffer.write(mReadBuffer, mReadBufferReadPos, (localReadPos - mReadBufferReadPos));
-
                 fillReadBuffer();
                 localReadPos = 0;
                 continue;
             }
 
-            if (mReadBuffer[localReadPos] == ':') {
-                mLineBuffer.write(mReadBuffer, mReadBufferReadPos, (localReadPos - mReadBufferReadPos));
+            final byte currentByte = mReadBuffer[localReadPos];
+            if (currentByte == ':') {
                 mReadBufferReadPos = localReadPos;
                 break;
             }
-            // Newline found, write buffer and break loop here
-            if (mReadBuffer[localReadPos] == '\n') {
-                mLineBuffer.write(mReadBuffer, mReadBufferReadPos, (localReadPos - mReadBufferReadPos));
+            // Newline found, break loop here
+            if (currentByte == '\n') {
                 mReadBufferReadPos = localReadPos + 1;
                 break;
             }
 
+            trieNode = MPDResponses.RESPONSE_KEY_TRIE.step(trieNode, currentByte);
+
+            // Check if the line starts with "ACK", which signals an error
+            if (ackMatched == keyLength && keyLength < ACK_PREFIX.length() && currentByte == ACK_PREFIX.charAt(keyLength)) {
+                ackMatched++;
+            }
+            keyLength++;
             localReadPos++;
+
+            if (ackMatched == ACK_PREFIX.length()) {
+                mValueRead = true;
+                mReadBufferReadPos = localReadPos;
+                // MPD error occurred, read the rest of the line to prepare the MPDException here
+                throw new MPDException(ACK_PREFIX + readLine());
+            }
         }
 
         mKeyRead = true;
-        String key = mLineBuffer.toString("UTF-8");
-
-        if (key.startsWith("ACK")) {
-            mValueRead = true;
-            // MPD error occurred, prepare MPDException here
-            throw new MPDException(key);
-        }
 
-        MPDResponses.MPD_RESPONSE_KEY keyEnum = MPDResponses.RESPONSE_KEYMAP.get(key);
-        if (keyEnum == null) {
-            keyEnum = MPDResponses.MPD_RESPONSE_KEY.RESPONSE_UNKNOWN;
-        }
+        MPDResponses.MPD_RESPONSE_KEY keyEnum = MPDResponses.RESPONSE_KEY_TRIE.getKey(trieNode);
 
-        // If we read OK no key follows.
-        if (key.equals("OK")) {
+        // If we read OK or list_OK no key follows.
+        if (keyEnum == MPDResponses.MPD_RESPONSE_KEY.RESPONSE_OK || keyEnum == MPDResponses.MPD_RESPONSE_KEY.RESPONSE_LIST_OK) {
             mValueRead = true;
             mKeyRead = false;
         }
-        // Return the string data from MPD as UTF-8 (default charset on android) strings
         return keyEnum;
     }
 
@@ -227,6 +243,20 @@ public class MPDSocketInterface {
      * @throws NoKeyReadException If Value is tried to be read without reading the key before
      */
     public String readValue() throws IOException, NoKeyReadException {
+        return readValue(false);
+    }
+
+    /**
+     * This function reads the value that is behind a key, that should have been read before calling
+     * this function. Otherwise a NoKeyReadException will be thrown.
+     *
+     * @param deduplicate True to return the same String instance for values that were read
+     *                    before. Use this for values that are expected to repeat often.
+     * @return
+     * @throws IOException        If a general IO error such as time out occurs
+     * @throws NoKeyReadException If Value is tried to be read without reading the key before
+     */
+    public String readValue(boolean deduplicate) throws IOException, NoKeyReadException {
         if (!mKeyRead) {
             throw new NoKeyReadException();
         }
@@ -275,10 +305,37 @@ public class MPDSocketInterface {
         }
 
         mValueRead = true;
+        if (deduplicate) {
+            return mStringTable.get(mLineBuffer.getBuffer(), 0, mLineBuffer.size());
+        }
         // Return the string data from MPD as UTF-8 (default charset on android) strings
-        String value = mLineBuffer.toString("UTF-8");
-        // Return the string data from MPD as UTF-8 (default charset on android) strings
-        return value;
+        return mLineBuffer.toString("UTF-8");
+    }
+
+    /**
+     * Skips the value that is behind a key without copying it.
+     *
+     * @throws IOException        If a general IO error such as time out occurs
+     * @throws NoKeyReadException If Value is tried to be skipped without reading the key before
+     */
+    public void skipValue() throws IOException, NoKeyReadException {
+        if (!mKeyRead) {
+            throw new NoKeyReadException();
+        }
+        mKeyRead = false;
+
+        // Skip until newline
+        while (true) {
+            if (mReadBufferReadPos == mReadBufferWritePos) {
+                fillReadBuffer();
+            }
+
+            if (mReadBuffer[mReadBufferReadPos++] == '\n') {
+                break;
+            }
+        }
+
+        mValueRead = true;
     }
 
     /**
@@ -290,42 +347,58 @@ public class MPDSocketInterface {
     }
 
     /**
-     * Reads binary data from the socket
+     * Blocks until data is available to read. If data is still buffered this returns immediately.
+     * The maximum time to wait is controlled by the read timeout of the underlying socket.
      *
-     * @param size size to read from the socket in bytes
-     * @return byte array if data is correctly read
-     * @throws IOException Exception during read
+     * @throws IOException Exception during read, e.g. a {@link java.net.SocketTimeoutException}
      */
-    public byte[] readBinary(int size) throws IOException {
-        byte[] data = new byte[size];
+    public void waitForData() throws IOException {
+        if (dataReady() > 0) {
+            return;
+        }
+        fillReadBuffer();
+    }
 
+    /**
+     * Reads binary data from the socket and writes it directly from the read buffer to the
+     * given stream. If writing to the stream fails, the rest of the data is skipped so that
+     * the socket stays usable.
+     *
+     * @param size         size to read from the socket in bytes
+     * @param outputStream Stream to write the data to. If null the data is skipped.
+     * @return False if writing to the stream failed
+     * @throws IOException Exception during read from the socket
+     */
+    public boolean readBinary(int size, OutputStream outputStream) throws IOException {
+        boolean written = true;
         int dataRead = 0;
 
-        int dataToRead = 0;
-        int readyData = 0;
+        int dataToRead;
         while (dataRead < size) {
-            readyData = dataReady();
+            // Check if the data buffer is depleted
+            if (dataReady() == 0) {
+                fillReadBuffer();
+            }
 
             // Check how much data is necessary to read (do not read more data than requested!)
-            dataToRead = Math.min(readyData, (size - dataRead));
-
-            // Read data that is ready or requested
-            System.arraycopy(mReadBuffer, mReadBufferReadPos, data, dataRead, dataToRead);
+            dataToRead = Math.min(dataReady(), (size - dataRead));
+
+            if (outputStream != null) {
+                try {
+                    outputStream.write(mReadBuffer, mReadBufferReadPos, dataToRead);
+                } catch (IOException e) {
+                    // Error of the stream not of the socket, skip the remaining data
+                    outputStream = null;
+                    written = false;
+                }
+            }
             dataRead += dataToRead;
             mReadBufferReadPos += dataToRead;
-
-            // Check if the data buffer is depleted
-            if (dataReady() == 0 && dataRead != size) {
-                fillReadBuffer();
-            }
         }
 
         // Skip one byte to catch last newline
         skipBytes(1);
-
-        // Read last newline from MPD (s. https://www.musicpd.org/doc/protocol/database.html - command
-        // albumart)
-        return data;
+        return written;
     }
 
     /**
@@ -341,4 +414,13 @@ public class MPDSocketInterface {
     public static class NoKeyReadException extends Exception {
 
     }
+
+    /**
+     * Line buffer that allows access to its data without copying it.
+     */
+    private static class LineBuffer extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table to deduplicate strings read from the socket. Values are looked up by their raw
+ * UTF-8 bytes, so a value that was seen before is neither decoded nor allocated again.
+ * <p/>
+ * Tag values like artist, album or genre repeat for nearly every track of a large listing.
+ * With this table all tracks share the same String instances for them.
+ * <p/>
+ * The table is bounded. If it is full it is cleared and filled again with new values.
+ */
+class MPDStringTable {
+    /**
+     * Number of slots, must be a power of two.
+     */
+    private static final int TABLE_SIZE = 8 * 1024;
+
+    /**
+     * Maximum number of values before the table is cleared.
+     */
+    private static final int MAX_ENTRIES = TABLE_SIZE * 3 / 4;
+
+    /**
+     * Values longer than this are not deduplicated.
+     */
+    private static final int MAX_VALUE_LENGTH = 256;
+
+    private final byte[][] mKeys;
+    private final int[] mHashes;
+    private final String[] mValues;
+
+    private int mEntryCount;
+
+    MPDStringTable() {
+        mKeys = new byte[TABLE_SIZE][];
+        mHashes = new int[TABLE_SIZE];
+        mValues = new String[TABLE_SIZE];
+    }
+
+    /**
+     * Returns the string for the given UTF-8 bytes. If the same bytes were looked up before, the
+     * same String instance is returned.
+     *
+     * @param data   Buffer containing the UTF-8 encoded value
+     * @param offset Start of the value in the buffer
+     * @param length Length of the value in bytes
+     * @return The decoded string
+     */
+    String get(byte[] data, int offset, int length) {
+        if (length > MAX_VALUE_LENGTH) {
+            return new String(data, offset, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+
+        int slot = hash & (TABLE_SIZE - 1);
+        while (mKeys[slot] != null) {
+            if (mHashes[slot] == hash && equals(mKeys[slot], data, offset, length)) {
+                return mValues[slot];
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+
+        if (mEntryCount == MAX_ENTRIES) {
+            clear();
+            slot = hash & (TABLE_SIZE - 1);
+        }
+
+        String value = new String(data, offset, length, StandardCharsets.UTF_8);
+        mKeys[slot] = Arrays.copyOfRange(data, offset, offset + length);
+        mHashes[slot] = hash;
+        mValues[slot] = value;
+        mEntryCount++;
+        return value;
+    }
+
+    void clear() {
+        Arrays.fill(mKeys, null);
+        Arrays.fill(mValues, null);
+        mEntryCount = 0;
+    }
+
+    private static boolean equals(byte[] key, byte[] data, int offset, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != data[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -72,6 +72,15 @@ public abstract class MPDFileEntry implements MPDGenericItem, Comparable<MPDFile
 
     }
 
+    public void setLastModified(@NonNull Date lastModified) {
+        mLastModifiedDate = lastModified;
+    }
+
+    @NonNull
+    public Date getLastModified() {
+        return mLastModifiedDate;
+    }
+
     @NonNull
     public String getLastModifiedString() {
         DateFormat format = DateFormat.getDateTimeInstance(DateFormat.MEDIUM, DateFormat.MEDIUM, Locale.getDefault());
@@ -31,7 +31,7 @@ import androidx.annotation.NonNull;
 
 import org.gateshipone.malp.R;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * This class represents an MPDTrack. This is the same type for tracks and files.
@@ -64,7 +64,12 @@ public class MPDTrack extends MPDFileEntry implements MPDGenericItem, Parcelable
         WORK_MBID
     }
 
-    private final HashMap<StringTagTypes, String> pStringTags;
+    private static final int STRING_TAG_COUNT = StringTagTypes.values().length;
+
+    /**
+     * Tag values indexed by {@link StringTagTypes#ordinal()}. Unset tags are null.
+     */
+    private final String[] pStringTags;
 
     /**
      * Length in seconds
@@ -113,7 +118,7 @@ public class MPDTrack extends MPDFileEntry implements MPDGenericItem, Parcelable
         pSampleRate = in.readInt();
         pBitDepth = in.readInt();
         pImageFetching = in.readByte() != 0;
-        pStringTags = (HashMap<StringTagTypes, String>) in.readSerializable();
+        pStringTags = Arrays.copyOf(in.createStringArray(), STRING_TAG_COUNT);
     }
 
     @Override
@@ -129,7 +134,7 @@ public class MPDTrack extends MPDFileEntry implements MPDGenericItem, Parcelable
         dest.writeInt(pSampleRate);
         dest.writeInt(pBitDepth);
         dest.writeByte((byte) (pImageFetching ? 1 : 0));
-        dest.writeSerializable(pStringTags);
+        dest.writeStringArray(pStringTags);
     }
 
     @Override
@@ -195,7 +200,7 @@ public class MPDTrack extends MPDFileEntry implements MPDGenericItem, Parcelable
         super(path);
         pLength = 0;
 
-        pStringTags = new HashMap<>();
+        pStringTags = new String[STRING_TAG_COUNT];
 
         pImageFetching = false;
     }
@@ -284,12 +289,12 @@ public class MPDTrack extends MPDFileEntry implements MPDGenericItem, Parcelable
 
     @NonNull
     public String getStringTag(StringTagTypes tag) {
-        String tagValue = pStringTags.get(tag);
+        String tagValue = pStringTags[tag.ordinal()];
         return tagValue == null ? "" : tagValue;
     }
 
     public void setStringTag(StringTagTypes tag, @NonNull String value) {
-        pStringTags.put(tag, value);
+        pStringTags[tag.ordinal()] = value;
     }
 
     /**
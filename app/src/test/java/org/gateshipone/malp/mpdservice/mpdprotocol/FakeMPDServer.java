@@ -0,0 +1,1212 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * MPD server on the loopback interface for tests. It serves a generated library of the given
+ * size, so no tracks are kept in memory: {@value #TRACKS_PER_ALBUM} tracks per album,
+ * {@value #ALBUMS_PER_ARTIST} albums per artist, stored as "Artist a/Album b/NN.flac".
+ * <p>
+ * Supports the commands used by {@link MPDInterface} (lists, searches, filter expressions,
+ * the queue, idle, command lists and binary responses). Responses can be delayed and throttled
+ * to simulate slow networks and single commands can be answered with scripted responses.
+ */
+public class FakeMPDServer implements Closeable {
+    static final int TRACKS_PER_ALBUM = 10;
+
+    static final int ALBUMS_PER_ARTIST = 5;
+
+    static final int TRACKS_PER_ARTIST = TRACKS_PER_ALBUM * ALBUMS_PER_ARTIST;
+
+    /**
+     * Length of each generated track (time in s)
+     */
+    static final int TRACK_LENGTH = 180;
+
+    private static final String[] TAG_TYPES = {"Artist", "ArtistSort", "Album", "AlbumArtist",
+            "AlbumArtistSort", "Title", "Track", "Disc", "Date", "MUSICBRAINZ_ARTISTID",
+            "MUSICBRAINZ_ALBUMID", "MUSICBRAINZ_ALBUMARTISTID", "MUSICBRAINZ_TRACKID"};
+
+    private static final Map<String, String> TAG_NAMES = new ConcurrentHashMap<>();
+
+    static {
+        for (String tag : TAG_TYPES) {
+            TAG_NAMES.put(tag.toLowerCase(Locale.ROOT), tag);
+        }
+        TAG_NAMES.put("file", "file");
+    }
+
+    private static final int ACK_ERROR_ARG = 2;
+    private static final int ACK_ERROR_UNKNOWN = 5;
+    private static final int ACK_ERROR_NO_EXIST = 50;
+
+    private final String mVersion;
+
+    private final ServerSocket mServerSocket;
+
+    private final List<Client> mClients = new CopyOnWriteArrayList<>();
+
+    private final Map<String, AtomicInteger> mCommandCounts = new ConcurrentHashMap<>();
+
+    private final List<String> mCommandLog = new CopyOnWriteArrayList<>();
+
+    /**
+     * Scripted responses by command prefix, checked in the order they were added
+     */
+    private final Map<String, String> mScriptedResponses = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    private volatile int mTrackCount;
+
+    private volatile long mDatabaseUpdate = 1;
+
+    private volatile int mLatency;
+
+    private volatile int mBandwidth;
+
+    private volatile int mImageSize = 64 * 1024;
+
+    /**
+     * Queue of the server, guarded by itself
+     */
+    private final List<QueueEntry> mQueue = new ArrayList<>();
+
+    private int mQueueVersion = 1;
+
+    private int mNextSongId;
+
+    private static class QueueEntry {
+        private final int mTrack;
+        private final int mId;
+        private int mVersion;
+
+        private QueueEntry(int track, int id, int version) {
+            mTrack = track;
+            mId = id;
+            mVersion = version;
+        }
+    }
+
+    /**
+     * Starts a server on a free port of the loopback interface.
+     *
+     * @param version    Version to announce, e.g. "0.23.5". Commands of newer versions are not
+     *                   announced, but answered anyway.
+     * @param trackCount Number of tracks of the library
+     */
+    FakeMPDServer(String version, int trackCount) throws IOException {
+        mVersion = version;
+        mTrackCount = trackCount;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptThread = new Thread(this::acceptClients, "FakeMPDServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    String getHostname() {
+        return mServerSocket.getInetAddress().getHostAddress();
+    }
+
+    int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * @param latency Time to wait before each response (time in ms)
+     */
+    void setLatency(int latency) {
+        mLatency = latency;
+    }
+
+    /**
+     * @param bandwidth Maximum bytes per second sent to each client, 0 for no limit
+     */
+    void setBandwidth(int bandwidth) {
+        mBandwidth = bandwidth;
+    }
+
+    /**
+     * @param imageSize Size of the album art served for every track (size in bytes)
+     */
+    void setImageSize(int imageSize) {
+        mImageSize = imageSize;
+    }
+
+    /**
+     * Answers all commands that start with the given prefix with the raw response. The response
+     * has to contain the final "OK" or "ACK" line.
+     */
+    void setResponse(String commandPrefix, String response) {
+        mScriptedResponses.put(commandPrefix, response);
+    }
+
+    /**
+     * Replaces the library with one of the given size and notifies the idling clients.
+     */
+    void updateDatabase(int trackCount) {
+        mTrackCount = trackCount;
+        mDatabaseUpdate++;
+        notifyChanged("database");
+    }
+
+    /**
+     * Notifies all clients about a changed subsystem. Clients that do not idle get the
+     * event with their next idle command.
+     */
+    void notifyChanged(String subsystem) {
+        for (Client client : mClients) {
+            client.notifyChanged(subsystem);
+        }
+    }
+
+    int getTrackCount() {
+        return mTrackCount;
+    }
+
+    int getQueueLength() {
+        synchronized (mQueue) {
+            return mQueue.size();
+        }
+    }
+
+    /**
+     * @return Number of connected clients
+     */
+    int getClientCount() {
+        return mClients.size();
+    }
+
+    /**
+     * @param command Name of the command, e.g. "list"
+     * @return Number of times the command was received, including commands of command lists
+     */
+    int getCommandCount(String command) {
+        AtomicInteger count = mCommandCounts.get(command);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * @return All received commands in the order they were executed
+     */
+    List<String> getCommandLog() {
+        return new ArrayList<>(mCommandLog);
+    }
+
+    void clearCommandLog() {
+        mCommandLog.clear();
+        mCommandCounts.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mServerSocket.close();
+        for (Client client : mClients) {
+            client.close();
+        }
+    }
+
+    private void acceptClients() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Client client = new Client(mServerSocket.accept());
+                mClients.add(client);
+                Thread thread = new Thread(client, "FakeMPDServer client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                // Server socket closed
+            }
+        }
+    }
+
+    private boolean isVersionAtLeast(int major, int minor) {
+        String[] versions = mVersion.split("\\.");
+        int serverMajor = Integer.parseInt(versions[0]);
+        int serverMinor = Integer.parseInt(versions[1]);
+        return serverMajor > major || (serverMajor == major && serverMinor >= minor);
+    }
+
+    /*
+     * Generated library
+     */
+
+    private int getArtistCount() {
+        return (mTrackCount + TRACKS_PER_ARTIST - 1) / TRACKS_PER_ARTIST;
+    }
+
+    private int getAlbumCount() {
+        return (mTrackCount + TRACKS_PER_ALBUM - 1) / TRACKS_PER_ALBUM;
+    }
+
+    static String getTrackPath(int track) {
+        return String.format(Locale.ROOT, "Artist %d/Album %d/%02d.flac", track / TRACKS_PER_ARTIST,
+                track / TRACKS_PER_ALBUM, track % TRACKS_PER_ALBUM + 1);
+    }
+
+    /**
+     * @return Index of the track with the given path or -1 if it does not exist
+     */
+    private int getTrack(String path) {
+        String[] parts = path.split("/");
+        if (parts.length != 3 || !parts[0].startsWith("Artist ") || !parts[1].startsWith("Album ")
+                || !parts[2].endsWith(".flac")) {
+            return -1;
+        }
+        try {
+            int artist = Integer.parseInt(parts[0].substring(7));
+            int album = Integer.parseInt(parts[1].substring(6));
+            int track = album * TRACKS_PER_ALBUM + Integer.parseInt(parts[2].substring(0, parts[2].length() - 5)) - 1;
+            if (track < 0 || track >= mTrackCount || track / TRACKS_PER_ARTIST != artist
+                    || track / TRACKS_PER_ALBUM != album || !getTrackPath(track).equals(path)) {
+                return -1;
+            }
+            return track;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return Value of the tag (lower case name) of the track or null if the track has no such tag
+     */
+    static String getTag(int track, String tag) {
+        int artist = track / TRACKS_PER_ARTIST;
+        int album = track / TRACKS_PER_ALBUM;
+        switch (tag) {
+            case "file":
+                return getTrackPath(track);
+            case "artist":
+            case "albumartist":
+                return "Artist " + artist;
+            case "artistsort":
+            case "albumartistsort":
+                return "Sort Artist " + artist;
+            case "album":
+                return "Album " + album;
+            case "title":
+                return "Title " + track;
+            case "track":
+                return String.valueOf(track % TRACKS_PER_ALBUM + 1);
+            case "disc":
+                return "1";
+            case "date":
+                return String.valueOf(2000 + album % 20);
+            case "musicbrainz_artistid":
+            case "musicbrainz_albumartistid":
+                return "artist-" + artist;
+            case "musicbrainz_albumid":
+                return "album-" + album;
+            case "musicbrainz_trackid":
+                return "track-" + track;
+            default:
+                return null;
+        }
+    }
+
+    static void appendTrack(StringBuilder builder, int track) {
+        builder.append("file: ").append(getTrackPath(track)).append('\n');
+        builder.append("Last-Modified: 2020-01-01T00:00:00Z\n");
+        for (String tag : TAG_TYPES) {
+            builder.append(tag).append(": ").append(getTag(track, tag.toLowerCase(Locale.ROOT))).append('\n');
+        }
+        builder.append("Time: ").append(TRACK_LENGTH).append('\n');
+        builder.append("duration: ").append(TRACK_LENGTH).append(".000\n");
+    }
+
+    /**
+     * @return First and last track (exclusive) of the directory or null if it does not exist
+     */
+    private int[] getDirectoryTracks(String path) {
+        if (path.isEmpty() || path.equals("/")) {
+            return new int[]{0, mTrackCount};
+        }
+        String[] parts = path.split("/");
+        try {
+            if (parts.length >= 1 && parts[0].startsWith("Artist ")) {
+                int artist = Integer.parseInt(parts[0].substring(7));
+                if (parts.length == 1) {
+                    return clampTracks(artist * TRACKS_PER_ARTIST, (artist + 1) * TRACKS_PER_ARTIST);
+                } else if (parts.length == 2 && parts[1].startsWith("Album ")) {
+                    int album = Integer.parseInt(parts[1].substring(6));
+                    if (album / ALBUMS_PER_ARTIST == artist) {
+                        return clampTracks(album * TRACKS_PER_ALBUM, (album + 1) * TRACKS_PER_ALBUM);
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
+    }
+
+    private int[] clampTracks(int start, int end) {
+        if (start >= mTrackCount) {
+            return null;
+        }
+        return new int[]{start, Math.min(end, mTrackCount)};
+    }
+
+    /*
+     * Filters
+     */
+
+    private interface TrackFilter {
+        boolean matches(int track);
+    }
+
+    /**
+     * Creates a filter from an expression like "((album == 'x') AND (!(artist contains 'y')))".
+     *
+     * @param ignoreCase True to compare the values case-insensitively (like search does)
+     */
+    private TrackFilter parseFilterExpression(String expression, boolean ignoreCase) throws AckException {
+        FilterParser parser = new FilterParser(expression, ignoreCase);
+        TrackFilter filter = parser.parseExpression();
+        parser.skipSpaces();
+        if (!parser.isAtEnd()) {
+            throw new AckException(ACK_ERROR_ARG, "Unparsed garbage after expression");
+        }
+        return filter;
+    }
+
+    private class FilterParser {
+        private final String mText;
+        private final boolean mIgnoreCase;
+        private int mPos;
+
+        private FilterParser(String text, boolean ignoreCase) {
+            mText = text;
+            mIgnoreCase = ignoreCase;
+        }
+
+        private boolean isAtEnd() {
+            return mPos >= mText.length();
+        }
+
+        private void skipSpaces() {
+            while (!isAtEnd() && mText.charAt(mPos) == ' ') {
+                mPos++;
+            }
+        }
+
+        private void expect(char c) throws AckException {
+            skipSpaces();
+            if (isAtEnd() || mText.charAt(mPos) != c) {
+                throw new AckException(ACK_ERROR_ARG, "'" + c + "' expected");
+            }
+            mPos++;
+        }
+
+        private String readWord() {
+            skipSpaces();
+            int start = mPos;
+            while (!isAtEnd() && mText.charAt(mPos) != ' ' && mText.charAt(mPos) != ')') {
+                mPos++;
+            }
+            return mText.substring(start, mPos);
+        }
+
+        private String readValue() throws AckException {
+            skipSpaces();
+            if (isAtEnd() || (mText.charAt(mPos) != '\'' && mText.charAt(mPos) != '"')) {
+                throw new AckException(ACK_ERROR_ARG, "Quoted string expected");
+            }
+            char quote = mText.charAt(mPos++);
+            StringBuilder value = new StringBuilder();
+            while (!isAtEnd() && mText.charAt(mPos) != quote) {
+                if (mText.charAt(mPos) == '\\') {
+                    mPos++;
+                }
+                if (!isAtEnd()) {
+                    value.append(mText.charAt(mPos++));
+                }
+            }
+            expect(quote);
+            return value.toString();
+        }
+
+        private TrackFilter parseExpression() throws AckException {
+            expect('(');
+            skipSpaces();
+            if (isAtEnd()) {
+                throw new AckException(ACK_ERROR_ARG, "Expression expected");
+            }
+
+            TrackFilter filter;
+            char c = mText.charAt(mPos);
+            if (c == '!') {
+                mPos++;
+                TrackFilter inner = parseExpression();
+                filter = track -> !inner.matches(track);
+            } else if (c == '(') {
+                List<TrackFilter> filters = new ArrayList<>();
+                filters.add(parseExpression());
+                skipSpaces();
+                while (mText.startsWith("AND", mPos)) {
+                    mPos += 3;
+                    filters.add(parseExpression());
+                    skipSpaces();
+                }
+                filter = track -> {
+                    for (TrackFilter part : filters) {
+                        if (!part.matches(track)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+            } else {
+                String tag = readWord().toLowerCase(Locale.ROOT);
+                if (tag.equals("base")) {
+                    String base = readValue();
+                    filter = track -> getTrackPath(track).startsWith(base + '/');
+                } else if (tag.equals("modified-since")) {
+                    readValue();
+                    // All tracks have the same modification time in the past
+                    filter = track -> false;
+                } else {
+                    filter = createTagFilter(tag, readWord(), readValue(), mIgnoreCase);
+                }
+            }
+            expect(')');
+            return filter;
+        }
+    }
+
+    private TrackFilter createTagFilter(String tag, String operator, String value, boolean ignoreCase) throws AckException {
+        if (!tag.equals("any") && !TAG_NAMES.containsKey(tag)) {
+            throw new AckException(ACK_ERROR_ARG, "Unknown filter type: " + tag);
+        }
+        final String expected = ignoreCase ? value.toLowerCase(Locale.ROOT) : value;
+        final TagMatcher matcher;
+        switch (operator) {
+            case "==":
+                matcher = actual -> actual.equals(expected);
+                break;
+            case "!=":
+                matcher = actual -> !actual.equals(expected);
+                break;
+            case "contains":
+                matcher = actual -> actual.contains(expected);
+                break;
+            case "=~":
+            case "!~": {
+                Pattern pattern = Pattern.compile(value, ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+                boolean negate = operator.equals("!~");
+                matcher = actual -> pattern.matcher(actual).find() != negate;
+                break;
+            }
+            default:
+                throw new AckException(ACK_ERROR_ARG, "Unknown filter operator: " + operator);
+        }
+
+        return track -> {
+            if (tag.equals("any")) {
+                for (String name : TAG_NAMES.keySet()) {
+                    if (matcher.matches(getComparedTag(track, name, ignoreCase))) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            String actual = getTag(track, tag);
+            // Tracks without the tag only match negated comparisons
+            return matcher.matches(actual != null ? (ignoreCase ? actual.toLowerCase(Locale.ROOT) : actual) : "");
+        };
+    }
+
+    private static String getComparedTag(int track, String tag, boolean ignoreCase) {
+        String value = getTag(track, tag);
+        return ignoreCase ? value.toLowerCase(Locale.ROOT) : value;
+    }
+
+    private interface TagMatcher {
+        boolean matches(String actual);
+    }
+
+    /**
+     * Creates a filter from the arguments of find, search, list and their variants. Either a
+     * single filter expression or pairs of tag and value (matched with "==" or "contains").
+     */
+    private TrackFilter parseFilterArguments(List<String> arguments, boolean search) throws AckException {
+        if (arguments.isEmpty()) {
+            return track -> true;
+        }
+        if (arguments.size() == 1 && arguments.get(0).startsWith("(")) {
+            return parseFilterExpression(arguments.get(0), search);
+        }
+        if (arguments.size() % 2 != 0) {
+            throw new AckException(ACK_ERROR_ARG, "Incorrect number of filter arguments");
+        }
+
+        List<TrackFilter> filters = new ArrayList<>();
+        for (int i = 0; i < arguments.size(); i += 2) {
+            String tag = arguments.get(i).toLowerCase(Locale.ROOT);
+            String value = arguments.get(i + 1);
+            if (tag.equals("base")) {
+                filters.add(track -> getTrackPath(track).startsWith(value + '/'));
+            } else {
+                filters.add(createTagFilter(tag, search ? "contains" : "==", value, search));
+            }
+        }
+        return track -> {
+            for (TrackFilter filter : filters) {
+                if (!filter.matches(track)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Finds the matching tracks of the library, sorted by the given tag if not null.
+     */
+    private List<Integer> findTracks(TrackFilter filter, String sortTag) {
+        List<Integer> tracks = new ArrayList<>();
+        int trackCount = mTrackCount;
+        for (int track = 0; track < trackCount; track++) {
+            if (filter.matches(track)) {
+                tracks.add(track);
+            }
+        }
+        if (sortTag != null) {
+            // Tag names are case-insensitive
+            String tag = (sortTag.startsWith("-") ? sortTag.substring(1) : sortTag).toLowerCase(Locale.ROOT);
+            boolean numeric = tag.equals("track") || tag.equals("disc");
+            Collections.sort(tracks, (a, b) -> {
+                String valueA = getTag(a, tag);
+                String valueB = getTag(b, tag);
+                return numeric ? Integer.compare(Integer.parseInt(valueA), Integer.parseInt(valueB))
+                        : valueA.compareTo(valueB);
+            });
+            if (sortTag.startsWith("-")) {
+                Collections.reverse(tracks);
+            }
+        }
+        return tracks;
+    }
+
+    /*
+     * Protocol
+     */
+
+    private static class AckException extends Exception {
+        private final int mError;
+
+        private AckException(int error, String message) {
+            super(message);
+            mError = error;
+        }
+    }
+
+    /**
+     * Splits a command line into its arguments, removing quotes and escapes.
+     */
+    static List<String> splitArguments(String line) {
+        List<String> arguments = new ArrayList<>();
+        int pos = 0;
+        while (pos < line.length()) {
+            char c = line.charAt(pos);
+            if (c == ' ' || c == '\t') {
+                pos++;
+                continue;
+            }
+
+            StringBuilder argument = new StringBuilder();
+            if (c == '"') {
+                pos++;
+                while (pos < line.length() && line.charAt(pos) != '"') {
+                    if (line.charAt(pos) == '\\' && pos + 1 < line.length()) {
+                        pos++;
+                    }
+                    argument.append(line.charAt(pos++));
+                }
+                pos++;
+            } else {
+                while (pos < line.length() && line.charAt(pos) != ' ' && line.charAt(pos) != '\t') {
+                    argument.append(line.charAt(pos++));
+                }
+            }
+            arguments.add(argument.toString());
+        }
+        return arguments;
+    }
+
+    /**
+     * Limits the bytes per second written to the socket of a client.
+     */
+    private class ThrottledOutputStream extends FilterOutputStream {
+        private ThrottledOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int bandwidth = mBandwidth;
+            if (bandwidth <= 0) {
+                out.write(b, off, len);
+                return;
+            }
+            while (len > 0) {
+                int chunk = Math.min(len, Math.max(1, bandwidth / 100));
+                out.write(b, off, chunk);
+                out.flush();
+                sleep(chunk * 1000L / bandwidth);
+                off += chunk;
+                len -= chunk;
+            }
+        }
+    }
+
+    private static void sleep(long time) {
+        if (time <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(time);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private class Client implements Runnable {
+        private final Socket mSocket;
+
+        private final OutputStream mOutput;
+
+        private final Set<String> mPendingEvents = new LinkedHashSet<>();
+
+        /**
+         * Subsystems the client waits for, null while it does not idle
+         */
+        private Set<String> mIdleSubsystems;
+
+        private int mBinaryLimit = 8192;
+
+        private Client(Socket socket) throws IOException {
+            mSocket = socket;
+            mOutput = new BufferedOutputStream(new ThrottledOutputStream(socket.getOutputStream()), 64 * 1024);
+        }
+
+        @Override
+        public void run() {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(mSocket.getInputStream(), StandardCharsets.UTF_8));
+                synchronized (this) {
+                    write("OK MPD " + mVersion + '\n');
+                    mOutput.flush();
+                }
+
+                List<String> commandList = null;
+                boolean listOk = false;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (commandList != null) {
+                        if (line.equals("command_list_end")) {
+                            executeCommandList(commandList, listOk);
+                            commandList = null;
+                        } else {
+                            commandList.add(line);
+                        }
+                    } else if (line.equals("command_list_begin") || line.equals("command_list_ok_begin")) {
+                        commandList = new ArrayList<>();
+                        listOk = line.equals("command_list_ok_begin");
+                    } else if (line.equals("noidle")) {
+                        stopIdle();
+                    } else if (line.equals("close")) {
+                        break;
+                    } else if (line.startsWith("idle")) {
+                        startIdle(splitArguments(line));
+                    } else {
+                        executeCommandList(Collections.singletonList(line), false);
+                    }
+                }
+            } catch (IOException e) {
+                // Connection closed
+            } finally {
+                close();
+            }
+        }
+
+        private void close() {
+            mClients.remove(this);
+            try {
+                mSocket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+
+        private synchronized void notifyChanged(String subsystem) {
+            mPendingEvents.add(subsystem);
+            if (mIdleSubsystems != null) {
+                try {
+                    sendEvents();
+                } catch (IOException e) {
+                    close();
+                }
+            }
+        }
+
+        private synchronized void startIdle(List<String> arguments) throws IOException {
+            countCommand("idle", arguments);
+            mIdleSubsystems = new LinkedHashSet<>(arguments.subList(1, arguments.size()));
+            sendEvents();
+        }
+
+        private synchronized void stopIdle() throws IOException {
+            // noidle is ignored if the client does not idle
+            if (mIdleSubsystems != null) {
+                countCommand("noidle", Collections.singletonList("noidle"));
+                mIdleSubsystems = null;
+                write("OK\n");
+                mOutput.flush();
+            }
+        }
+
+        /**
+         * Ends the idle with the pending events if the client waits for any of them.
+         */
+        private void sendEvents() throws IOException {
+            StringBuilder response = new StringBuilder();
+            for (String event : new ArrayList<>(mPendingEvents)) {
+                if (mIdleSubsystems.isEmpty() || mIdleSubsystems.contains(event)) {
+                    response.append("changed: ").append(event).append('\n');
+                    mPendingEvents.remove(event);
+                }
+            }
+            if (response.length() > 0) {
+                mIdleSubsystems = null;
+                sleep(mLatency);
+                write(response.append("OK\n").toString());
+                mOutput.flush();
+            }
+        }
+
+        private void executeCommandList(List<String> commands, boolean listOk) throws IOException {
+            sleep(mLatency);
+            synchronized (this) {
+                for (int i = 0; i < commands.size(); i++) {
+                    String command = commands.get(i);
+                    List<String> arguments = splitArguments(command);
+                    String name = arguments.isEmpty() ? "" : arguments.get(0);
+                    countCommand(name, arguments);
+
+                    String scripted = getScriptedResponse(command);
+                    if (scripted != null) {
+                        write(scripted);
+                        mOutput.flush();
+                        return;
+                    }
+
+                    try {
+                        executeCommand(name, arguments.subList(Math.min(1, arguments.size()), arguments.size()));
+                    } catch (AckException e) {
+                        write("ACK [" + e.mError + '@' + i + "] {" + name + "} " + e.getMessage() + '\n');
+                        mOutput.flush();
+                        return;
+                    }
+                    if (listOk) {
+                        write("list_OK\n");
+                    }
+                }
+                write("OK\n");
+                mOutput.flush();
+            }
+        }
+
+        private void countCommand(String name, List<String> arguments) {
+            AtomicInteger count = mCommandCounts.get(name);
+            if (count == null) {
+                mCommandCounts.putIfAbsent(name, new AtomicInteger());
+                count = mCommandCounts.get(name);
+            }
+            count.incrementAndGet();
+            mCommandLog.add(String.join(" ", arguments));
+        }
+
+        private String getScriptedResponse(String command) {
+            synchronized (mScriptedResponses) {
+                for (Map.Entry<String, String> entry : mScriptedResponses.entrySet()) {
+                    if (command.startsWith(entry.getKey())) {
+                        return entry.getValue();
+                    }
+                }
+            }
+            return null;
+        }
+
+        private void write(String text) throws IOException {
+            mOutput.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Writes the builder if it grew large, so huge responses are streamed.
+         */
+        private void writeIfFull(StringBuilder builder) throws IOException {
+            if (builder.length() >= 32 * 1024) {
+                write(builder.toString());
+                builder.setLength(0);
+            }
+        }
+
+        private void executeCommand(String name, List<String> arguments) throws AckException, IOException {
+            StringBuilder response = new StringBuilder();
+            switch (name) {
+                case "ping":
+                case "password":
+                    break;
+                case "commands":
+                    for (String command : getCommands()) {
+                        response.append("command: ").append(command).append('\n');
+                    }
+                    break;
+                case "tagtypes":
+                    for (String tag : TAG_TYPES) {
+                        response.append("tagtype: ").append(tag).append('\n');
+                    }
+                    break;
+                case "binarylimit":
+                    mBinaryLimit = Integer.parseInt(getArgument(arguments, 0));
+                    break;
+                case "stats":
+                    response.append("artists: ").append(getArtistCount()).append('\n')
+                            .append("albums: ").append(getAlbumCount()).append('\n')
+                            .append("songs: ").append(mTrackCount).append('\n')
+                            .append("uptime: 100\n")
+                            .append("db_playtime: ").append((long) mTrackCount * TRACK_LENGTH).append('\n')
+                            .append("db_update: ").append(mDatabaseUpdate).append('\n')
+                            .append("playtime: 0\n");
+                    break;
+                case "count": {
+                    List<Integer> tracks = findTracks(parseFilterArguments(arguments, false), null);
+                    response.append("songs: ").append(tracks.size()).append('\n')
+                            .append("playtime: ").append((long) tracks.size() * TRACK_LENGTH).append('\n');
+                    break;
+                }
+                case "status":
+                    synchronized (mQueue) {
+                        response.append("volume: 100\nrepeat: 0\nrandom: 0\nsingle: 0\nconsume: 0\n")
+                                .append("playlist: ").append(mQueueVersion).append('\n')
+                                .append("playlistlength: ").append(mQueue.size()).append('\n')
+                                .append("state: stop\n");
+                    }
+                    break;
+                case "currentsong":
+                case "listplaylists":
+                case "outputs":
+                    break;
+                case "list":
+                    list(arguments, response);
+                    break;
+                case "listall":
+                case "listallinfo":
+                case "lsinfo":
+                    listDirectory(arguments.isEmpty() ? "" : arguments.get(0), name, response);
+                    break;
+                case "find":
+                case "search":
+                    find(arguments, name.equals("search"), response);
+                    break;
+                case "findadd":
+                case "searchadd":
+                    addTracks(findTracks(parseFilterArguments(removeOptions(arguments, null), name.equals("searchadd")),
+                            getOption(arguments, "sort")));
+                    break;
+                case "add":
+                case "addid":
+                    add(name, arguments, response);
+                    break;
+                case "clear":
+                    synchronized (mQueue) {
+                        mQueue.clear();
+                        mQueueVersion++;
+                    }
+                    break;
+                case "playlistinfo":
+                case "plchanges":
+                    listQueue(name, arguments, response);
+                    break;
+                case "albumart":
+                case "readpicture":
+                    sendPicture(arguments, response);
+                    return;
+                default:
+                    throw new AckException(ACK_ERROR_UNKNOWN, "unknown command \"" + name + '"');
+            }
+            write(response.toString());
+        }
+
+        private List<String> getCommands() {
+            List<String> commands = new ArrayList<>();
+            Collections.addAll(commands, "add", "addid", "albumart", "clear", "close", "commands",
+                    "count", "currentsong", "find", "findadd", "idle", "list", "listall", "listallinfo",
+                    "listplaylists", "lsinfo", "noidle", "outputs", "password", "ping", "playlistfind",
+                    "playlistinfo", "plchanges", "search", "searchadd", "stats", "status", "tagtypes");
+            if (isVersionAtLeast(0, 22)) {
+                commands.add("binarylimit");
+                commands.add("readpicture");
+            }
+            Collections.sort(commands);
+            return commands;
+        }
+
+        private String getArgument(List<String> arguments, int index) throws AckException {
+            if (index >= arguments.size()) {
+                throw new AckException(ACK_ERROR_ARG, "too few arguments");
+            }
+            return arguments.get(index);
+        }
+
+        /**
+         * @return The value of an option like "sort" or "window" or null if it is not set
+         */
+        private String getOption(List<String> arguments, String option) {
+            for (int i = 0; i < arguments.size() - 1; i++) {
+                if (arguments.get(i).equals(option)) {
+                    return arguments.get(i + 1);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Removes the options and the list groups from the arguments.
+         */
+        private List<String> removeOptions(List<String> arguments, List<String> groups) {
+            List<String> result = new ArrayList<>();
+            for (int i = 0; i < arguments.size(); i++) {
+                String argument = arguments.get(i);
+                if ((argument.equals("sort") || argument.equals("window") || argument.equals("group"))
+                        && i + 1 < arguments.size()) {
+                    if (argument.equals("group") && groups != null) {
+                        groups.add(arguments.get(i + 1).toLowerCase(Locale.ROOT));
+                    }
+                    i++;
+                } else {
+                    result.add(argument);
+                }
+            }
+            return result;
+        }
+
+        private void list(List<String> arguments, StringBuilder response) throws AckException, IOException {
+            String tag = getArgument(arguments, 0).toLowerCase(Locale.ROOT);
+            if (!TAG_NAMES.containsKey(tag)) {
+                throw new AckException(ACK_ERROR_ARG, "Unknown tag type: " + arguments.get(0));
+            }
+
+            List<String> groups = new ArrayList<>();
+            List<String> filterArguments = removeOptions(arguments.subList(1, arguments.size()), groups);
+            if (filterArguments.size() == 1 && tag.equals("album") && !filterArguments.get(0).startsWith("(")) {
+                // Old syntax: list album "artist"
+                filterArguments = new ArrayList<>(filterArguments);
+                filterArguments.add(0, "artist");
+            }
+            TrackFilter filter = parseFilterArguments(filterArguments, false);
+
+            Set<String> written = new LinkedHashSet<>();
+            int trackCount = mTrackCount;
+            for (int track = 0; track < trackCount; track++) {
+                if (!filter.matches(track)) {
+                    continue;
+                }
+                StringBuilder entry = new StringBuilder();
+                for (String group : groups) {
+                    String value = getTag(track, group);
+                    entry.append(TAG_NAMES.get(group)).append(": ").append(value != null ? value : "").append('\n');
+                }
+                entry.append(TAG_NAMES.get(tag)).append(": ").append(getTag(track, tag)).append('\n');
+                if (written.add(entry.toString())) {
+                    response.append(entry);
+                    writeIfFull(response);
+                }
+            }
+        }
+
+        private void listDirectory(String path, String command, StringBuilder response) throws AckException, IOException {
+            int[] tracks = getDirectoryTracks(path);
+            if (tracks == null) {
+                throw new AckException(ACK_ERROR_NO_EXIST, "Not found");
+            }
+
+            boolean recursive = !command.equals("lsinfo");
+            boolean tags = !command.equals("listall");
+            String lastArtist = null;
+            String lastAlbum = null;
+            int depth = path.isEmpty() ? 0 : path.split("/").length;
+            for (int track = tracks[0]; track < tracks[1]; track++) {
+                String[] parts = getTrackPath(track).split("/");
+                String artistDirectory = parts[0];
+                String albumDirectory = parts[0] + '/' + parts[1];
+                if (depth < 1 && !artistDirectory.equals(lastArtist)) {
+                    response.append("directory: ").append(artistDirectory).append('\n');
+                    lastArtist = artistDirectory;
+                }
+                if (depth < 2 && (recursive || depth == 1) && !albumDirectory.equals(lastAlbum)) {
+                    response.append("directory: ").append(albumDirectory).append('\n');
+                    lastAlbum = albumDirectory;
+                }
+                if (depth == 2 || recursive) {
+                    if (tags) {
+                        appendTrack(response, track);
+                    } else {
+                        response.append("file: ").append(getTrackPath(track)).append('\n');
+                    }
+                }
+                writeIfFull(response);
+            }
+        }
+
+        private void find(List<String> arguments, boolean search, StringBuilder response) throws AckException, IOException {
+            List<Integer> tracks = findTracks(parseFilterArguments(removeOptions(arguments, null), search),
+                    getOption(arguments, "sort"));
+
+            int start = 0;
+            int end = tracks.size();
+            String window = getOption(arguments, "window");
+            if (window != null) {
+                String[] range = window.split(":");
+                start = Math.min(Integer.parseInt(range[0]), tracks.size());
+                end = Math.min(Integer.parseInt(range[1]), tracks.size());
+            }
+            for (int i = start; i < end; i++) {
+                appendTrack(response, tracks.get(i));
+                writeIfFull(response);
+            }
+        }
+
+        private void add(String name, List<String> arguments, StringBuilder response) throws AckException {
+            String url = getArgument(arguments, 0);
+            int track = getTrack(url);
+            if (track >= 0) {
+                int id = addTracks(Collections.singletonList(track));
+                if (name.equals("addid")) {
+                    response.append("Id: ").append(id).append('\n');
+                }
+                return;
+            }
+
+            int[] tracks = getDirectoryTracks(url);
+            if (tracks == null || name.equals("addid")) {
+                throw new AckException(ACK_ERROR_NO_EXIST, "No such song");
+            }
+            List<Integer> directoryTracks = new ArrayList<>();
+            for (int i = tracks[0]; i < tracks[1]; i++) {
+                directoryTracks.add(i);
+            }
+            addTracks(directoryTracks);
+        }
+
+        /**
+         * @return Id of the last added track
+         */
+        private int addTracks(List<Integer> tracks) {
+            synchronized (mQueue) {
+                mQueueVersion++;
+                for (int track : tracks) {
+                    mQueue.add(new QueueEntry(track, mNextSongId++, mQueueVersion));
+                }
+                return mNextSongId - 1;
+            }
+        }
+
+        private void listQueue(String name, List<String> arguments, StringBuilder response) throws IOException {
+            synchronized (mQueue) {
+                int start = 0;
+                int end = mQueue.size();
+                int version = -1;
+                if (name.equals("plchanges")) {
+                    version = Integer.parseInt(arguments.get(0));
+                } else if (!arguments.isEmpty()) {
+                    String[] range = arguments.get(0).split(":");
+                    start = Math.min(Integer.parseInt(range[0]), end);
+                    end = range.length > 1 ? Math.min(Integer.parseInt(range[1]), end) : start + 1;
+                }
+
+                for (int pos = start; pos < end; pos++) {
+                    QueueEntry entry = mQueue.get(pos);
+                    if (entry.mVersion > version) {
+                        appendTrack(response, entry.mTrack);
+                        response.append("Pos: ").append(pos).append('\n')
+                                .append("Id: ").append(entry.mId).append('\n');
+                        writeIfFull(response);
+                    }
+                }
+            }
+        }
+
+        private void sendPicture(List<String> arguments, StringBuilder response) throws AckException, IOException {
+            if (getTrack(getArgument(arguments, 0)) < 0) {
+                throw new AckException(ACK_ERROR_NO_EXIST, "No file exists");
+            }
+            int offset = Integer.parseInt(getArgument(arguments, 1));
+            int size = mImageSize;
+            int length = Math.max(0, Math.min(mBinaryLimit, size - offset));
+
+            response.append("size: ").append(size).append('\n')
+                    .append("binary: ").append(length).append('\n');
+            write(response.toString());
+
+            byte[] data = new byte[length];
+            for (int i = 0; i < length; i++) {
+                data[i] = getImageByte(offset + i);
+            }
+            mOutput.write(data);
+            write("\n");
+        }
+    }
+
+    /**
+     * @return Byte of the generated album art at the given offset
+     */
+    static byte getImageByte(int offset) {
+        return (byte) (offset * 31 + (offset >> 8));
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FakeMPDServerTest {
+    private FakeMPDServer mServer;
+
+    private MPDConnection mConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FakeMPDServer("0.23.5", 100);
+        mConnection = new MPDConnection(false);
+        mConnection.setServerParameters(mServer.getHostname(), "", mServer.getPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mConnection.disconnectFromServer();
+        mServer.close();
+    }
+
+    @Test
+    public void announcesCapabilities() throws Exception {
+        mConnection.connectToServer();
+
+        MPDCapabilities capabilities = mConnection.getServerCapabilities();
+        assertEquals(23, capabilities.getMinorVersion());
+        assertTrue(capabilities.hasFilterExpressions());
+        assertTrue(capabilities.hasListGroupingFixed());
+        assertTrue(capabilities.hasMusicBrainzTags());
+        assertTrue(capabilities.hasReadPicture());
+        assertTrue(capabilities.hasBinaryLimit());
+    }
+
+    @Test
+    public void listsAlbumsWithGroups() throws Exception {
+        mConnection.connectToServer();
+
+        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALBUMS(mConnection.getServerCapabilities()));
+        List<MPDAlbum> albums = MPDResponseParser.parseMPDAlbums(mConnection);
+
+        assertEquals(10, albums.size());
+        assertEquals("Album 7", albums.get(7).getName());
+        assertEquals("Artist 1", albums.get(7).getArtistName());
+        assertEquals("album-7", albums.get(7).getMBID());
+    }
+
+    @Test
+    public void addsAlbumTracksWithFilterExpression() throws Exception {
+        mConnection.connectToServer();
+
+        String filter = MPDCommands.MPD_FILTER_ALBUM_TRACKS("Album 3", "Sort Artist 0", "album-3", true);
+        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_LIST_DISCS(filter));
+        assertEquals(Collections.singletonList("1"), MPDResponseParser.parseMPDDiscs(mConnection));
+
+        mConnection.sendSimpleMPDCommand(MPDCommands.MPD_COMMAND_ADD_TRACKS_SORTED(MPDCommands.MPD_FILTER_DISC(filter, "1")));
+
+        assertEquals(FakeMPDServer.TRACKS_PER_ALBUM, mServer.getQueueLength());
+    }
+
+    @Test
+    public void streamsTrackListInBatches() throws Exception {
+        mConnection.connectToServer();
+
+        AtomicReference<Integer> batchedEntries = new AtomicReference<>(0);
+        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_REQUEST_ALL_FILES_INFO);
+        List<MPDFileEntry> lastBatch = MPDResponseParser.parseMPDTracks(mConnection, 40,
+                batch -> batchedEntries.set(batchedEntries.get() + batch.size()));
+
+        // 2 artist directories, 10 album directories and 100 tracks
+        assertEquals(112, batchedEntries.get() + lastBatch.size());
+        MPDTrack track = (MPDTrack) lastBatch.get(lastBatch.size() - 1);
+        assertEquals(FakeMPDServer.getTrackPath(99), track.getPath());
+        assertEquals(10, track.getTrackNumber());
+    }
+
+    @Test
+    public void answersScriptedResponses() throws Exception {
+        mServer.setResponse("stats", "songs: 7\ndb_update: 3\nOK\n");
+        mConnection.connectToServer();
+
+        mConnection.sendMPDCommand(MPDCommands.MPD_COMMAND_GET_STATISTICS);
+        assertEquals(7, MPDResponseParser.parseMPDStatistic(mConnection).getSongCount());
+    }
+
+    @Test
+    public void notifiesIdlingConnection() throws Exception {
+        CountDownLatch changed = new CountDownLatch(1);
+        AtomicReference<Set<MPDResponses.MPD_SUBSYSTEM>> subsystems = new AtomicReference<>();
+        mConnection.setConnectionMode(MPDConnection.CONNECTION_MODE.IDLE_ONLY);
+        mConnection.setSubsystemChangeListener(changedSubsystems -> {
+            subsystems.set(changedSubsystems);
+            changed.countDown();
+        });
+        mConnection.connectToServer();
+
+        mServer.updateDatabase(200);
+
+        assertTrue(changed.await(10, TimeUnit.SECONDS));
+        assertTrue(subsystems.get().contains(MPDResponses.MPD_SUBSYSTEM.SUBSYSTEM_DATABASE));
+    }
+}
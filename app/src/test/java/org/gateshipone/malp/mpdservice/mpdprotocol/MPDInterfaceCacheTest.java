@@ -0,0 +1,130 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MPDInterfaceCacheTest {
+    private static final int TRACK_COUNT = 1000;
+
+    private static final int ALBUM_COUNT = TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM;
+
+    /**
+     * Time to wait for background work (time in ms)
+     */
+    private static final long TIMEOUT = 10 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private FakeMPDServer mServer;
+
+    private MPDInterface mInterface;
+
+    private File mCacheFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FakeMPDServer("0.23.5", TRACK_COUNT);
+        mCacheFile = new File(mFolder.getRoot(), "library");
+
+        mInterface = MPDInterface.getGenericInstance();
+        mInterface.setDedicatedIdleConnection(true);
+        connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mInterface.disconnect();
+        mInterface.setCacheFile(null);
+        mServer.close();
+    }
+
+    @Test
+    public void showsStoredListsWithoutRequest() throws Exception {
+        assertEquals(ALBUM_COUNT, mInterface.getAlbums().size());
+        waitForCacheFile();
+
+        // Like a restart of the application
+        mInterface.disconnect();
+        mServer.clearCommandLog();
+        connect();
+
+        assertEquals(ALBUM_COUNT, mInterface.getAlbums().size());
+        assertEquals(0, mServer.getCommandCount("list"));
+    }
+
+    @Test
+    public void reloadsOutdatedStoredLists() throws Exception {
+        assertEquals(ALBUM_COUNT, mInterface.getAlbums().size());
+        waitForCacheFile();
+
+        mInterface.disconnect();
+        mServer.updateDatabase(TRACK_COUNT + FakeMPDServer.TRACKS_PER_ALBUM);
+        connect();
+
+        // The stored lists are dropped after the validation in the background
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (mInterface.getAlbums().size() == ALBUM_COUNT && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(ALBUM_COUNT + 1, mInterface.getAlbums().size());
+    }
+
+    @Test
+    public void deletesStoredLists() throws Exception {
+        mInterface.getAlbums();
+        waitForCacheFile();
+
+        mInterface.deleteCacheFile(mCacheFile);
+        mInterface.getArtists();
+        Thread.sleep(100);
+
+        assertFalse(mCacheFile.exists());
+    }
+
+    private void connect() throws MPDException {
+        mInterface.setServerParameters(mServer.getHostname(), "", mServer.getPort());
+        mInterface.setCacheFile(mCacheFile);
+        mInterface.connect();
+    }
+
+    private void waitForCacheFile() throws InterruptedException {
+        long timeout = System.currentTimeMillis() + TIMEOUT;
+        while (!mCacheFile.exists() && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertTrue(mCacheFile.exists());
+    }
+}
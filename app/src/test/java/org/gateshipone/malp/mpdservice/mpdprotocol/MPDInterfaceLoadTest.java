@@ -0,0 +1,188 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDAlbum;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the queries of a typical session against {@link FakeMPDServer} with a large library.
+ * The size of the library and the network conditions can be set with system properties:
+ * "malp.loadtest.tracks" (default 10000, e.g. 100000 or 500000 for huge libraries),
+ * "malp.loadtest.latency" (time in ms per response, default 0) and
+ * "malp.loadtest.bandwidth" (bytes per second, default unlimited).
+ */
+public class MPDInterfaceLoadTest {
+    private static final int TRACK_COUNT = Integer.getInteger("malp.loadtest.tracks", 10000);
+
+    private static final int IMAGE_SIZE = 3 * 1024 * 1024;
+
+    /**
+     * Time to wait for server events (time in ms)
+     */
+    private static final long EVENT_TIMEOUT = 10 * 1000;
+
+    private FakeMPDServer mServer;
+
+    private MPDInterface mInterface;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new FakeMPDServer("0.23.5", TRACK_COUNT);
+        mServer.setLatency(Integer.getInteger("malp.loadtest.latency", 0));
+        mServer.setBandwidth(Integer.getInteger("malp.loadtest.bandwidth", 0));
+        mServer.setImageSize(IMAGE_SIZE);
+
+        mInterface = MPDInterface.getGenericInstance();
+        mInterface.setServerParameters(mServer.getHostname(), "", mServer.getPort());
+        mInterface.setDedicatedIdleConnection(true);
+        mInterface.connect();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mInterface.disconnect();
+        MPDInterface.getArtworkInstance().disconnect();
+        mServer.close();
+    }
+
+    @Test
+    public void loadsLargeLibrary() throws Exception {
+        long startTime = System.nanoTime();
+        assertEquals(TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM, mInterface.getAlbums().size());
+        assertEquals(TRACK_COUNT / FakeMPDServer.TRACKS_PER_ARTIST, mInterface.getArtists().size());
+        logTime("albums and artists", startTime);
+
+        // Cached until the database changes
+        mInterface.getAlbums();
+        assertEquals(2, mServer.getCommandCount("list"));
+
+        startTime = System.nanoTime();
+        List<MPDFileEntry> tracks = new ArrayList<>();
+        tracks.addAll(mInterface.getAllTracks(1000, tracks::addAll));
+        assertEquals(TRACK_COUNT, countTracks(tracks));
+        logTime("all tracks", startTime);
+
+        startTime = System.nanoTime();
+        List<MPDFileEntry> searchResult = mInterface.getSearchedFiles("title 1", MPDCommands.MPD_SEARCH_TYPE.MPD_SEARCH_TRACK);
+        assertTrue(!searchResult.isEmpty());
+        logTime("search", startTime);
+
+        startTime = System.nanoTime();
+        mInterface.addTrackList(tracks);
+        assertEquals(TRACK_COUNT, mServer.getQueueLength());
+        logTime("add all tracks", startTime);
+
+        startTime = System.nanoTime();
+        assertEquals(TRACK_COUNT, mInterface.getCurrentPlaylist().size());
+        logTime("current playlist", startTime);
+    }
+
+    @Test
+    public void addsArtistOnServerSide() throws Exception {
+        mInterface.addArtist("Artist 1", MPDAlbum.MPD_ALBUM_SORT_ORDER.TITLE);
+
+        // One sorted findadd per disc, the tracks are not transferred
+        assertEquals(FakeMPDServer.TRACKS_PER_ARTIST, mServer.getQueueLength());
+        assertEquals(FakeMPDServer.ALBUMS_PER_ARTIST, mServer.getCommandCount("findadd"));
+        assertEquals(0, mServer.getCommandCount("find"));
+    }
+
+    @Test
+    public void fallsBackToPlainListsForMopidy() throws Exception {
+        // Mopidy rejects the grouped list that MPD 0.23 supports
+        mServer.setResponse("list album group", "ACK [2@0] {list} " + MPDResponses.MPD_PARSE_ARGS_LIST_ERROR + "\n");
+
+        // The first list runs on a pool connection and is cut off by the error
+        mInterface.getAlbums();
+        assertTrue(mInterface.getServerCapabilities().isMopidyDetected());
+
+        assertEquals(TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM, mInterface.getAlbums().size());
+        int groupedLists = 0;
+        for (String command : mServer.getCommandLog()) {
+            if (command.startsWith("list album group")) {
+                groupedLists++;
+            }
+        }
+        assertEquals(1, groupedLists);
+    }
+
+    @Test
+    public void loadsAlbumArtInLargeChunks() throws Exception {
+        MPDInterface artworkInterface = MPDInterface.getArtworkInstance();
+        artworkInterface.connect();
+
+        long startTime = System.nanoTime();
+        byte[] image = artworkInterface.getAlbumArt(FakeMPDServer.getTrackPath(0), false);
+        logTime("album art", startTime);
+
+        assertNotNull(image);
+        assertEquals(IMAGE_SIZE, image.length);
+        assertEquals(FakeMPDServer.getImageByte(IMAGE_SIZE - 1), image[IMAGE_SIZE - 1]);
+        // Chunks of 1 MiB instead of the default 8 KiB
+        assertEquals(3, mServer.getCommandCount("albumart"));
+    }
+
+    @Test
+    public void reloadsListsAfterDatabaseUpdate() throws Exception {
+        assertEquals(TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM, mInterface.getAlbums().size());
+
+        mServer.updateDatabase(TRACK_COUNT + FakeMPDServer.TRACKS_PER_ALBUM);
+
+        // The idle connection drops the cached lists asynchronously
+        long timeout = System.currentTimeMillis() + EVENT_TIMEOUT;
+        while (mInterface.getAlbums().size() == TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(TRACK_COUNT / FakeMPDServer.TRACKS_PER_ALBUM + 1, mInterface.getAlbums().size());
+        assertEquals(2, mServer.getCommandCount("list"));
+    }
+
+    private static int countTracks(List<MPDFileEntry> entries) {
+        int count = 0;
+        for (MPDFileEntry entry : entries) {
+            if (entry instanceof MPDTrack) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void logTime(String step, long startTime) {
+        System.out.println("MPDInterfaceLoadTest: " + step + " with " + TRACK_COUNT + " tracks took "
+                + (System.nanoTime() - startTime) / 1000000 + " ms");
+    }
+}
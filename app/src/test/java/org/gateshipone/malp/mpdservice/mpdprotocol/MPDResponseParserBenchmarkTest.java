@@ -0,0 +1,172 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measures the response parsers on synthetic responses. The responses are fed from memory
+ * through {@link MPDSocketInterface}, so only the parsing is timed and not a socket.
+ * <p>
+ * It prints p50, p99, entries per second and the allocated bytes per entry, counted with the
+ * per-thread counter of the JVM. These numbers depend on the JVM, the GC and the JIT, so they
+ * are only reported and never checked. The benchmark only runs with "-Dmalp.benchmark=true".
+ */
+public class MPDResponseParserBenchmarkTest {
+    private static final int ENTRY_COUNT = 1000;
+
+    private static final int WARMUP_ITERATIONS = 10;
+
+    private static final int ITERATIONS = 50;
+
+    private interface Parser {
+        int parse(MPDConnection connection) throws MPDException;
+    }
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(Boolean.getBoolean("malp.benchmark"));
+    }
+
+    @Test
+    public void parseTracks() throws Exception {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            FakeMPDServer.appendTrack(response, i);
+        }
+        response.append("OK\n");
+
+        benchmark("tracks", response.toString(), ITERATIONS,
+                connection -> MPDResponseParser.parseMPDTracks(connection).size());
+    }
+
+    @Test
+    public void parseAlbums() throws Exception {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            String artist = FakeMPDServer.getTag(i * FakeMPDServer.TRACKS_PER_ALBUM, "albumartist");
+            response.append("AlbumArtist: ").append(artist).append('\n')
+                    .append("AlbumArtistSort: Sort ").append(artist).append('\n')
+                    .append("MUSICBRAINZ_ALBUMID: album-").append(i).append('\n')
+                    .append("Date: ").append(2000 + i % 20).append('\n')
+                    .append("Album: Album ").append(i).append('\n');
+        }
+        response.append("OK\n");
+
+        benchmark("albums", response.toString(), ITERATIONS,
+                connection -> MPDResponseParser.parseMPDAlbums(connection).size());
+    }
+
+    @Test
+    public void parseArtists() throws Exception {
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            response.append("MUSICBRAINZ_ARTISTID: artist-").append(i).append('\n')
+                    .append("Artist: Artist ").append(i).append('\n');
+        }
+        response.append("OK\n");
+
+        benchmark("artists", response.toString(), ITERATIONS,
+                connection -> MPDResponseParser.parseMPDArtists(connection, true, true).size());
+    }
+
+    @Test
+    public void parseStatus() throws Exception {
+        String response = "volume: 50\nrepeat: 0\nrandom: 0\nsingle: 0\nconsume: 0\npartition: default\n"
+                + "playlist: 42\nplaylistlength: 1000\nmixrampdb: 0.000000\nstate: play\nsong: 10\n"
+                + "songid: 11\ntime: 20:180\nelapsed: 20.345\nbitrate: 900\nduration: 180.000\n"
+                + "audio: 44100:16:2\nnextsong: 11\nnextsongid: 12\nOK\n";
+
+        benchmark("status", response, ITERATIONS * 10, connection -> {
+            assertEquals(42, MPDResponseParser.parseMPDCurrentStatus(connection).getPlaylistVersion());
+            return 1;
+        });
+    }
+
+    /**
+     * Parses a response repeatedly and prints the timings and allocations.
+     */
+    private void benchmark(String type, String response, int iterations, Parser parser) throws Exception {
+        ByteArrayOutputStream receivedData = new ByteArrayOutputStream();
+        byte[] responseData = response.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < WARMUP_ITERATIONS + iterations; i++) {
+            receivedData.write(responseData);
+        }
+        MPDConnection connection = new MPDConnection(
+                new MPDSocketInterface(new ByteArrayInputStream(receivedData.toByteArray()), new ByteArrayOutputStream()),
+                new MPDCapabilities("0.23.5", null, null));
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parser.parse(connection);
+        }
+
+        long[] times = new long[iterations];
+        long[] allocations = new long[iterations];
+        int entryCount = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBytes = getAllocatedBytes();
+            long startTime = System.nanoTime();
+            entryCount = parser.parse(connection);
+            times[i] = System.nanoTime() - startTime;
+            allocations[i] = getAllocatedBytes() - allocatedBytes;
+        }
+        Arrays.sort(times);
+        Arrays.sort(allocations);
+
+        long p50 = getPercentile(times, 50);
+        long p99 = getPercentile(times, 99);
+        String bytesPerEntry = allocations[0] >= 0 ? String.valueOf(getPercentile(allocations, 50) / entryCount) : "unknown";
+        System.out.println(String.format(Locale.ROOT,
+                "MPDResponseParserBenchmarkTest: %s: %d entries, p50 %d us, p99 %d us, %d entries/s, %s bytes/entry",
+                type, entryCount, p50 / 1000, p99 / 1000, entryCount * 1000L * 1000L * 1000L / Math.max(1, p50),
+                bytesPerEntry));
+    }
+
+    private static long getPercentile(long[] sortedValues, int percentile) {
+        int index = (int) Math.ceil(sortedValues.length * percentile / 100.0) - 1;
+        return sortedValues[Math.max(0, index)];
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far or -1 if the JVM does not count them
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
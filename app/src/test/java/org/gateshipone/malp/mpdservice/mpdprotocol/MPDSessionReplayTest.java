@@ -0,0 +1,106 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MPDSessionReplayTest {
+    private static final String GREETING = "OK MPD 0.23.5\n";
+
+    private static final String LISTALLINFO_RESPONSE = "directory: music\n"
+            + "file: music/a.flac\n"
+            + "Title: First\n"
+            + "Album: Album\n"
+            + "Track: 1\n"
+            + "file: music/b.flac\n"
+            + "Title: Second\n"
+            + "Album: Album\n"
+            + "Track: 2\n"
+            + "OK\n";
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * Records a session with the given server data, as {@link MPDConnection} does for a socket.
+     */
+    static File recordSession(File file, String... responses) throws IOException {
+        MPDSessionRecorder recorder = new MPDSessionRecorder(file);
+        OutputStream output = recorder.recordOutput(new ByteArrayOutputStream());
+        output.write("password secret\n".getBytes(StandardCharsets.UTF_8));
+
+        for (String response : responses) {
+            InputStream input = recorder.recordInput(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+            byte[] buffer = new byte[64];
+            while (input.read(buffer, 0, buffer.length) > 0) {
+                // Recorded while reading
+            }
+        }
+        recorder.close();
+        return file;
+    }
+
+    @Test
+    public void parsesTracksOfRecordedSession() throws Exception {
+        File recording = recordSession(mFolder.newFile(), GREETING, LISTALLINFO_RESPONSE, LISTALLINFO_RESPONSE);
+
+        MPDConnection connection = MPDSessionReplay.createConnection(recording, 0);
+        for (int i = 0; i < 2; i++) {
+            List<MPDFileEntry> entries = MPDResponseParser.parseMPDTracks(connection);
+
+            assertEquals(3, entries.size());
+            assertEquals("music", entries.get(0).getPath());
+            assertTrue(entries.get(1) instanceof MPDTrack);
+            assertEquals("First", ((MPDTrack) entries.get(1)).getStringTag(MPDTrack.StringTagTypes.TITLE));
+            assertEquals(2, ((MPDTrack) entries.get(2)).getTrackNumber());
+        }
+    }
+
+    @Test
+    public void redactsPassword() throws Exception {
+        File recording = recordSession(mFolder.newFile(), GREETING);
+
+        String content = new String(Files.readAllBytes(recording.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("password ***"));
+        assertFalse(content.contains("secret"));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  Copyright (C) 2023 Team Gateship-One
+ *  (Hendrik Borghorst & Frederik Luetkes)
+ *
+ *  The AUTHORS.md file contains a detailed contributors list:
+ *  <https://gitlab.com/gateship-one/malp/blob/master/AUTHORS.md>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.gateshipone.malp.mpdservice.mpdprotocol;
+
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDFileEntry;
+import org.gateshipone.malp.mpdservice.mpdprotocol.mpdobjects.MPDTrack;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the memory of the array based tag storage of {@link MPDTrack} with the per track
+ * HashMap it replaced. Both are built from the tags of a large synthetic listing, so the tag
+ * strings are shared and only the storage itself is measured.
+ * <p>
+ * It prints the allocated bytes, counted with the per-thread counter of the JVM, and the
+ * retained bytes, taken from the used heap after a GC. These numbers depend on the JVM and the
+ * GC, so they are only reported and never checked. The benchmark only runs with
+ * "-Dmalp.benchmark=true".
+ */
+public class MPDTrackTagStorageBenchmarkTest {
+    private static final int TRACK_COUNT = 20000;
+
+    private static final int ITERATIONS = 5;
+
+    private static final MPDTrack.StringTagTypes[] TAG_TYPES = MPDTrack.StringTagTypes.values();
+
+    private interface TagStorage {
+        List<?> store(List<MPDTrack> tracks);
+    }
+
+    private List<MPDTrack> mTracks;
+
+    @Before
+    public void setUp() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("malp.benchmark"));
+
+        StringBuilder response = new StringBuilder();
+        for (int i = 0; i < TRACK_COUNT; i++) {
+            FakeMPDServer.appendTrack(response, i);
+        }
+        response.append("OK\n");
+
+        MPDConnection connection = new MPDConnection(
+                new MPDSocketInterface(new ByteArrayInputStream(response.toString().getBytes(StandardCharsets.UTF_8)), new ByteArrayOutputStream()),
+                new MPDCapabilities("0.23.5", null, null));
+        mTracks = new ArrayList<>();
+        for (MPDFileEntry entry : MPDResponseParser.parseMPDTracks(connection)) {
+            mTracks.add((MPDTrack) entry);
+        }
+        assertEquals(TRACK_COUNT, mTracks.size());
+    }
+
+    @Test
+    public void compareTagStorage() {
+        benchmark("array", tracks -> {
+            List<String[]> storage = new ArrayList<>(tracks.size());
+            for (MPDTrack track : tracks) {
+                String[] tags = new String[TAG_TYPES.length];
+                for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+                    String value = track.getStringTag(tag);
+                    if (!value.isEmpty()) {
+                        tags[tag.ordinal()] = value;
+                    }
+                }
+                storage.add(tags);
+            }
+            return storage;
+        });
+
+        benchmark("HashMap", tracks -> {
+            List<HashMap<MPDTrack.StringTagTypes, String>> storage = new ArrayList<>(tracks.size());
+            for (MPDTrack track : tracks) {
+                HashMap<MPDTrack.StringTagTypes, String> tags = new HashMap<>();
+                for (MPDTrack.StringTagTypes tag : TAG_TYPES) {
+                    String value = track.getStringTag(tag);
+                    if (!value.isEmpty()) {
+                        tags.put(tag, value);
+                    }
+                }
+                storage.add(tags);
+            }
+            return storage;
+        });
+    }
+
+    /**
+     * Builds the storage for all tracks repeatedly and prints the median allocated and retained bytes.
+     */
+    private void benchmark(String type, TagStorage tagStorage) {
+        // Warm up so the JIT does not count towards the first iteration
+        tagStorage.store(mTracks);
+
+        long[] allocations = new long[ITERATIONS];
+        long[] retained = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long usedBytes = getUsedHeapBytes();
+            long allocatedBytes = getAllocatedBytes();
+            List<?> storage = tagStorage.store(mTracks);
+            allocations[i] = getAllocatedBytes() - allocatedBytes;
+            retained[i] = getUsedHeapBytes() - usedBytes;
+            assertEquals(TRACK_COUNT, storage.size());
+        }
+        Arrays.sort(allocations);
+        Arrays.sort(retained);
+
+        long allocatedPerTrack = allocations[ITERATIONS / 2] / TRACK_COUNT;
+        System.out.println(String.format(Locale.ROOT,
+                "MPDTrackTagStorageBenchmarkTest: %s: %d tracks, %s bytes allocated/track, %d bytes retained/track",
+                type, TRACK_COUNT, allocations[0] >= 0 ? String.valueOf(allocatedPerTrack) : "unknown",
+                retained[ITERATIONS / 2] / TRACK_COUNT));
+    }
+
+    /**
+     * @return Bytes of the heap in use after a GC
+     */
+    private static long getUsedHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far or -1 if the JVM does not count them
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}